@@ -0,0 +1,11 @@
+use db_java_spring_boot_ecommerce_bd02;
+
+-- --- orders.status: de ENUM nativo a VARCHAR(20) ---
+-- Hibernate 6 creó la columna como ENUM('PENDING', ..., 'REFUNDED') y ddl-auto=update no altera columnas
+-- existentes: guardar CONFIRMED o REJECTED (pedidos asíncronos) falla con "Data truncated for column 'status'".
+-- Ejecutar ANTES de arrancar la nueva versión. Los valores guardados se conservan tal cual.
+
+ALTER TABLE orders MODIFY status VARCHAR(20) NOT NULL;
+
+select column_name, column_type from information_schema.columns
+where table_schema = 'db_java_spring_boot_ecommerce_bd02' and table_name = 'orders' and column_name = 'status';
@@ -0,0 +1,25 @@
+use db_java_spring_boot_ecommerce_bd02;
+
+-- --- Restricción única uk_cart_items_cart_product (cart_id, product_id) ---
+-- Antes, dos adds concurrentes del mismo producto podían duplicar la fila del carrito.
+-- Ejecutar ANTES de arrancar la nueva versión: ddl-auto=update no puede crear la restricción
+-- mientras queden duplicados. Se conserva la fila de menor id con la suma de las cantidades.
+
+START TRANSACTION;
+
+UPDATE cart_items ci
+JOIN (SELECT MIN(id) AS keep_id, SUM(quantity) AS total
+      FROM cart_items
+      GROUP BY cart_id, product_id
+      HAVING COUNT(*) > 1) dup ON ci.id = dup.keep_id
+SET ci.quantity = dup.total;
+
+DELETE ci FROM cart_items ci
+JOIN cart_items keep ON keep.cart_id = ci.cart_id AND keep.product_id = ci.product_id AND keep.id < ci.id;
+
+COMMIT;
+
+ALTER TABLE cart_items ADD CONSTRAINT uk_cart_items_cart_product UNIQUE (cart_id, product_id);
+
+-- Debe devolver 0 filas
+select cart_id, product_id, count(*) from cart_items group by cart_id, product_id having count(*) > 1;
@@ -0,0 +1,16 @@
+use db_java_spring_boot_ecommerce_bd02;
+
+-- --- refresh_tokens: eliminación de la columna token (valor en claro) ---
+-- La nueva versión guarda solo el SHA-256 del token en token_hash y, al arrancar y cada minuto, rellena
+-- token_hash de las filas que aún no lo tienen. La columna token se conserva para las instancias con la
+-- versión anterior durante el despliegue gradual.
+-- Ejecutar DESPUÉS de que todas las instancias tengan la nueva versión.
+
+-- Debe devolver 0: si no, esperar a la siguiente pasada de la aplicación (o a que expiren esos tokens)
+select count(*) from refresh_tokens where token_hash is null and token is not null;
+
+-- Tokens de la versión anterior que nunca llegaron a tener hash: ya no se podrían usar
+DELETE FROM refresh_tokens WHERE token_hash IS NULL;
+
+ALTER TABLE refresh_tokens DROP COLUMN token;
+ALTER TABLE refresh_tokens MODIFY token_hash BINARY(32) NOT NULL;
@@ -0,0 +1,19 @@
+use db_java_spring_boot_ecommerce_bd02;
+
+-- --- Ids de orders y order_items por secuencia (allocationSize = 50) en lugar de IDENTITY ---
+-- MySQL no tiene secuencias: Hibernate las emula con una tabla de una fila (next_val).
+-- Ejecutar ANTES de arrancar la nueva versión: si ddl-auto=update crea las tablas, empiezan en 1
+-- y chocarían con los ids existentes. El optimizador pooled reparte los ids next_val - 49 .. next_val,
+-- así que next_val = MAX(id) + 50 continúa justo tras el último id.
+
+CREATE TABLE IF NOT EXISTS orders_seq (next_val BIGINT);
+DELETE FROM orders_seq;
+INSERT INTO orders_seq (next_val) SELECT COALESCE(MAX(id), 0) + 50 FROM orders;
+
+CREATE TABLE IF NOT EXISTS order_items_seq (next_val BIGINT);
+DELETE FROM order_items_seq;
+INSERT INTO order_items_seq (next_val) SELECT COALESCE(MAX(id), 0) + 50 FROM order_items;
+
+-- Las columnas id conservan AUTO_INCREMENT; Hibernate ahora envía el id en el INSERT.
+select * from orders_seq;
+select * from order_items_seq;
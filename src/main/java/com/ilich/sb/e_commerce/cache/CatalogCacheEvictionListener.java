@@ -0,0 +1,66 @@
+package com.ilich.sb.e_commerce.cache;
+
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.ilich.sb.e_commerce.model.Category;
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.service.IStockReservationService;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Listener JPA de Product y Category: invalida las respuestas serializadas del catálogo (y los ProductDTO
+ * de los que se construyen) cada vez que se escribe una de estas entidades, sea desde los servicios
+ * o desde cualquier otro punto, y lo difunde tras el commit al resto de réplicas por IInvalidationBus.
+ * También descarta el stock en memoria que usan las reservas de stock.
+ * Hibernate lo instancia a través del contenedor de beans de Spring.
+ */
+public class CatalogCacheEvictionListener {
+
+    // Se resuelve de forma diferida: el listener se crea junto con el EntityManagerFactory
+    private final ObjectProvider<CatalogResponseCache> responseCache;
+    private final ObjectProvider<ProductCatalogCache> productCatalogCache;
+    private final ObjectProvider<IStockReservationService> stockReservationService;
+    private final ObjectProvider<IInvalidationBus> invalidationBus;
+
+    public CatalogCacheEvictionListener(ObjectProvider<CatalogResponseCache> responseCache,
+                                        ObjectProvider<ProductCatalogCache> productCatalogCache,
+                                        ObjectProvider<IStockReservationService> stockReservationService,
+                                        ObjectProvider<IInvalidationBus> invalidationBus) {
+        this.responseCache = responseCache;
+        this.productCatalogCache = productCatalogCache;
+        this.stockReservationService = stockReservationService;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void evict(Object entity) {
+        productCatalogCache.ifAvailable(cache -> {
+            if (entity instanceof Product product) {
+                cache.invalidateProducts(List.of(product.getId()));
+            } else {
+                cache.invalidate(); // Los ProductDTO incluyen su categoría
+            }
+        });
+        responseCache.ifAvailable(cache -> {
+            if (entity instanceof Product product) {
+                cache.invalidateProduct(product.getId());
+            } else if (entity instanceof Category) {
+                cache.invalidateCategories();
+            }
+        });
+        if (entity instanceof Product product) {
+            stockReservationService.ifAvailable(service -> service.evictStock(product.getId()));
+        }
+        InvalidationEvent event = entity instanceof Product product
+                ? InvalidationEvent.productChanged(product.getId())
+                : InvalidationEvent.categoriesChanged();
+        invalidationBus.ifAvailable(bus -> bus.publishAfterCommit(List.of(event)));
+    }
+}
@@ -0,0 +1,195 @@
+package com.ilich.sb.e_commerce.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caché de respuestas ya serializadas (JSON UTF-8) de los endpoints de catálogo, con su ETag fuerte.
+ * Un acierto no pasa por Hibernate, MapStruct ni Jackson: se escriben los bytes tal cual.
+ *
+ * La invalidación es por clave: un cambio en un producto descarta solo ese producto y la lista completa;
+ * un cambio de categoría descarta las categorías y los productos (que incluyen su categoría).
+ * La invalidan los listeners JPA de Product y Category (CatalogCacheEvictionListener) y, para las escrituras
+ * de otras réplicas, InvalidationApplier. Si el bus pierde un evento (o es loopback con varias réplicas),
+ * ttl-seconds acota el tiempo que se sirven los bytes y el ETag obsoletos.
+ */
+@Component
+public class CatalogResponseCache {
+
+    private static final String PRODUCTS_ALL_KEY = "products:all";
+    private static final String PRODUCT_KEY_PREFIX = "products:id:";
+    private static final String CATEGORIES_ALL_KEY = "categories:all";
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CachedResponse> cache;
+    // Se incrementa en cada invalidación; permite descartar respuestas construidas durante una escritura
+    private final AtomicLong generation = new AtomicLong();
+
+    public CatalogResponseCache(ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${ecommerce.app.response-cache.maximum-weight-bytes:67108864}") long maximumWeightBytes,
+                                @Value("${ecommerce.app.response-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeightBytes)
+                .weigher((String key, CachedResponse response) -> response.body.length)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "catalog-responses");
+    }
+
+    public CachedResponse getAllProducts(Supplier<?> loader) {
+        return get(PRODUCTS_ALL_KEY, loader);
+    }
+
+    public Optional<CachedResponse> getProduct(long id, Supplier<? extends Optional<?>> loader) {
+        String key = PRODUCT_KEY_PREFIX + id;
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long start = generation.get();
+        // Los productos inexistentes no se cachean
+        return loader.get().map(body -> store(key, body, start));
+    }
+
+    public CachedResponse getAllCategories(Supplier<?> loader) {
+        return get(CATEGORIES_ALL_KEY, loader);
+    }
+
+    /**
+     * Descarta la respuesta de un producto y la lista completa de productos.
+     * @param productId El producto modificado, o null para descartar todos los productos.
+     */
+    public void invalidateProduct(Long productId) {
+        runNowAndAfterCommit(() -> {
+            generation.incrementAndGet();
+            cache.invalidate(PRODUCTS_ALL_KEY);
+            if (productId != null) {
+                cache.invalidate(PRODUCT_KEY_PREFIX + productId);
+            } else {
+                cache.asMap().keySet().removeIf(key -> key.startsWith(PRODUCT_KEY_PREFIX));
+            }
+        });
+    }
+
+    /**
+     * Descarta las categorías y todos los productos, ya que sus respuestas incluyen la categoría.
+     */
+    public void invalidateCategories() {
+        runNowAndAfterCommit(() -> {
+            generation.incrementAndGet();
+            cache.invalidateAll();
+        });
+    }
+
+    private CachedResponse get(String key, Supplier<?> loader) {
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long start = generation.get();
+        return store(key, loader.get(), start);
+    }
+
+    private CachedResponse store(String key, Object body, long start) {
+        CachedResponse response = serialize(body);
+        cache.put(key, response);
+        // Si hubo una invalidación mientras se construía, la respuesta puede estar obsoleta: se retira.
+        // (Si la invalidación llega después de este punto, ya la eliminará ella misma.)
+        if (generation.get() != start) {
+            cache.asMap().remove(key, response);
+        }
+        return response;
+    }
+
+    private CachedResponse serialize(Object body) {
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(body);
+            return new CachedResponse(bytes, "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta del catálogo.", e);
+        }
+    }
+
+    // Dentro de una transacción se invalida también tras el commit, para descartar lo leído antes de confirmar
+    private static void runNowAndAfterCommit(Runnable invalidation) {
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Cuerpo JSON ya serializado junto con su ETag fuerte.
+     */
+    public static final class CachedResponse {
+        private final byte[] body;
+        private final String etag;
+
+        private CachedResponse(byte[] body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Construye la respuesta HTTP: 304 sin cuerpo si el cliente ya tiene esta versión, 200 con los bytes si no.
+         * @param ifNoneMatch Valor de la cabecera If-None-Match (puede ser null).
+         */
+        public ResponseEntity<byte[]> toResponseEntity(String ifNoneMatch) {
+            if (matches(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .contentLength(body.length)
+                    .body(body);
+        }
+
+        private boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2); // If-None-Match usa comparación débil
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.ilich.sb.e_commerce.cache;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bus de invalidaciones entre réplicas. Cada nodo mantiene en memoria la caché de tokens revocados
+ * (RevokedTokenCache), la de UserDetails y las del catálogo; sin el bus, un token revocado o un producto
+ * modificado en un nodo seguiría sirviéndose con los datos antiguos en los demás.
+ *
+ * publish no bloquea ni falla por el transporte: el nodo que publica ya ha aplicado la invalidación
+ * localmente, y los demás la reciben y la aplican en lotes a través de InvalidationApplier.
+ * La implementación se elige con ecommerce.app.invalidation.bus: loopback (en la JVM, por defecto
+ * y para tests) o postgres (LISTEN/NOTIFY).
+ */
+public interface IInvalidationBus {
+
+    void publish(InvalidationEvent event);
+
+    /**
+     * Publica los eventos al confirmarse la transacción activa, o ya si no hay ninguna: si los demás nodos
+     * recargasen antes del commit, volverían a cachear los datos anteriores. Si la transacción se deshace
+     * no se publica nada.
+     */
+    default void publishAfterCommit(Collection<InvalidationEvent> events) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            events.forEach(this::publish);
+            return;
+        }
+        List<InvalidationEvent> pending = List.copyOf(events);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                pending.forEach(IInvalidationBus.this::publish);
+            }
+        });
+    }
+}
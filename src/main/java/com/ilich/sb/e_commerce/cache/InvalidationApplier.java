@@ -0,0 +1,190 @@
+package com.ilich.sb.e_commerce.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.ilich.sb.e_commerce.security.jwt.RevokedTokenCache;
+import com.ilich.sb.e_commerce.service.impl.UserDetailsServiceImpl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Aplica en este nodo las invalidaciones recibidas de otros por IInvalidationBus.
+ *
+ * Los buses solo encolan; un único hilo saca hasta batch-size eventos de una vez y los aplica juntos:
+ * las claves revocadas se añaden a RevokedTokenCache (solo en memoria: el nodo de origen ya las guardó
+ * en su tabla), los usernames se invalidan con un único invalidateAll en la caché de UserDetails y los
+ * productos y categorías escritos en otro nodo se descartan de ProductCatalogCache y CatalogResponseCache.
+ * Así ninguna petición vuelve a consultar la BD por token para estar al día con el resto de réplicas.
+ */
+@Component
+public class InvalidationApplier {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvalidationApplier.class);
+
+    private static final long POLL_MS = 500;
+
+    private final RevokedTokenCache revokedTokenCache;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final ProductCatalogCache productCatalogCache;
+    private final CatalogResponseCache catalogResponseCache;
+    private final int batchSize;
+
+    private final BlockingQueue<InvalidationEvent> queue = new LinkedBlockingQueue<>();
+    private final Counter appliedTokens;
+    private final Counter appliedUsers;
+    private final Counter appliedProducts;
+    private final Counter appliedCategories;
+    private Thread worker;
+    private volatile boolean running;
+
+    public InvalidationApplier(RevokedTokenCache revokedTokenCache,
+                               UserDetailsServiceImpl userDetailsService,
+                               ProductCatalogCache productCatalogCache,
+                               CatalogResponseCache catalogResponseCache,
+                               MeterRegistry meterRegistry,
+                               @Value("${ecommerce.app.invalidation.batch-size:256}") int batchSize) {
+        this.revokedTokenCache = revokedTokenCache;
+        this.userDetailsService = userDetailsService;
+        this.productCatalogCache = productCatalogCache;
+        this.catalogResponseCache = catalogResponseCache;
+        this.batchSize = batchSize;
+        this.appliedTokens = appliedCounter(meterRegistry, InvalidationEvent.Type.TOKEN_REVOKED);
+        this.appliedUsers = appliedCounter(meterRegistry, InvalidationEvent.Type.USER_EVICTED);
+        this.appliedProducts = appliedCounter(meterRegistry, InvalidationEvent.Type.PRODUCT_CHANGED);
+        this.appliedCategories = appliedCounter(meterRegistry, InvalidationEvent.Type.CATEGORIES_CHANGED);
+    }
+
+    private static Counter appliedCounter(MeterRegistry meterRegistry, InvalidationEvent.Type type) {
+        return Counter.builder("invalidation.applied")
+                .description("Invalidaciones recibidas de otros nodos y aplicadas en este")
+                .tag("type", type.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new CustomizableThreadFactory("invalidation-applier-").newThread(this::run);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.join(POLL_MS * 2);
+        }
+        applyPending(); // Lo que quedase en la cola
+    }
+
+    public void enqueue(Collection<InvalidationEvent> events) {
+        queue.addAll(events);
+    }
+
+    /**
+     * Aplica lo que haya encolado, en lotes de hasta batch-size eventos.
+     * @return Número de eventos aplicados.
+     */
+    public int applyPending() {
+        int applied = 0;
+        List<InvalidationEvent> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            apply(batch);
+            applied += batch.size();
+            batch.clear();
+        }
+        return applied;
+    }
+
+    /**
+     * Tras perder la conexión con el bus pueden haberse perdido invalidaciones: se recargan los buckets
+     * de tokens revocados desde la BD y se vacían la caché de UserDetails y las del catálogo.
+     */
+    public void resync() {
+        revokedTokenCache.loadFromDatabase();
+        userDetailsService.evictAll();
+        productCatalogCache.invalidate();
+        catalogResponseCache.invalidateCategories();
+        logger.info("Invalidaciones resincronizadas desde la BD tras una reconexión del bus.");
+    }
+
+    private void run() {
+        List<InvalidationEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                InvalidationEvent first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Error aplicando {} invalidaciones: {}", batch.size(), e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(List<InvalidationEvent> batch) {
+        Set<String> usernames = new HashSet<>();
+        Set<Long> productIds = new HashSet<>();
+        int tokens = 0;
+        int users = 0;
+        int products = 0;
+        int categories = 0;
+        for (InvalidationEvent event : batch) {
+            switch (event.getType()) {
+                case TOKEN_REVOKED -> {
+                    revokedTokenCache.rememberRevoked(event.getKey(), event.getExpiryDate());
+                    tokens++;
+                }
+                case USER_EVICTED -> {
+                    usernames.add(event.getUsername());
+                    users++;
+                }
+                case PRODUCT_CHANGED -> {
+                    productIds.add(event.getProductId());
+                    products++;
+                }
+                case CATEGORIES_CHANGED -> categories++;
+            }
+        }
+        if (!usernames.isEmpty()) {
+            userDetailsService.evictUsers(usernames);
+        }
+        if (categories > 0) {
+            // Los ProductDTO incluyen su categoría: se descarta todo el catálogo
+            productCatalogCache.invalidate();
+            catalogResponseCache.invalidateCategories();
+        } else if (!productIds.isEmpty()) {
+            productCatalogCache.invalidateProducts(productIds);
+            productIds.forEach(catalogResponseCache::invalidateProduct);
+        }
+        appliedTokens.increment(tokens);
+        appliedUsers.increment(users);
+        appliedProducts.increment(products);
+        appliedCategories.increment(categories);
+    }
+}
@@ -0,0 +1,133 @@
+package com.ilich.sb.e_commerce.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+
+import com.ilich.sb.e_commerce.util.RevocationKey;
+
+/**
+ * Invalidación que un nodo difunde al resto por IInvalidationBus:
+ * - TOKEN_REVOKED: clave de 16 bytes (RevocationKey) de un Access Token revocado y su fecha de expiración.
+ * - USER_EVICTED: username cuya entrada de la caché de UserDetails ya no es válida.
+ * - PRODUCT_CHANGED: id de un producto escrito (datos o stock); invalida ese producto y las listas del catálogo.
+ * - CATEGORIES_CHANGED: se escribió una categoría; invalida todo el catálogo cacheado.
+ *
+ * Se transmite como una línea de texto (encode/decode): "T:&lt;clave&gt;:&lt;exp&gt;", "U:&lt;username&gt;",
+ * "P:&lt;id&gt;" o "C", con la clave y el username en Base64 URL-safe para que nunca contengan separadores.
+ */
+public final class InvalidationEvent {
+
+    public enum Type {
+        TOKEN_REVOKED, USER_EVICTED, PRODUCT_CHANGED, CATEGORIES_CHANGED
+    }
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Type type;
+    private final byte[] key;      // Solo TOKEN_REVOKED
+    private final long expiresAt;  // Solo TOKEN_REVOKED (epoch millis)
+    private final String username; // Solo USER_EVICTED
+    private final long productId;  // Solo PRODUCT_CHANGED
+
+    private InvalidationEvent(Type type, byte[] key, long expiresAt, String username, long productId) {
+        this.type = type;
+        this.key = key;
+        this.expiresAt = expiresAt;
+        this.username = username;
+        this.productId = productId;
+    }
+
+    /**
+     * @param tokenId El claim "jti" del token, o el token completo si no lo tiene (igual que RevokedTokenCache).
+     */
+    public static InvalidationEvent tokenRevoked(String tokenId, Date expiryDate) {
+        return new InvalidationEvent(Type.TOKEN_REVOKED, RevocationKey.of(tokenId), expiryDate.getTime(), null, 0);
+    }
+
+    public static InvalidationEvent userEvicted(String username) {
+        return new InvalidationEvent(Type.USER_EVICTED, null, 0, Objects.requireNonNull(username), 0);
+    }
+
+    public static InvalidationEvent productChanged(long productId) {
+        return new InvalidationEvent(Type.PRODUCT_CHANGED, null, 0, null, productId);
+    }
+
+    public static InvalidationEvent categoriesChanged() {
+        return new InvalidationEvent(Type.CATEGORIES_CHANGED, null, 0, null, 0);
+    }
+
+    public String encode() {
+        return switch (type) {
+            case TOKEN_REVOKED -> "T:" + ENCODER.encodeToString(key) + ":" + expiresAt;
+            case USER_EVICTED -> "U:" + ENCODER.encodeToString(username.getBytes(StandardCharsets.UTF_8));
+            case PRODUCT_CHANGED -> "P:" + productId;
+            case CATEGORIES_CHANGED -> "C";
+        };
+    }
+
+    /**
+     * @throws IllegalArgumentException si la línea no tiene el formato de encode().
+     */
+    public static InvalidationEvent decode(String line) {
+        String[] parts = line.split(":");
+        if (parts.length == 3 && parts[0].equals("T")) {
+            byte[] key = DECODER.decode(parts[1]);
+            if (key.length != RevocationKey.BYTES) {
+                throw new IllegalArgumentException("Clave de revocación inválida: " + line);
+            }
+            return new InvalidationEvent(Type.TOKEN_REVOKED, key, Long.parseLong(parts[2]), null, 0);
+        }
+        if (parts.length == 2 && parts[0].equals("U")) {
+            return new InvalidationEvent(Type.USER_EVICTED, null, 0, new String(DECODER.decode(parts[1]), StandardCharsets.UTF_8), 0);
+        }
+        if (parts.length == 2 && parts[0].equals("P")) {
+            return productChanged(Long.parseLong(parts[1]));
+        }
+        if (parts.length == 1 && parts[0].equals("C")) {
+            return categoriesChanged();
+        }
+        throw new IllegalArgumentException("Invalidación con formato desconocido: " + line);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public Date getExpiryDate() {
+        return new Date(expiresAt);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InvalidationEvent other)) return false;
+        return type == other.type && expiresAt == other.expiresAt && productId == other.productId
+                && Arrays.equals(key, other.key) && Objects.equals(username, other.username);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, Arrays.hashCode(key), expiresAt, username, productId);
+    }
+
+    @Override
+    public String toString() {
+        return "InvalidationEvent{" + encode() + "}";
+    }
+}
@@ -0,0 +1,67 @@
+package com.ilich.sb.e_commerce.cache;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Bus de invalidaciones dentro de la JVM (ecommerce.app.invalidation.bus=loopback, por defecto): imita una
+ * multidifusión entre los buses de un mismo Group, entregando cada evento a todos los demás miembros.
+ *
+ * El Group es un objeto, no un registro estático: cada contexto de Spring tiene el suyo con un único bus,
+ * así que en la aplicación no entrega nada a nadie y solo vale para una réplica. Sirve de sustituto del
+ * transporte real en los tests, que comparten un Group entre dos buses (cada uno con su InvalidationApplier)
+ * para que se comporten como dos réplicas.
+ */
+@Component
+@ConditionalOnProperty(name = "ecommerce.app.invalidation.bus", havingValue = "loopback", matchIfMissing = true)
+public class LoopbackInvalidationBus implements IInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackInvalidationBus.class);
+
+    private final InvalidationApplier applier;
+    private final Group group;
+
+    @Autowired
+    public LoopbackInvalidationBus(InvalidationApplier applier) {
+        this(applier, new Group());
+        // No hay forma de ver a las demás réplicas desde aquí: se avisa siempre
+        logger.warn("Bus de invalidaciones loopback: los tokens revocados y los UserDetails desalojados no salen de esta instancia. "
+                + "Con más de una réplica, usar ecommerce.app.invalidation.bus=postgres.");
+    }
+
+    public LoopbackInvalidationBus(InvalidationApplier applier, Group group) {
+        this.applier = applier;
+        this.group = group;
+        group.members.add(this);
+    }
+
+    @Override
+    public void publish(InvalidationEvent event) {
+        for (LoopbackInvalidationBus member : group.members) {
+            if (member != this) {
+                member.applier.enqueue(List.of(event));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        group.members.remove(this);
+    }
+
+    /**
+     * Buses que se entregan los eventos entre sí.
+     */
+    public static final class Group {
+        private final Set<LoopbackInvalidationBus> members = new CopyOnWriteArraySet<>();
+    }
+}
@@ -0,0 +1,229 @@
+package com.ilich.sb.e_commerce.cache;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Bus de invalidaciones sobre LISTEN/NOTIFY de PostgreSQL (ecommerce.app.invalidation.bus=postgres).
+ * Usa sus propias conexiones a la BD de ecommerce.app.invalidation.postgres.*, independiente del datasource
+ * de la aplicación:
+ * - Un hilo emisor saca de la cola hasta batch-size eventos y los envía en un único pg_notify, una línea
+ *   por evento (por debajo del límite de 8000 bytes de payload).
+ * - Un hilo receptor mantiene una conexión en LISTEN, descarta los mensajes de este mismo nodo y entrega
+ *   el resto a InvalidationApplier.
+ * Tras cada LISTEN, también el primero, se pide a InvalidationApplier una resincronización desde la BD,
+ * porque NOTIFY no guarda los mensajes enviados mientras nadie escuchaba: ni los de una caída de la conexión
+ * ni los que se enviaron entre que este nodo empezó a llenar cachés y el primer LISTEN.
+ */
+@Component
+@ConditionalOnProperty(name = "ecommerce.app.invalidation.bus", havingValue = "postgres")
+public class PostgresInvalidationBus implements IInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresInvalidationBus.class);
+
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+    private static final int MAX_PAYLOAD_CHARS = 7500; // Límite de NOTIFY: 8000 bytes
+    private static final int OUTBOX_CAPACITY = 10_000;
+    private static final long POLL_MS = 500;
+    private static final long RECONNECT_MS = 5000;
+
+    private final InvalidationApplier applier;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String channel;
+    private final int batchSize;
+    // Identifica los mensajes de este nodo: NOTIFY también los entrega a su propio LISTEN
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final BlockingQueue<InvalidationEvent> outbox = new ArrayBlockingQueue<>(OUTBOX_CAPACITY);
+    private Thread listener;
+    private Thread sender;
+    private volatile boolean running;
+
+    public PostgresInvalidationBus(InvalidationApplier applier,
+                                   @Value("${ecommerce.app.invalidation.postgres.url}") String url,
+                                   @Value("${ecommerce.app.invalidation.postgres.username}") String username,
+                                   @Value("${ecommerce.app.invalidation.postgres.password}") String password,
+                                   @Value("${ecommerce.app.invalidation.postgres.channel:ecommerce_invalidation}") String channel,
+                                   @Value("${ecommerce.app.invalidation.batch-size:256}") int batchSize) {
+        if (!CHANNEL_NAME.matcher(channel).matches()) {
+            // El canal va sin comillas en LISTEN: solo se admite un identificador simple
+            throw new IllegalArgumentException("Nombre de canal de invalidaciones no válido: " + channel);
+        }
+        this.applier = applier;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.channel = channel;
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("invalidation-pg-");
+        threads.setDaemon(true);
+        listener = threads.newThread(this::listen);
+        sender = threads.newThread(this::send);
+        listener.start();
+        sender.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        listener.join(POLL_MS * 2);
+        sender.join(POLL_MS * 2);
+    }
+
+    @Override
+    public void publish(InvalidationEvent event) {
+        if (!outbox.offer(event)) {
+            logger.warn("Cola de invalidaciones llena: se descarta {}. Los demás nodos lo verán al resincronizar.", event);
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = connect();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + channel);
+                applier.resync();
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) POLL_MS);
+                    if (notifications != null && notifications.length > 0) {
+                        applier.enqueue(parse(notifications));
+                    }
+                }
+            } catch (SQLException e) {
+                logger.warn("Conexión de escucha de invalidaciones perdida: {}. Reintento en {} ms.", e.getMessage(), RECONNECT_MS);
+                if (!pause()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void send() {
+        Connection connection = null;
+        List<InvalidationEvent> batch = new ArrayList<>(batchSize);
+        while (running || !outbox.isEmpty()) {
+            try {
+                InvalidationEvent first = outbox.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outbox.drainTo(batch, batchSize - 1);
+                if (connection == null) {
+                    connection = connect();
+                }
+                sendNotifications(connection, batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (SQLException e) {
+                logger.warn("No se pudieron publicar {} invalidaciones: {}", batch.size(), e.getMessage());
+                batch.forEach(outbox::offer); // Se reintentan tras reconectar
+                close(connection);
+                connection = null;
+                if (!running || !pause()) {
+                    break;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+        close(connection);
+    }
+
+    // Un pg_notify por grupo de líneas que quepa en un payload
+    private void sendNotifications(Connection connection, List<InvalidationEvent> batch) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            StringBuilder payload = new StringBuilder(nodeId);
+            for (InvalidationEvent event : batch) {
+                String line = event.encode();
+                if (payload.length() + 1 + line.length() > MAX_PAYLOAD_CHARS) {
+                    execute(statement, payload.toString());
+                    payload.setLength(0);
+                    payload.append(nodeId);
+                }
+                payload.append('\n').append(line);
+            }
+            execute(statement, payload.toString());
+        }
+    }
+
+    private void execute(PreparedStatement statement, String payload) throws SQLException {
+        statement.setString(1, channel);
+        statement.setString(2, payload);
+        statement.execute();
+    }
+
+    // Primera línea: nodo de origen; el resto, un evento por línea
+    private List<InvalidationEvent> parse(PGNotification[] notifications) {
+        List<InvalidationEvent> events = new ArrayList<>();
+        for (PGNotification notification : notifications) {
+            String[] lines = notification.getParameter().split("\n");
+            if (lines[0].equals(nodeId)) {
+                continue;
+            }
+            for (int i = 1; i < lines.length; i++) {
+                try {
+                    events.add(InvalidationEvent.decode(lines[i]));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Invalidación ignorada: {}", e.getMessage());
+                }
+            }
+        }
+        return events;
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    private static void close(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Conexión ya rota
+            }
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(RECONNECT_MS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
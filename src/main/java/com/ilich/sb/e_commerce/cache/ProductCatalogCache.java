@@ -0,0 +1,185 @@
+package com.ilich.sb.e_commerce.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ilich.sb.e_commerce.payload.CategoryDTO;
+import com.ilich.sb.e_commerce.payload.ProductDTO;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caché read-through del catálogo de productos, con los ProductDTO ya mapeados.
+ *
+ * - Acotada por peso (tamaño estimado en bytes), no por número de entradas: la lista completa
+ *   pesa tanto como todos sus productos juntos.
+ * - Cada entrada guarda la versión del catálogo con la que empezó a cargarse. Cada escritura incrementa
+ *   la versión y la anota en las claves afectadas (o en todas, con invalidate()): una entrada que empezó
+ *   a cargarse antes de la última escritura de su clave nunca se sirve después de ella.
+ * - Los cambios de stock de un pedido invalidan solo esos productos y la lista completa
+ *   (invalidateProducts); el resto de entradas por id sigue en la caché.
+ * - Las escrituras de otras réplicas llegan por IInvalidationBus (InvalidationApplier). Si el bus pierde
+ *   un evento (o es loopback con varias réplicas), ttl-seconds acota lo que se sirve un dato obsoleto.
+ */
+@Component
+public class ProductCatalogCache {
+
+    // Clave de la lista completa (los productos individuales usan su id como clave)
+    private static final String ALL_PRODUCTS_KEY = "all";
+
+    private final AtomicLong version = new AtomicLong();
+    // Versión de la última invalidación completa: las entradas anteriores están obsoletas
+    private final AtomicLong floor = new AtomicLong();
+    // Versión de la última escritura de cada clave desde la última invalidación completa
+    private final Map<Object, Long> writes = new ConcurrentHashMap<>();
+    private final Cache<Object, Versioned> cache;
+
+    public ProductCatalogCache(MeterRegistry meterRegistry,
+                               @Value("${ecommerce.app.product-cache.maximum-weight-bytes:33554432}") long maximumWeightBytes,
+                               @Value("${ecommerce.app.product-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeightBytes)
+                .weigher((Object key, Versioned entry) -> entry.weight)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+    }
+
+    /**
+     * Devuelve la lista completa de productos, cargándola con el loader si no está o es de una versión anterior.
+     */
+    @SuppressWarnings("unchecked")
+    public List<ProductDTO> getAll(Supplier<List<ProductDTO>> loader) {
+        long current = version.get();
+        Versioned entry = cache.getIfPresent(ALL_PRODUCTS_KEY);
+        if (entry != null && isCurrent(ALL_PRODUCTS_KEY, entry)) {
+            return (List<ProductDTO>) entry.value;
+        }
+        List<ProductDTO> loaded = List.copyOf(loader.get());
+        int weight = loaded.stream().mapToInt(ProductCatalogCache::weigh).sum();
+        putIfCurrent(ALL_PRODUCTS_KEY, new Versioned(current, loaded, weight));
+        return loaded;
+    }
+
+    /**
+     * Devuelve un producto por id, cargándolo con el loader si no está o es de una versión anterior.
+     * Los productos inexistentes no se cachean.
+     */
+    public Optional<ProductDTO> getById(long id, Supplier<Optional<ProductDTO>> loader) {
+        long current = version.get();
+        Versioned entry = cache.getIfPresent(id);
+        if (entry != null && isCurrent(id, entry)) {
+            return Optional.of((ProductDTO) entry.value);
+        }
+        Optional<ProductDTO> loaded = loader.get();
+        loaded.ifPresent(dto -> putIfCurrent(id, new Versioned(current, dto, weigh(dto))));
+        return loaded;
+    }
+
+    /**
+     * Invalida el catálogo tras una escritura de productos (alta, modificación, baja o cambio de stock).
+     * Si hay una transacción activa, se invalida también al confirmarla, para descartar lo que se
+     * haya cargado con datos aún no confirmados.
+     */
+    public void invalidate() {
+        runNowAndAfterCommit(this::bump);
+    }
+
+    /**
+     * Invalida solo estos productos y la lista completa (p. ej. tras descontar su stock en un pedido),
+     * ahora y, si hay una transacción activa, otra vez al confirmarla.
+     */
+    public void invalidateProducts(Collection<Long> ids) {
+        List<Long> keys = List.copyOf(ids);
+        runNowAndAfterCommit(() -> bump(keys));
+    }
+
+    private static void runNowAndAfterCommit(Runnable invalidation) {
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    private void bump() {
+        long current = version.incrementAndGet();
+        floor.accumulateAndGet(current, Math::max);
+        // Solo se olvidan las escrituras ya cubiertas por floor: las de invalidaciones concurrentes se conservan
+        writes.values().removeIf(written -> written <= current);
+        cache.invalidateAll();
+    }
+
+    private void bump(List<Long> ids) {
+        long current = version.incrementAndGet();
+        for (Long id : ids) {
+            writes.merge(id, current, Math::max);
+        }
+        writes.merge(ALL_PRODUCTS_KEY, current, Math::max);
+        cache.invalidateAll(ids);
+        cache.invalidate(ALL_PRODUCTS_KEY);
+    }
+
+    // La carga empezó después de la última escritura que afecta a su clave
+    private boolean isCurrent(Object key, Versioned entry) {
+        return entry.version >= floor.get() && entry.version >= writes.getOrDefault(key, 0L);
+    }
+
+    private void putIfCurrent(Object key, Versioned entry) {
+        // Si hubo una escritura de la clave durante la carga, el resultado ya está obsoleto: no se guarda.
+        // Si la escritura llega entre la comprobación y el put, isCurrent la descarta al leerla
+        if (isCurrent(key, entry)) {
+            cache.put(key, entry);
+        }
+    }
+
+    // Estimación aproximada del tamaño en memoria de un ProductDTO (cabeceras + campos + cadenas)
+    private static int weigh(ProductDTO dto) {
+        int weight = 96;
+        weight += weigh(dto.getName()) + weigh(dto.getDescription()) + weigh(dto.getImageUrl());
+        CategoryDTO category = dto.getCategoryDTO();
+        if (category != null) {
+            weight += 32 + weigh(category.getName()) + weigh(category.getDescription());
+        }
+        return weight;
+    }
+
+    private static int weigh(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+
+    private static final class Versioned {
+        private final long version;
+        private final Object value;
+        private final int weight;
+
+        private Versioned(long version, Object value, int weight) {
+            this.version = version;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.ilich.sb.e_commerce.model.User;
 import com.ilich.sb.e_commerce.payload.request.AddToCartRequestDTO;
 
 import com.ilich.sb.e_commerce.payload.request.UpdateCartItemRequestDTO;
+import com.ilich.sb.e_commerce.payload.request.UpdateCartItemsRequestDTO;
 import com.ilich.sb.e_commerce.payload.response.CartItemResponseDTO;
 import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
 import com.ilich.sb.e_commerce.service.ICartService;
@@ -16,8 +17,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-import java.math.BigDecimal;
-import java.util.Set;
 
 @RestController
 @RequestMapping("/api/cart")
@@ -36,11 +35,8 @@ public class CartRestController {
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')") // Solo usuarios autenticados pueden ver su carrito
     public ResponseEntity<CartResponseDTO> getCart() {
         User currentUser = userUtil.getCurrentAuthenticatedUser();
-        Set<CartItem> cartItems = cartService.getCartItems(currentUser);
-        BigDecimal total = cartService.getCartTotal(currentUser);
-        Long cartId = cartService.getCartByUser(currentUser).getId(); // Obtener el ID del carrito
-
-        return ResponseEntity.ok(CartMapper.mapToCartResponse(cartItems, cartId, total));
+        // Ítems, productos y total en una sola consulta
+        return ResponseEntity.ok(cartService.getCartView(currentUser));
     }
 
     @PostMapping("/add")
@@ -66,6 +62,14 @@ public class CartRestController {
                 mapToCartItemResponse(updatedCartItem));
     }
 
+    // Aplica en bloque una lista de operaciones {productId, quantity|delta} y devuelve el carrito resultante
+    @PatchMapping("/items")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<CartResponseDTO> updateCartItems(@Valid @RequestBody UpdateCartItemsRequestDTO request) {
+        User currentUser = userUtil.getCurrentAuthenticatedUser();
+        return ResponseEntity.ok(cartService.updateCartItems(currentUser, request.getOperations()));
+    }
+
     @DeleteMapping("/remove/{productId}")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     public ResponseEntity<Void> removeProductFromCart(@PathVariable Long productId) {
@@ -1,7 +1,5 @@
 package com.ilich.sb.e_commerce.controller;
 
-import java.util.List;
-
 import com.ilich.sb.e_commerce.model.Category;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -9,6 +7,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -16,6 +15,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.ilich.sb.e_commerce.cache.CatalogResponseCache;
 import com.ilich.sb.e_commerce.mapper.ICategoryMapper;
 import com.ilich.sb.e_commerce.payload.CategoryDTO;
 import com.ilich.sb.e_commerce.service.ICategoryService;
@@ -25,6 +25,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.PutMapping;
 
 
@@ -35,10 +36,12 @@ public class CategoryRestController {
     
     private final ICategoryService iCategoryServ;
     private final ICategoryMapper categoryMapper;
+    private final CatalogResponseCache responseCache;
     @Autowired
-    CategoryRestController(ICategoryService iCategoryServ, ICategoryMapper categoryMapper){
+    CategoryRestController(ICategoryService iCategoryServ, ICategoryMapper categoryMapper, CatalogResponseCache responseCache){
         this.iCategoryServ = iCategoryServ;
         this.categoryMapper = categoryMapper;
+        this.responseCache = responseCache;
     }
 
 
@@ -47,19 +50,21 @@ public class CategoryRestController {
      *
      * URL de ejemplo: GET http://localhost:8080/api/category/getAll
      *
+     * La respuesta se sirve ya serializada desde CatalogResponseCache, con ETag.
+     *
+     * @param ifNoneMatch ETag que el cliente ya tiene; si coincide se responde 304.
      * @return ResponseEntity con la lista de categorias.
      */
     @Operation(summary = "Obtener todos las categorias", description = "Lista todas las categorias disponibles en el catálogo.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Lista de categorias obtenida exitosamente"),
+            @ApiResponse(responseCode = "304", description = "La lista no ha cambiado desde el ETag indicado"),
             @ApiResponse(responseCode = "500", description = "Error interno del servidor")
     })
     @GetMapping(path = "/getAll", produces = { MediaType.APPLICATION_JSON_VALUE })
-    public ResponseEntity<List<CategoryDTO>> getAll() {
-        return new ResponseEntity<List<CategoryDTO>>(
-                categoryMapper.toDtoList(iCategoryServ.getAll()), 
-                HttpStatus.OK
-            );
+    public ResponseEntity<byte[]> getAll(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return responseCache.getAllCategories(() -> categoryMapper.toDtoList(iCategoryServ.getAll()))
+                .toResponseEntity(ifNoneMatch);
     }
     /**
      * Buscar una categoria por su ID.
@@ -5,19 +5,22 @@ import com.ilich.sb.e_commerce.model.Order;
 import com.ilich.sb.e_commerce.model.User;
 import com.ilich.sb.e_commerce.payload.request.PlaceOrderRequest; // Aunque esté vacío, lo usamos para el @RequestBody
 import com.ilich.sb.e_commerce.payload.response.OrderResponse;
+import com.ilich.sb.e_commerce.service.IOrderIdempotencyService;
+import com.ilich.sb.e_commerce.service.IOrderPlacementService;
 import com.ilich.sb.e_commerce.service.IOrderService; // Usa la interfaz
 import com.ilich.sb.e_commerce.mapper.OrderMapper; // Importa tu nuevo mapper
 
 import com.ilich.sb.e_commerce.util.UserUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.net.URI;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -25,43 +28,68 @@ public class OrderController {
 
     private final IOrderService orderService;
     private final UserUtil userUtil;
+    private final Optional<IOrderPlacementService> orderPlacementService; // Solo con ecommerce.app.orders.async=true
+    private final IOrderIdempotencyService orderIdempotencyService;
 
     @Autowired
-    public OrderController(IOrderService orderService, UserUtil userUtil) {
+    public OrderController(IOrderService orderService, UserUtil userUtil, Optional<IOrderPlacementService> orderPlacementService,
+                           IOrderIdempotencyService orderIdempotencyService) {
         this.orderService = orderService;
         this.userUtil = userUtil;
+        this.orderPlacementService = orderPlacementService;
+        this.orderIdempotencyService = orderIdempotencyService;
     }
 
     /**
      * Crea un nuevo pedido a partir del carrito del usuario autenticado.
      * Requiere rol de USER o ADMIN.
      *
+     * En modo asíncrono (ecommerce.app.orders.async=true) el pedido solo se encola: responde 202 con el pedido
+     * en PENDING y su URL, donde se consulta si pasa a CONFIRMED o REJECTED; con la cola llena responde 503.
+     *
+     * Con la cabecera Idempotency-Key, un reintento con la misma clave devuelve la respuesta original
+     * (con la cabecera Idempotent-Replayed) sin crear otro pedido; si el original sigue en curso responde 409.
+     *
+     * @param idempotencyKey Clave opcional elegida por el cliente (hasta 100 caracteres), única por usuario.
      * @param request El objeto PlaceOrderRequest (puede estar vacío si solo es una confirmación).
-     * @return ResponseEntity con el OrderResponse del pedido creado y estado HTTP 201.
+     * @return ResponseEntity con el OrderResponse del pedido creado y estado HTTP 201 (202 en modo asíncrono).
      */
     @PostMapping
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<OrderResponse> placeOrder(@Valid @RequestBody PlaceOrderRequest request) {
+    public ResponseEntity<OrderResponse> placeOrder(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                    @Valid @RequestBody PlaceOrderRequest request) {
         User currentUser = userUtil.getCurrentAuthenticatedUser();
+        if (idempotencyKey != null) {
+            return orderIdempotencyService.placeOnce(currentUser, idempotencyKey, () -> placeOrder(currentUser));
+        }
+        return placeOrder(currentUser);
+    }
+
+    private ResponseEntity<OrderResponse> placeOrder(User currentUser) {
+        if (orderPlacementService.isPresent()) {
+            Order pendingOrder = orderPlacementService.get().submit(currentUser);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/orders/" + pendingOrder.getId()))
+                    .body(OrderMapper.toOrderResponse(pendingOrder));
+        }
         Order newOrder = orderService.createOrderFromCart(currentUser);
         return new ResponseEntity<>(OrderMapper.toOrderResponse(newOrder), HttpStatus.CREATED);
     }
 
     /**
-     * Obtiene el historial de pedidos del usuario autenticado.
+     * Obtiene el historial de pedidos del usuario autenticado, paginado del más reciente al más antiguo.
      * Requiere rol de USER o ADMIN.
      *
-     * @return ResponseEntity con una lista de OrderResponse y estado HTTP 200.
+     * @param page Número de página (desde 0).
+     * @param size Tamaño de página (máximo 100).
+     * @return ResponseEntity con una página de OrderResponse y estado HTTP 200.
      */
     @GetMapping
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<List<OrderResponse>> getUserOrders() {
+    public ResponseEntity<Page<OrderResponse>> getUserOrders(@RequestParam(defaultValue = "0") int page,
+                                                             @RequestParam(defaultValue = "20") int size) {
         User currentUser = userUtil.getCurrentAuthenticatedUser();
-        List<Order> orders = orderService.getOrdersByUser(currentUser);
-        List<OrderResponse> orderResponses = orders.stream()
-                .map(OrderMapper::toOrderResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(orderResponses);
+        return ResponseEntity.ok(orderService.getOrderHistory(currentUser, page, size));
     }
 
     /**
@@ -1,7 +1,11 @@
 package com.ilich.sb.e_commerce.controller;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -9,15 +13,22 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.ilich.sb.e_commerce.cache.CatalogResponseCache;
 import com.ilich.sb.e_commerce.mapper.IProductMapper;
 import com.ilich.sb.e_commerce.model.Product;
 import com.ilich.sb.e_commerce.payload.ProductDTO;
+import com.ilich.sb.e_commerce.payload.response.CursorPageDTO;
+import com.ilich.sb.e_commerce.payload.response.StockAvailabilityDTO;
 import com.ilich.sb.e_commerce.service.IProductService;
+import com.ilich.sb.e_commerce.service.IStockReservationService;
 
 
 @RestController
@@ -25,12 +36,22 @@ import com.ilich.sb.e_commerce.service.IProductService;
 @Tag(name = "Products", description = "Operaciones relacionadas con la gestión de productos") // Agrega una etiqueta para agrupar endpoints
 public class ProductRestController {
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
     private final IProductService iProductService;
     private final IProductMapper productMapper;
+    private final CatalogResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    private final IStockReservationService stockReservationService;
 
-    ProductRestController(IProductService iProductService, IProductMapper productMapper){
+    ProductRestController(IProductService iProductService, IProductMapper productMapper,
+                          CatalogResponseCache responseCache, ObjectMapper objectMapper,
+                          IStockReservationService stockReservationService){
         this.iProductService = iProductService;
         this.productMapper = productMapper;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+        this.stockReservationService = stockReservationService;
     }
 
     /**
@@ -38,40 +59,98 @@ public class ProductRestController {
      *
      * URL de ejemplo: GET http://localhost:8080/api/product/getAll
      *
+     * La respuesta se sirve ya serializada desde CatalogResponseCache, con ETag.
+     *
+     * @param ifNoneMatch ETag que el cliente ya tiene; si coincide se responde 304.
      * @return ResponseEntity con la lista de los productos.
      */
     @Operation(summary = "Obtener todos los productos", description = "Lista todos los productos disponibles en el catálogo.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Lista de productos obtenida exitosamente"),
+            @ApiResponse(responseCode = "304", description = "La lista no ha cambiado desde el ETag indicado"),
+            @ApiResponse(responseCode = "500", description = "Error interno del servidor")
+    })
+    @GetMapping(path = "/getAll", produces = { MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<byte[]> getAll(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return responseCache.getAllProducts(iProductService::getAllDtos)
+                .toResponseEntity(ifNoneMatch);
+    }
+    /**
+     * Exporta todos los productos en streaming como NDJSON (un ProductDTO JSON por línea).
+     * Los productos se leen de la BD con un cursor y se escriben directamente en la respuesta,
+     * por lo que la memoria usada no depende del tamaño del catálogo.
+     *
+     * URL de ejemplo: GET http://localhost:8080/api/product/getAll?format=ndjson
+     *
+     * @return ResponseEntity con el cuerpo escrito en streaming.
+     */
+    @Operation(summary = "Exportar todos los productos (NDJSON)", description = "Exporta el catálogo completo en streaming, un producto JSON por línea.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Exportación en curso"),
             @ApiResponse(responseCode = "500", description = "Error interno del servidor")
     })
-    @GetMapping("/getAll")
-    public ResponseEntity<List<ProductDTO>> getAll() {
-        return new ResponseEntity<List<ProductDTO>>(
-                productMapper.toDtoList(iProductService.getAll()), 
-                HttpStatus.OK
-            );
+    @GetMapping(path = "/getAll", params = "format=ndjson", produces = { NDJSON_VALUE })
+    public ResponseEntity<StreamingResponseBody> exportAll() {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+                generator.setRootValueSeparator(null); // El separador entre objetos es el salto de línea
+                iProductService.streamAllDtos(dto -> {
+                    try {
+                        generator.writeObject(dto);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_VALUE))
+                .body(body);
     }
+
     /**
      * Buscar un producto por su ID.
      *
      * URL de ejemplo: GET http://localhost:8080/api/product/getById/{id}
      *
      * @param id El ID del producto a buscar.
+     * @param ifNoneMatch ETag que el cliente ya tiene; si coincide se responde 304.
      * @return ResponseEntity con el producto de la operación.
      */
     @Operation(summary = "Obtener producto por ID", description = "Obtiene los detalles de un producto específico por su ID.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Producto encontrado exitosamente"),
+            @ApiResponse(responseCode = "304", description = "El producto no ha cambiado desde el ETag indicado"),
             @ApiResponse(responseCode = "404", description = "Producto no encontrado"),
             @ApiResponse(responseCode = "500", description = "Error interno del servidor")
     })
-    @GetMapping("/getById/{id}")
-    public ResponseEntity<ProductDTO> getById(@PathVariable Long id) {
-        return iProductService.getById(id).map(
-            obj -> new ResponseEntity<ProductDTO>(productMapper.toDto(obj), HttpStatus.OK))
+    @GetMapping(path = "/getById/{id}", produces = { MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<byte[]> getById(@PathVariable Long id,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return responseCache.getProduct(id, () -> iProductService.getDtoById(id))
+            .map(response -> response.toResponseEntity(ifNoneMatch))
             .orElseGet(()->new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
+    /**
+     * Disponibilidad de un producto: stock menos las unidades reservadas en carritos.
+     * Se calcula en memoria (solo la primera consulta de cada producto lee su stock de la BD).
+     *
+     * URL de ejemplo: GET http://localhost:8080/api/product/getAvailability/{id}
+     *
+     * @param id El ID del producto.
+     * @return ResponseEntity con el stock, las reservas y la cantidad disponible.
+     */
+    @Operation(summary = "Obtener disponibilidad de un producto", description = "Stock menos las reservas vigentes de los carritos.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Disponibilidad obtenida exitosamente"),
+            @ApiResponse(responseCode = "404", description = "Producto no encontrado"),
+            @ApiResponse(responseCode = "500", description = "Error interno del servidor")
+    })
+    @GetMapping(path = "/getAvailability/{id}", produces = { MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<StockAvailabilityDTO> getAvailability(@PathVariable Long id) {
+        return ResponseEntity.ok(stockReservationService.getAvailability(id));
+    }
     /**
      * Crea un producto.
      *
@@ -171,4 +250,38 @@ public class ProductRestController {
         return ResponseEntity.ok(page.map(productMapper::toDto));
     }
 
+    /**
+     * Búsqueda con paginación keyset (cursor), pensada para scroll infinito.
+     * No ejecuta count(*) ni usa OFFSET: cada página continúa a partir del cursor de la anterior.
+     *
+     * URL de ejemplo: GET http://localhost:8080/api/product/search?keyset=true&sortBy=price&size=20&cursor={nextCursor}
+     *
+     * @param sortBy Campo de orden: id, name o price (el id se usa siempre como desempate).
+     * @param direction asc o desc.
+     * @param cursor Cursor opaco devuelto por la página anterior (vacío en la primera página).
+     * @param size Tamaño de página (máximo 100).
+     * @return ResponseEntity con la página y el cursor de la siguiente.
+     */
+    @Operation(summary = "Buscar productos con paginación por cursor", description = "Búsqueda filtrada con paginación keyset, sin total de elementos.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Página obtenida exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Cursor o campo de orden inválido"),
+            @ApiResponse(responseCode = "500", description = "Error interno del servidor")
+    })
+    @GetMapping(path = "/search", params = "keyset=true")
+    public ResponseEntity<CursorPageDTO<ProductDTO>> getAllProductsKeyset(
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        CursorPageDTO<Product> page = iProductService.getProductsWithFilterKeyset(
+                search, minPrice, maxPrice, categoryId, sortBy, !"desc".equalsIgnoreCase(direction), cursor, size);
+        return ResponseEntity.ok(page.map(productMapper::toDto));
+    }
+
 }
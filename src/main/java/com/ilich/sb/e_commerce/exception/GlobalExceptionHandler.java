@@ -1,5 +1,6 @@
 package com.ilich.sb.e_commerce.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -101,10 +102,23 @@ public class GlobalExceptionHandler {
         } else if (ex.getMessage().contains("Quantity must be positive.")
                 || ex.getMessage().contains("Not enough stock for product")
                 || ex.getMessage().contains("Cannot create an order from an empty cart.")
+                || ex.getMessage().contains("Invalid cursor.")
+                || ex.getMessage().contains("Invalid cart operation")
+                || ex.getMessage().contains("Invalid Idempotency-Key header")
         ) { // Captura esta específica del CartService
             body.put("status", HttpStatus.BAD_REQUEST.value());
             body.put("error", "Bad Request");
             return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+        } else if (ex.getMessage().contains("Order queue is full")) {
+            // Contrapresión de los pedidos asíncronos: el cliente debe reintentar más tarde
+            body.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+            body.put("error", "Service Unavailable");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(body);
+        } else if (ex.getMessage().contains("Idempotency-Key is still in progress")) {
+            // La primera petición con esa clave aún no ha terminado: el cliente debe repetir más tarde
+            body.put("status", HttpStatus.CONFLICT.value());
+            body.put("error", "Conflict");
+            return ResponseEntity.status(HttpStatus.CONFLICT).header(HttpHeaders.RETRY_AFTER, "1").body(body);
         } else if (ex.getMessage().contains("Access Denied")) {
             body.put("status", HttpStatus.UNAUTHORIZED.value());
             return new ResponseEntity<>(body, HttpStatus.UNAUTHORIZED);
@@ -3,8 +3,10 @@ package com.ilich.sb.e_commerce.mapper;
 import com.ilich.sb.e_commerce.model.CartItem;
 import com.ilich.sb.e_commerce.payload.response.CartItemResponseDTO;
 import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
+import com.ilich.sb.e_commerce.repository.ICartRepository.CartView;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -32,4 +34,20 @@ public class CartMapper {
                 .collect(Collectors.toSet());
         return new CartResponseDTO(cartId, itemResponses, total);
     }
+
+    // Mapeo de las filas de la vista del carrito (una por ítem) a CartResponse
+    public static CartResponseDTO mapToCartResponse(List<CartView> rows) {
+        Set<CartItemResponseDTO> itemResponses = rows.stream()
+                .filter(row -> row.getCartItemId() != null) // Carrito vacío: una fila sin ítem
+                .map(row -> new CartItemResponseDTO(
+                        row.getCartItemId(),
+                        row.getProductId(),
+                        row.getProductName(),
+                        row.getProductPrice(),
+                        row.getQuantity(),
+                        row.getSubtotal()))
+                .collect(Collectors.toSet());
+        BigDecimal total = rows.get(0).getTotal();
+        return new CartResponseDTO(rows.get(0).getCartId(), itemResponses, total != null ? total : BigDecimal.ZERO);
+    }
 }
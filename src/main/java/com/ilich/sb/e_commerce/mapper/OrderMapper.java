@@ -4,6 +4,8 @@ import com.ilich.sb.e_commerce.model.Order;
 import com.ilich.sb.e_commerce.model.OrderItem;
 import com.ilich.sb.e_commerce.payload.response.OrderItemResponse;
 import com.ilich.sb.e_commerce.payload.response.OrderResponse;
+import com.ilich.sb.e_commerce.repository.IOrderItemRepository.OrderItemHistoryView;
+import com.ilich.sb.e_commerce.repository.IOrderRepository.OrderHistoryView;
 
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -57,4 +59,39 @@ public class OrderMapper {
                 itemResponses
         );
     }
+
+    /**
+     * Mapea la proyección de un ítem del historial de pedidos a OrderItemResponse.
+     *
+     * @param item La proyección del ítem (ya incluye el nombre del producto).
+     * @return Un objeto OrderItemResponse.
+     */
+    public static OrderItemResponse toOrderItemResponse(OrderItemHistoryView item) {
+        return new OrderItemResponse(
+                item.getOrderItemId(),
+                item.getProductId(),
+                item.getProductName(),
+                item.getPriceAtPurchase(),
+                item.getQuantity(),
+                item.getSubtotal()
+        );
+    }
+
+    /**
+     * Mapea la cabecera de un pedido del historial junto con sus ítems ya mapeados.
+     *
+     * @param order La proyección de la cabecera del pedido.
+     * @param items Los ítems del pedido.
+     * @return Un objeto OrderResponse.
+     */
+    public static OrderResponse toOrderResponse(OrderHistoryView order, Set<OrderItemResponse> items) {
+        return new OrderResponse(
+                order.getOrderId(),
+                order.getUserId(),
+                order.getOrderDate(),
+                order.getTotalAmount(),
+                order.getStatus(),
+                items
+        );
+    }
 }
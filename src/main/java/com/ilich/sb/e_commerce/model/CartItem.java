@@ -4,7 +4,10 @@ import jakarta.persistence.*;
 import java.math.BigDecimal; // Para el precio total del ítem si lo necesitas aquí
 
 @Entity
-@Table(name = "cart_items") // Nombre de la tabla en la base de datos
+@Table(name = "cart_items", // Nombre de la tabla en la base de datos
+        // Un producto aparece una sola vez por carrito: los adds concurrentes suman cantidad (upsert) en lugar de duplicar la fila.
+        // En una BD existente, "sql/Migracion items carrito unicos.sql" fusiona antes los duplicados y crea la restricción.
+        uniqueConstraints = @UniqueConstraint(name = "uk_cart_items_cart_product", columnNames = { "cart_id", "product_id" }))
 public class CartItem {
 
     @Id
@@ -8,6 +8,7 @@ import lombok.NoArgsConstructor;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.ilich.sb.e_commerce.cache.CatalogCacheEvictionListener;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.ilich.sb.e_commerce.payload.CategoryDTO;
 
@@ -15,6 +16,7 @@ import com.ilich.sb.e_commerce.payload.CategoryDTO;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(CatalogCacheEvictionListener.class) // Mantiene coherentes las cachés del catálogo
 @Table(name = "category")
 public class Category {
 
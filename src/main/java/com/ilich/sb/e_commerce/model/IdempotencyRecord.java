@@ -0,0 +1,124 @@
+package com.ilich.sb.e_commerce.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Resultado de un POST /api/orders con cabecera Idempotency-Key (copia persistida de la caché en memoria
+ * de OrderIdempotencyServiceImpl). Mientras el pedido se procesa la fila existe sin respuesta: reserva la clave
+ * hasta locked_until. Pasado ese momento sin respuesta, la instancia que la tenía se da por caída y otra puede retomarla.
+ * Sin clave foránea a users: es una caché con caducidad y no debe impedir el borrado de usuarios.
+ */
+@Entity
+@Table(name = "idempotency_keys",
+        uniqueConstraints = @UniqueConstraint(name = "uk_idempotency_keys_user_key", columnNames = { "user_id", "idempotency_key" }),
+        indexes = @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at"))
+public class IdempotencyRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String idempotencyKey;
+
+    // Respuesta original; null mientras la petición está en curso
+    @Column(name = "http_status")
+    private Integer httpStatus;
+
+    @Column(length = 255)
+    private String location;
+
+    @Lob
+    @Column(name = "response_body")
+    private String responseBody;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    // Fin del lease de la petición en curso; null cuando ya hay respuesta
+    @Column(name = "locked_until")
+    private Instant lockedUntil;
+
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(Long userId, String idempotencyKey, Instant expiresAt, Instant lockedUntil) {
+        this.userId = userId;
+        this.idempotencyKey = idempotencyKey;
+        this.expiresAt = expiresAt;
+        this.lockedUntil = lockedUntil;
+    }
+
+    public boolean isCompleted() {
+        return httpStatus != null;
+    }
+
+    // --- Getters y Setters ---
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Integer getHttpStatus() {
+        return httpStatus;
+    }
+
+    public void setHttpStatus(Integer httpStatus) {
+        this.httpStatus = httpStatus;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public void setResponseBody(String responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Instant getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public void setLockedUntil(Instant lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+}
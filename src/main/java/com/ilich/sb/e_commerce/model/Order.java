@@ -1,17 +1,24 @@
 package com.ilich.sb.e_commerce.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // Historial de pedidos de un usuario paginado por fecha (más reciente primero)
+        @Index(name = "idx_orders_user_date", columnList = "user_id, order_date, id")
+})
 public class Order {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia con pool (50 ids por consulta) en lugar de IDENTITY: Hibernate puede agrupar los INSERT en batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -24,8 +31,11 @@ public class Order {
     @Column(name = "total_amount", nullable = false, precision = 10, scale = 2)
     private BigDecimal totalAmount;
 
+    // VARCHAR y no el ENUM nativo que Hibernate 6 crea en MySQL: un valor nuevo del enum no exige alterar la columna.
+    // En una BD existente, "sql/Migracion estado pedidos.sql" convierte la columna ENUM ya creada
     @Enumerated(EnumType.STRING)
-    @Column(name = "status", nullable = false)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(name = "status", nullable = false, length = 20)
     private OrderStatus status; // Enum para el estado del pedido (PENDING, COMPLETED, CANCELLED, etc.)
 
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
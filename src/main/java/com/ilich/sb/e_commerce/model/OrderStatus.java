@@ -6,7 +6,9 @@ public enum OrderStatus {
     SHIPPED,        // Enviado
     DELIVERED,      // Entregado al cliente
     CANCELLED,      // Cancelado por el usuario o administrador
-    REFUNDED        // Reembolsado
+    REFUNDED,       // Reembolsado
+    CONFIRMED,      // Pedido asíncrono procesado: stock descontado y carrito vaciado
+    REJECTED        // Pedido asíncrono rechazado (sin stock, carrito vacío...)
 
 
 }
\ No newline at end of file
@@ -7,6 +7,8 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import com.ilich.sb.e_commerce.cache.CatalogCacheEvictionListener;
+import com.ilich.sb.e_commerce.service.impl.ProductSearchIndexListener;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.ilich.sb.e_commerce.payload.ProductDTO;
 
@@ -14,7 +16,13 @@ import com.ilich.sb.e_commerce.payload.ProductDTO;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "product")
+// Mantienen coherentes las cachés del catálogo y el índice de búsqueda
+@EntityListeners({ CatalogCacheEvictionListener.class, ProductSearchIndexListener.class })
+@Table(name = "product", indexes = {
+        // Soportan la paginación keyset por (campo de orden, id)
+        @Index(name = "idx_product_name_id", columnList = "name, id"),
+        @Index(name = "idx_product_price_id", columnList = "price, id")
+})
 public class Product {
 
     @Id
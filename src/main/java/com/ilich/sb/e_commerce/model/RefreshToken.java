@@ -2,18 +2,33 @@ package com.ilich.sb.e_commerce.model;
 
 
 import jakarta.persistence.*;
+
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import com.ilich.sb.e_commerce.util.SecureTokens;
+
 import java.time.Instant; // Usaremos Instant para fechas para mayor precisión y compatibilidad con JPA
 
 @Entity
-@Table(name = "refresh_tokens")
+@Table(name = "refresh_tokens",
+        indexes = @Index(name = "idx_refresh_tokens_expiry_date", columnList = "expiry_date")) // Limpieza de expirados
 public class RefreshToken {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    // El token en sí, debe ser una cadena aleatoria y única
-    @Column(nullable = false, unique = true, length = 255) // Tamaño suficiente para UUID u otra cadena
+    // SHA-256 del token, en una columna BINARY(32) de ancho fijo: el valor en claro solo lo tiene el cliente.
+    // La rotación busca y reemplaza por este hash en un único UPDATE.
+    // nullable: ddl-auto=update la añade así a las tablas con filas. El NOT NULL llega con el script
+    // sql/Migracion refresh tokens hash.sql, cuando ya no quedan instancias que inserten sin hash
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "token_hash", unique = true, length = SecureTokens.HASH_BYTES)
+    private byte[] tokenHash;
+
+    // El token en claro: solo en memoria al crearlo o rotarlo, para devolverlo al cliente
+    @Transient
     private String token;
 
     // Relación con el usuario: Un usuario puede tener varios refresh tokens (si se permite iniciar sesión en múltiples dispositivos)
@@ -33,7 +48,7 @@ public class RefreshToken {
 
     // --- Constructor con argumentos ---
     public RefreshToken(String token, User user, Instant expiryDate) {
-        this.token = token;
+        setToken(token);
         this.user = user;
         this.expiryDate = expiryDate;
     }
@@ -51,8 +66,14 @@ public class RefreshToken {
         return token;
     }
 
+    // Fija el token en claro y su hash
     public void setToken(String token) {
         this.token = token;
+        this.tokenHash = SecureTokens.hash(token);
+    }
+
+    public byte[] getTokenHash() {
+        return tokenHash;
     }
 
     public User getUser() {
@@ -75,7 +96,6 @@ public class RefreshToken {
     public String toString() {
         return "RefreshToken{" +
                "id=" + id +
-               ", token='" + token.substring(0, Math.min(token.length(), 20)) + "...'" + // Truncar para logs
                ", userId=" + (user != null ? user.getId() : "null") +
                ", expiryDate=" + expiryDate +
                '}';
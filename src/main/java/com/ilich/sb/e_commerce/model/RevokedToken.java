@@ -5,7 +5,8 @@ import java.io.Serializable;
 import java.util.Date;
 
 @Entity
-@Table(name = "revoked_tokens")
+@Table(name = "revoked_tokens",
+        indexes = @Index(name = "idx_revoked_tokens_expiry_date", columnList = "expiry_date")) // Limpieza de expirados
 public class RevokedToken implements Serializable {
 
     @Id
@@ -15,6 +16,11 @@ public class RevokedToken implements Serializable {
     @Column(nullable = false, unique = true, length = 500) // JWTs pueden ser largos
     private String token;
 
+    // Identificador único del token (claim "jti"). Los tokens se revocan ahora por su clave de 16 bytes
+    // en las tablas revoked_keys_<bucket> (RevokedTokenCache); esta tabla solo se lee para migrarla.
+    @Column(unique = true, length = 36)
+    private String jti;
+
     @Column(nullable = false)
     private Date expiryDate; // Fecha de expiración original del token
 
@@ -26,6 +32,12 @@ public class RevokedToken implements Serializable {
         this.expiryDate = expiryDate;
     }
 
+    public RevokedToken(String token, String jti, Date expiryDate) {
+        this.token = token;
+        this.jti = jti;
+        this.expiryDate = expiryDate;
+    }
+
     // --- Getters y Setters ---
     public Long getId() {
         return id;
@@ -43,6 +55,14 @@ public class RevokedToken implements Serializable {
         this.token = token;
     }
 
+    public String getJti() {
+        return jti;
+    }
+
+    public void setJti(String jti) {
+        this.jti = jti;
+    }
+
     public Date getExpiryDate() {
         return expiryDate;
     }
@@ -56,6 +76,7 @@ public class RevokedToken implements Serializable {
         return "RevokedToken{" +
                "id=" + id +
                ", token='" + token.substring(0, Math.min(token.length(), 50)) + "...'" + // Truncar para logs
+               ", jti='" + jti + '\'' +
                ", expiryDate=" + expiryDate +
                '}';
     }
@@ -0,0 +1,84 @@
+package com.ilich.sb.e_commerce.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Reserva temporal de stock de un producto para un carrito (copia persistida de las reservas en memoria
+ * de StockReservationServiceImpl, que se escribe en batches y se recarga al arrancar).
+ * Sin claves foráneas: la tabla se escribe por JDBC en segundo plano y no debe bloquear ni depender
+ * del borrado de carritos o productos; las filas huérfanas caducan solas.
+ */
+@Entity
+@Table(name = "stock_reservation",
+        uniqueConstraints = @UniqueConstraint(name = "uk_stock_reservation_cart_product", columnNames = { "cart_id", "product_id" }),
+        indexes = @Index(name = "idx_stock_reservation_expires_at", columnList = "expires_at"))
+public class StockReservation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "cart_id", nullable = false)
+    private Long cartId;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    public StockReservation() {
+    }
+
+    public StockReservation(Long cartId, Long productId, Integer quantity, Instant expiresAt) {
+        this.cartId = cartId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+    }
+
+    // --- Getters y Setters ---
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCartId() {
+        return cartId;
+    }
+
+    public void setCartId(Long cartId) {
+        this.cartId = cartId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -9,8 +9,11 @@ import org.springframework.security.core.userdetails.UserDetails;
 import java.util.Collection;
 import java.util.stream.Collectors;
 
+import com.ilich.sb.e_commerce.service.impl.UserCacheEvictionListener;
+
 
 @Entity
+@EntityListeners(UserCacheEvictionListener.class) // Mantiene coherente la caché de UserDetails
 @Table(name = "users",uniqueConstraints = {
         @UniqueConstraint(columnNames = "username")
 }) // Renombra si ya tienes una tabla 'user'
@@ -64,6 +67,7 @@ public class User implements UserDetails {
     public String getPassword() { return password; }
     public void setPassword(String password) { this.password = password; }
     public Set<Role> getRoles() { return roles; }
+    // Cambiar solo los roles no dispara @PostUpdate: hay que llamar después a UserDetailsServiceImpl.evictUser
     public void setRoles(Set<Role> roles) { this.roles = roles; }
 
     // --- Métodos de UserDetails (implementación de Spring Security) ---
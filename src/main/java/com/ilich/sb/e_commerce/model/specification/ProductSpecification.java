@@ -1,6 +1,7 @@
 package com.ilich.sb.e_commerce.model.specification;
 
 import com.ilich.sb.e_commerce.model.Product;
+import jakarta.persistence.criteria.Path;
 import org.springframework.data.jpa.domain.Specification;
 
 public class ProductSpecification {
@@ -25,4 +26,27 @@ public class ProductSpecification {
                 criteriaBuilder.equal(root.get("category").get("id"), categoryId);
     }
 
-}
\ No newline at end of file
+    /**
+     * Predicado "seek" para paginación keyset: filas estrictamente posteriores a (lastValue, lastId)
+     * según el orden (sortField, id). Con un índice sobre (sortField, id) evita el OFFSET.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static Specification<Product> seekAfter(String sortField, Comparable lastValue, Long lastId, boolean ascending) {
+        return (root, query, criteriaBuilder) -> {
+            Path<Comparable> sortPath = root.get(sortField);
+            Path<Long> idPath = root.get("id");
+            if ("id".equals(sortField)) {
+                return ascending ? criteriaBuilder.greaterThan(idPath, lastId) : criteriaBuilder.lessThan(idPath, lastId);
+            }
+            if (ascending) {
+                return criteriaBuilder.or(
+                        criteriaBuilder.greaterThan(sortPath, lastValue),
+                        criteriaBuilder.and(criteriaBuilder.equal(sortPath, lastValue), criteriaBuilder.greaterThan(idPath, lastId)));
+            }
+            return criteriaBuilder.or(
+                    criteriaBuilder.lessThan(sortPath, lastValue),
+                    criteriaBuilder.and(criteriaBuilder.equal(sortPath, lastValue), criteriaBuilder.lessThan(idPath, lastId)));
+        };
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.ilich.sb.e_commerce.payload.request;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+// Una operación sobre un producto del carrito: fija la cantidad (quantity) o la suma/resta (delta), nunca ambas
+public class CartItemOperationDTO {
+    @NotNull(message = "Product ID cannot be null")
+    private Long productId;
+
+    // Cantidad final; 0 elimina el producto del carrito
+    @Min(value = 0, message = "Quantity cannot be negative")
+    private Integer quantity;
+
+    // Cantidad a sumar (o restar si es negativa); si el resultado es 0 o menos, el producto se elimina
+    private Integer delta;
+
+    // Constructor vacío
+    public CartItemOperationDTO() {
+    }
+
+    public CartItemOperationDTO(Long productId, Integer quantity, Integer delta) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.delta = delta;
+    }
+
+    // Getters y Setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Integer getDelta() {
+        return delta;
+    }
+
+    public void setDelta(Integer delta) {
+        this.delta = delta;
+    }
+}
@@ -0,0 +1,31 @@
+package com.ilich.sb.e_commerce.payload.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class UpdateCartItemsRequestDTO {
+    // Se aplican en orden: varias operaciones sobre el mismo producto se acumulan
+    @NotEmpty(message = "Operations cannot be empty")
+    @Size(max = 200, message = "At most 200 operations per request")
+    private List<@Valid CartItemOperationDTO> operations;
+
+    // Constructor vacío
+    public UpdateCartItemsRequestDTO() {
+    }
+
+    public UpdateCartItemsRequestDTO(List<CartItemOperationDTO> operations) {
+        this.operations = operations;
+    }
+
+    // Getters y Setters
+    public List<CartItemOperationDTO> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(List<CartItemOperationDTO> operations) {
+        this.operations = operations;
+    }
+}
@@ -0,0 +1,67 @@
+package com.ilich.sb.e_commerce.payload.response;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Página de resultados con paginación por cursor (keyset).
+ * No incluye totales: para obtener la siguiente página se envía nextCursor tal cual.
+ */
+public class CursorPageDTO<T> {
+    private List<T> content;
+    private String nextCursor; // null cuando no hay más resultados
+    private boolean hasNext;
+    private int size;
+
+    // Constructor vacío
+    public CursorPageDTO() {
+    }
+
+    // Constructor completo
+    public CursorPageDTO(List<T> content, String nextCursor, int size) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.hasNext = nextCursor != null;
+        this.size = size;
+    }
+
+    // Convierte el contenido manteniendo el cursor (ej. de entidades a DTOs)
+    public <R> CursorPageDTO<R> map(Function<? super T, ? extends R> mapper) {
+        List<R> mapped = content.stream().map(mapper).collect(Collectors.toList());
+        return new CursorPageDTO<>(mapped, nextCursor, size);
+    }
+
+    // Getters y Setters
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
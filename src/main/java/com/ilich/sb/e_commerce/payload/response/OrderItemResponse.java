@@ -10,6 +10,10 @@ public class OrderItemResponse {
     private Integer quantity;
     private BigDecimal subtotal;
 
+    // Constructor vacío para Jackson (respuestas guardadas por OrderIdempotencyServiceImpl)
+    public OrderItemResponse() {
+    }
+
     public OrderItemResponse(Long orderItemId, Long productId, String productName,
                              BigDecimal priceAtPurchase, Integer quantity, BigDecimal subtotal) {
         this.orderItemId = orderItemId;
@@ -13,6 +13,10 @@ public class OrderResponse {
     private OrderStatus status; // Usar el enum OrderStatus
     private Set<OrderItemResponse> items; // Lista de ítems del pedido
 
+    // Constructor vacío para Jackson (respuestas guardadas por OrderIdempotencyServiceImpl)
+    public OrderResponse() {
+    }
+
     public OrderResponse(Long orderId, Long userId, LocalDateTime orderDate,
                          BigDecimal totalAmount, OrderStatus status, Set<OrderItemResponse> items) {
         this.orderId = orderId;
@@ -0,0 +1,56 @@
+package com.ilich.sb.e_commerce.payload.response;
+
+/**
+ * Disponibilidad de un producto: stock físico, unidades reservadas en carritos y disponibles (stock - reservas).
+ */
+public class StockAvailabilityDTO {
+    private Long productId;
+    private int stock;
+    private int reserved;
+    private int available;
+
+    // Constructor vacío
+    public StockAvailabilityDTO() {
+    }
+
+    // Constructor completo
+    public StockAvailabilityDTO(Long productId, int stock, int reserved) {
+        this.productId = productId;
+        this.stock = stock;
+        this.reserved = reserved;
+        this.available = Math.max(0, stock - reserved);
+    }
+
+    // Getters y Setters
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    public void setStock(int stock) {
+        this.stock = stock;
+    }
+
+    public int getReserved() {
+        return reserved;
+    }
+
+    public void setReserved(int reserved) {
+        this.reserved = reserved;
+    }
+
+    public int getAvailable() {
+        return available;
+    }
+
+    public void setAvailable(int available) {
+        this.available = available;
+    }
+}
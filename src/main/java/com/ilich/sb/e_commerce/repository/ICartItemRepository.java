@@ -4,16 +4,33 @@ import com.ilich.sb.e_commerce.model.Cart;
 import com.ilich.sb.e_commerce.model.CartItem;
 import com.ilich.sb.e_commerce.model.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 @Repository
-public interface ICartItemRepository extends JpaRepository<CartItem, Long> {
+public interface ICartItemRepository extends JpaRepository<CartItem, Long>, ICartItemUpsertRepository {
     // Método para encontrar un CartItem específico en un carrito para un producto dado
     Optional<CartItem> findByCartAndProduct(Cart cart, Product product);
 
     // Método para encontrar todos los ítems de un carrito específico
     Set<CartItem> findByCart(Cart cart);
+
+    // Solo los ids de producto del carrito (para liberar sus reservas) sin cargar los CartItem
+    @Query("select ci.product.id from CartItem ci where ci.cart.id = :cartId")
+    List<Long> findProductIdsByCartId(Long cartId);
+
+    /**
+     * Vacía el carrito con un único DELETE, sin cargar los ítems. Antes se vuelcan los cambios pendientes
+     * y después se limpia el contexto de persistencia: los CartItem (y el Cart con su colección) que hubiera
+     * cargados quedan desasociados, así que quien llama no debe seguir usándolos como entidades gestionadas.
+     * @return Número de ítems eliminados.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from CartItem ci where ci.cart.id = :cartId")
+    int deleteAllByCartId(Long cartId);
 }
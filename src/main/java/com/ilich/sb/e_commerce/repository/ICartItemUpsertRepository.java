@@ -0,0 +1,57 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.util.Map;
+
+/**
+ * Fragmento de ICartItemRepository para añadir productos al carrito con una sola sentencia atómica.
+ */
+public interface ICartItemUpsertRepository {
+
+    /**
+     * Inserta el ítem (cart_id, product_id) o, si ya existe, le suma la cantidad, apoyándose en la
+     * restricción única uk_cart_items_cart_product. Dos adds concurrentes del mismo producto nunca
+     * duplican la fila ni pierden cantidad. La sentencia depende de la BD: ON CONFLICT DO UPDATE en
+     * PostgreSQL, ON DUPLICATE KEY UPDATE en MySQL/MariaDB y MERGE en el resto (H2 en los tests).
+     * No pasa por Hibernate: un CartItem ya cargado en el contexto de persistencia no se actualiza.
+     *
+     * @param cartId El ID del carrito.
+     * @param productId El ID del producto.
+     * @param quantity La cantidad a sumar (positiva).
+     * @return El id del ítem y su cantidad total tras la suma.
+     */
+    UpsertedCartItem addQuantity(Long cartId, Long productId, int quantity);
+
+    /**
+     * Fija la cantidad final de varios productos del carrito en batch: un upsert en batch para las
+     * cantidades positivas y un DELETE en batch para las demás.
+     *
+     * @param cartId El ID del carrito.
+     * @param quantities id de producto -> cantidad final (0 o menos elimina el ítem).
+     */
+    void setQuantities(Long cartId, Map<Long, Integer> quantities);
+
+    /**
+     * Igual que setQuantities(cartId, quantities) para varios carritos a la vez, con los mismos dos batches.
+     *
+     * @param quantitiesByCart id de carrito -> (id de producto -> cantidad final).
+     */
+    void setQuantities(Map<Long, Map<Long, Integer>> quantitiesByCart);
+
+    final class UpsertedCartItem {
+        private final Long id;
+        private final int quantity;
+
+        public UpsertedCartItem(Long id, int quantity) {
+            this.id = id;
+            this.quantity = quantity;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+/**
+ * Implementación JDBC de ICartItemUpsertRepository (Spring Data la enlaza por el sufijo "Impl").
+ * La sentencia se elige una vez según el producto de BD que informa el driver.
+ */
+public class ICartItemUpsertRepositoryImpl implements ICartItemUpsertRepository {
+
+    // Devuelve la fila resultante en la misma ida y vuelta
+    private static final String POSTGRES_UPSERT_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity) VALUES (?, ?, ?) " +
+            "ON CONFLICT (cart_id, product_id) DO UPDATE SET quantity = cart_items.quantity + EXCLUDED.quantity " +
+            "RETURNING id, quantity";
+
+    // Alias de fila (MySQL 8.0.19+): VALUES(col) en ON DUPLICATE KEY UPDATE está obsoleto
+    private static final String MYSQL_UPSERT_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity) VALUES (?, ?, ?) AS new " +
+            "ON DUPLICATE KEY UPDATE quantity = cart_items.quantity + new.quantity";
+
+    // MariaDB no admite el alias de fila; allí VALUES(col) sigue siendo la forma soportada
+    private static final String MARIADB_UPSERT_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity)";
+
+    private static final String MERGE_SQL =
+            "MERGE INTO cart_items t USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS INTEGER))) s (cart_id, product_id, quantity) " +
+            "ON t.cart_id = s.cart_id AND t.product_id = s.product_id " +
+            "WHEN MATCHED THEN UPDATE SET quantity = t.quantity + s.quantity " +
+            "WHEN NOT MATCHED THEN INSERT (cart_id, product_id, quantity) VALUES (s.cart_id, s.product_id, s.quantity)";
+
+    // Variantes que fijan la cantidad en lugar de sumarla
+    private static final String POSTGRES_SET_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity) VALUES (?, ?, ?) " +
+            "ON CONFLICT (cart_id, product_id) DO UPDATE SET quantity = EXCLUDED.quantity";
+
+    private static final String MYSQL_SET_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity) VALUES (?, ?, ?) AS new " +
+            "ON DUPLICATE KEY UPDATE quantity = new.quantity";
+
+    private static final String MARIADB_SET_SQL =
+            "INSERT INTO cart_items (cart_id, product_id, quantity) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE quantity = VALUES(quantity)";
+
+    private static final String MERGE_SET_SQL = MERGE_SQL.replace("quantity = t.quantity + s.quantity", "quantity = s.quantity");
+
+    private static final String DELETE_SQL = "DELETE FROM cart_items WHERE cart_id = ? AND product_id = ?";
+
+    private static final String SELECT_SQL = "SELECT id, quantity FROM cart_items WHERE cart_id = ? AND product_id = ?";
+
+    private static final RowMapper<UpsertedCartItem> ROW_MAPPER =
+            (rs, rowNum) -> new UpsertedCartItem(rs.getLong("id"), rs.getInt("quantity"));
+
+    private enum Dialect { POSTGRES, MYSQL, MARIADB, MERGE }
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Dialect dialect;
+
+    public ICartItemUpsertRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public UpsertedCartItem addQuantity(Long cartId, Long productId, int quantity) {
+        switch (dialect()) {
+            case POSTGRES:
+                return jdbcTemplate.queryForObject(POSTGRES_UPSERT_SQL, ROW_MAPPER, cartId, productId, quantity);
+            case MYSQL:
+                jdbcTemplate.update(MYSQL_UPSERT_SQL, cartId, productId, quantity);
+                break;
+            case MARIADB:
+                jdbcTemplate.update(MARIADB_UPSERT_SQL, cartId, productId, quantity);
+                break;
+            default:
+                try {
+                    jdbcTemplate.update(MERGE_SQL, cartId, productId, quantity);
+                } catch (DuplicateKeyException e) {
+                    // MERGE no es atómico en todas las BD: otro add insertó la fila entre la búsqueda y el INSERT
+                    jdbcTemplate.update(MERGE_SQL, cartId, productId, quantity);
+                }
+                break;
+        }
+        // MySQL, MariaDB y MERGE no devuelven la fila: se lee dentro de la misma transacción (ya tiene el bloqueo de la fila)
+        return jdbcTemplate.queryForObject(SELECT_SQL, ROW_MAPPER, cartId, productId);
+    }
+
+    @Override
+    public void setQuantities(Long cartId, Map<Long, Integer> quantities) {
+        setQuantities(Map.of(cartId, quantities));
+    }
+
+    @Override
+    public void setQuantities(Map<Long, Map<Long, Integer>> quantitiesByCart) {
+        // Orden por carrito y producto: dos peticiones sobre el mismo carrito bloquean las filas en el mismo orden
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        new TreeMap<>(quantitiesByCart).forEach((cartId, quantities) -> new TreeMap<>(quantities).forEach((productId, quantity) -> {
+            if (quantity > 0) {
+                upserts.add(new Object[] { cartId, productId, quantity });
+            } else {
+                deletes.add(new Object[] { cartId, productId });
+            }
+        }));
+
+        if (!upserts.isEmpty()) {
+            Dialect current = dialect();
+            String sql = setSql(current);
+            try {
+                jdbcTemplate.batchUpdate(sql, upserts);
+            } catch (DuplicateKeyException e) {
+                if (current != Dialect.MERGE) {
+                    throw e;
+                }
+                jdbcTemplate.batchUpdate(sql, upserts); // Fija cantidades absolutas: repetir el batch es seguro
+            }
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, deletes);
+        }
+    }
+
+    private static String setSql(Dialect dialect) {
+        switch (dialect) {
+            case POSTGRES:
+                return POSTGRES_SET_SQL;
+            case MYSQL:
+                return MYSQL_SET_SQL;
+            case MARIADB:
+                return MARIADB_SET_SQL;
+            default:
+                return MERGE_SET_SQL;
+        }
+    }
+
+    private Dialect dialect() {
+        Dialect current = dialect;
+        if (current == null) {
+            current = detectDialect();
+            dialect = current;
+        }
+        return current;
+    }
+
+    private Dialect detectDialect() {
+        try {
+            String product = JdbcUtils.commonDatabaseName(JdbcUtils.extractDatabaseMetaData(
+                    jdbcTemplate.getDataSource(), DatabaseMetaData::getDatabaseProductName));
+            if ("PostgreSQL".equals(product)) {
+                return Dialect.POSTGRES;
+            }
+            if ("MySQL".equals(product)) {
+                return Dialect.MYSQL;
+            }
+            if ("MariaDB".equals(product)) {
+                return Dialect.MARIADB;
+            }
+            return Dialect.MERGE;
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Could not detect the database for cart upserts.", e);
+        }
+    }
+}
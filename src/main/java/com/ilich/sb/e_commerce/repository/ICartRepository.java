@@ -3,12 +3,37 @@ package com.ilich.sb.e_commerce.repository;
 import com.ilich.sb.e_commerce.model.Cart;
 import com.ilich.sb.e_commerce.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ICartRepository extends JpaRepository<Cart, Long> {
     // Método para encontrar un carrito por el usuario al que pertenece
     Optional<Cart> findByUser(User user);
+
+    /**
+     * Vista de lectura del carrito en una sola consulta: una fila por ítem con el nombre y precio del producto,
+     * el subtotal y el total del carrito (calculados en SQL). Un carrito vacío devuelve una fila con los campos
+     * del ítem a null; un usuario sin carrito no devuelve filas.
+     */
+    @Query("select c.id as cartId, ci.id as cartItemId, p.id as productId, p.name as productName, " +
+            "p.price as productPrice, ci.quantity as quantity, p.price * ci.quantity as subtotal, " +
+            "sum(p.price * ci.quantity) over () as total " +
+            "from Cart c left join c.cartItems ci left join ci.product p where c.user = :user")
+    List<CartView> findCartViewByUser(User user);
+
+    interface CartView {
+        Long getCartId();
+        Long getCartItemId();
+        Long getProductId();
+        String getProductName();
+        BigDecimal getProductPrice();
+        Integer getQuantity();
+        BigDecimal getSubtotal();
+        BigDecimal getTotal();
+    }
 }
@@ -0,0 +1,50 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ilich.sb.e_commerce.model.IdempotencyRecord;
+
+@Repository
+public interface IIdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    // Solo se consulta cuando la clave no está en la caché en memoria
+    Optional<IdempotencyRecord> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    // Un único DELETE, sin cargar las entidades
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.expiresAt < :instant")
+    int deleteExpired(Instant instant);
+
+    /**
+     * Retoma una reserva abandonada con un nuevo lease: solo si sigue sin respuesta y su lease ha vencido.
+     * Se confirma en su propia transacción para que las demás instancias vean el nuevo lease.
+     * @return 1 si se retomó; 0 si otra petición la retomó antes o ya tiene respuesta.
+     */
+    @Transactional
+    @Modifying
+    @Query("update IdempotencyRecord r set r.lockedUntil = :lease where r.id = :id " +
+            "and r.httpStatus is null and (r.lockedUntil is null or r.lockedUntil < :now)")
+    int takeOver(Long id, Instant lease, Instant now);
+
+    /**
+     * Guarda la respuesta, en la transacción del pedido, solo si la reserva sigue siendo de quien tiene ese lease.
+     * @return 1 si se guardó; 0 si otra petición retomó la reserva.
+     */
+    @Modifying
+    @Query("update IdempotencyRecord r set r.httpStatus = :httpStatus, r.location = :location, " +
+            "r.responseBody = :responseBody, r.lockedUntil = null where r.id = :id and r.lockedUntil = :lease")
+    int complete(Long id, Instant lease, int httpStatus, String location, String responseBody);
+
+    // Libera la clave tras un fallo, salvo que otra petición ya haya retomado la reserva
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.id = :id and r.lockedUntil = :lease")
+    int release(Long id, Instant lease);
+}
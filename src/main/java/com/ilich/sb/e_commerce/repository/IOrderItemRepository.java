@@ -3,8 +3,11 @@ package com.ilich.sb.e_commerce.repository;
 import com.ilich.sb.e_commerce.model.Order;
 import com.ilich.sb.e_commerce.model.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,6 +16,22 @@ public interface IOrderItemRepository extends JpaRepository<OrderItem, Long> {
     // Encuentra todos los ítems de un pedido específico.
     List<OrderItem> findByOrder(Order order);
 
+    // Ítems (con el nombre del producto) de una página del historial de pedidos, en una sola consulta
+    @Query("select oi.order.id as orderId, oi.id as orderItemId, p.id as productId, p.name as productName, " +
+            "oi.priceAtPurchase as priceAtPurchase, oi.quantity as quantity, oi.subtotal as subtotal " +
+            "from OrderItem oi join oi.product p where oi.order.id in :orderIds order by oi.id")
+    List<OrderItemHistoryView> findHistoryItemsByOrderIds(Collection<Long> orderIds);
+
+    interface OrderItemHistoryView {
+        Long getOrderId();
+        Long getOrderItemId();
+        Long getProductId();
+        String getProductName();
+        BigDecimal getPriceAtPurchase();
+        Integer getQuantity();
+        BigDecimal getSubtotal();
+    }
+
     // Puedes añadir más métodos personalizados si lo necesitas.
     // Por ejemplo, para encontrar un OrderItem por un producto específico dentro de un pedido:
     // Optional<OrderItem> findByOrderAndProduct(Order order, Product product);
@@ -1,10 +1,18 @@
 package com.ilich.sb.e_commerce.repository;
 
 import com.ilich.sb.e_commerce.model.Order;
+import com.ilich.sb.e_commerce.model.OrderStatus;
 import com.ilich.sb.e_commerce.model.User;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,8 +25,45 @@ public interface IOrderRepository extends JpaRepository<Order, Long> {
 
     // Encuentra un pedido específico por su ID y el usuario al que pertenece.
     // Esto añade una capa de seguridad para asegurar que un usuario solo pueda acceder a sus propios pedidos.
+    // Los ítems y sus productos se traen en la misma consulta (el mapper los recorre todos).
+    @EntityGraph(attributePaths = { "orderItems", "orderItems.product" })
     Optional<Order> findByIdAndUser(Long id, User user);
 
+    /**
+     * Cabeceras del historial de pedidos de un usuario, de más reciente a más antiguo, sin cargar entidades.
+     * Los ítems se piden aparte para toda la página con IOrderItemRepository.findHistoryItemsByOrderIds.
+     */
+    @Query(value = "select o.id as orderId, o.user.id as userId, o.orderDate as orderDate, " +
+            "o.totalAmount as totalAmount, o.status as status " +
+            "from Order o where o.user = :user order by o.orderDate desc, o.id desc",
+            countQuery = "select count(o) from Order o where o.user = :user")
+    Page<OrderHistoryView> findHistoryByUser(User user, Pageable pageable);
+
+    /**
+     * Ids de los pedidos asíncronos aún sin procesar (en estado PENDING y sin ítems), para volver a encolarlos al arrancar.
+     */
+    @Query("select o.id from Order o where o.status = :status and o.orderItems is empty order by o.id")
+    List<Long> findIdsByStatusWithoutItems(OrderStatus status);
+
+    /**
+     * Reclama un pedido asíncrono en un único UPDATE condicional: lo pasa a status solo si sigue en PENDING y sin ítems.
+     * Cada nodo reencola al arrancar los mismos pedidos pendientes: solo uno de ellos consigue reclamar cada pedido,
+     * y los demás esperan al bloqueo de la fila hasta el commit (o el rollback) del primero.
+     * @return 1 si se reclamó; 0 si ya se procesó, no existe o no es un pedido asíncrono.
+     */
+    @Modifying
+    @Query("update Order o set o.status = :status where o.id = :id " +
+            "and o.status = com.ilich.sb.e_commerce.model.OrderStatus.PENDING and o.orderItems is empty")
+    int claimPendingOrder(Long id, OrderStatus status);
+
+    interface OrderHistoryView {
+        Long getOrderId();
+        Long getUserId();
+        LocalDateTime getOrderDate();
+        BigDecimal getTotalAmount();
+        OrderStatus getStatus();
+    }
+
     // Puedes añadir métodos de búsqueda personalizados si los necesitas, por ejemplo:
     // List<Order> findByStatus(OrderStatus status);
     // List<Order> findByOrderDateBetween(LocalDateTime startDate, LocalDateTime endDate);
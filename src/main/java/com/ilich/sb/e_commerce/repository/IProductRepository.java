@@ -7,11 +7,51 @@ import org.springframework.data.jpa.repository.JpaRepository;
 
 import com.ilich.sb.e_commerce.model.Product;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface IProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
+public interface IProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product>, IProductStockRepository {
     List<Product> findByCategoryName(String categoryName);
     List<Product> findByPriceBetween(BigDecimal minPrice, BigDecimal maxPrice);
+
+    /**
+     * Recorre todo el catálogo fila a fila (con su categoría) sin materializarlo en memoria.
+     * Debe consumirse dentro de una transacción y cerrarse al terminar.
+     * En MySQL el fetch size solo se respeta con useCursorFetch=true en la URL JDBC.
+     */
+    @Query("select p from Product p join fetch p.category order by p.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    Stream<Product> streamAllWithCategory();
+
+    /**
+     * Proyección con solo los campos que indexa el motor de búsqueda de productos,
+     * para reconstruir el índice sin cargar entidades en el contexto de persistencia.
+     */
+    @Query("select p.id as id, p.name as name, p.description as description, p.price as price, c.id as categoryId " +
+            "from Product p join p.category c order by p.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    Stream<SearchDocument> streamSearchDocuments();
+
+    interface SearchDocument {
+        Long getId();
+        String getName();
+        String getDescription();
+        BigDecimal getPrice();
+        Long getCategoryId();
+    }
 }
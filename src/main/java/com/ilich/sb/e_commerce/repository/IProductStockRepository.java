@@ -0,0 +1,22 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fragmento de IProductRepository para modificar el stock sin leer-modificar-guardar la entidad.
+ */
+public interface IProductStockRepository {
+
+    /**
+     * Descuenta el stock de varios productos con un único UPDATE condicional en batch:
+     * cada fila solo se actualiza si tiene stock suficiente, así que el stock nunca queda negativo
+     * ni se pierden descuentos concurrentes.
+     * Debe ejecutarse dentro de la transacción del pedido: si algún producto no tiene stock
+     * suficiente, quien llama debe lanzar una excepción para deshacer el resto de descuentos.
+     *
+     * @param quantities id de producto -> cantidad a descontar.
+     * @return ids de los productos que no tenían stock suficiente (vacío si se descontó todo).
+     */
+    List<Long> decrementStock(Map<Long, Integer> quantities);
+}
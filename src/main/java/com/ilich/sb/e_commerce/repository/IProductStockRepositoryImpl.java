@@ -0,0 +1,64 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Implementación JDBC de IProductStockRepository (Spring Data la enlaza por el sufijo "Impl").
+ * JdbcTemplate usa la misma conexión que la transacción JPA en curso.
+ */
+public class IProductStockRepositoryImpl implements IProductStockRepository {
+
+    private static final String DECREMENT_STOCK_SQL =
+            "UPDATE product SET stock_quantity = stock_quantity - ? WHERE id = ? AND stock_quantity >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IProductStockRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<Long> decrementStock(Map<Long, Integer> quantities) {
+        // Orden por id: dos pedidos con los mismos productos bloquean las filas en el mismo orden (sin deadlocks)
+        List<Map.Entry<Long, Integer>> items = new ArrayList<>(new TreeMap<>(quantities).entrySet());
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_STOCK_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setInt(1, items.get(i).getValue());
+                ps.setLong(2, items.get(i).getKey());
+                ps.setInt(3, items.get(i).getValue());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return items.size();
+            }
+        });
+
+        // Requiere el recuento de cada sentencia. Con rewriteBatchedStatements, Connector/J solo pierde los recuentos
+        // (SUCCESS_NO_INFO) al reescribir un batch de INSERT en uno multi-fila; un batch de UPDATE va como
+        // multi-sentencia y los conserva. Si un driver no los devuelve, se falla en lugar de rechazar el pedido
+        List<Long> rejected = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == Statement.SUCCESS_NO_INFO) {
+                throw new IllegalStateException("El driver JDBC no devolvió el recuento del descuento de stock.");
+            }
+            if (updated[i] != 1) {
+                rejected.add(items.get(i).getKey());
+            }
+        }
+        return rejected;
+    }
+}
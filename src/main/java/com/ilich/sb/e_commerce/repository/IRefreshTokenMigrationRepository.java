@@ -0,0 +1,17 @@
+package com.ilich.sb.e_commerce.repository;
+
+/**
+ * Fragmento de IRefreshTokenRepository para migrar el esquema anterior de refresh_tokens,
+ * que guardaba el token en claro en la columna token (VARCHAR(255)).
+ */
+public interface IRefreshTokenMigrationRepository {
+
+    /**
+     * Si la tabla conserva la columna token, le quita el NOT NULL y rellena token_hash con el SHA-256
+     * de los tokens que aún no lo tienen (los que siguen creando las instancias con la versión anterior).
+     * La columna no se elimina aquí: lo hace sql/Migracion refresh tokens hash.sql cuando ya no quedan
+     * instancias antiguas. Sin la columna token, añade el NOT NULL a token_hash si le falta.
+     * @return Número de tokens migrados.
+     */
+    int migrateLegacyTokens();
+}
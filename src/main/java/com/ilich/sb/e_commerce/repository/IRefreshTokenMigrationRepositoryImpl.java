@@ -0,0 +1,101 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ilich.sb.e_commerce.util.SecureTokens;
+
+/**
+ * Implementación JDBC de IRefreshTokenMigrationRepository (Spring Data la enlaza por el sufijo "Impl").
+ * Los hashes se calculan en Java: SHA-256 no tiene una función SQL común a MySQL y H2.
+ *
+ * La entidad declara token_hash nullable para que ddl-auto=update pueda añadirla a una tabla con filas.
+ * Mientras exista la columna token puede haber instancias con la versión anterior en marcha (despliegue
+ * gradual): la columna se conserva y token_hash sigue admitiendo NULL. Ambas cosas las cierra después
+ * sql/Migracion refresh tokens hash.sql.
+ */
+public class IRefreshTokenMigrationRepositoryImpl implements IRefreshTokenMigrationRepository {
+
+    private static final String TABLE = "refresh_tokens";
+    private static final String LEGACY_COLUMN = "token";
+    private static final String HASH_COLUMN = "token_hash";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public IRefreshTokenMigrationRepositoryImpl(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public int migrateLegacyTokens() {
+        Boolean legacyNullable = columnNullable(LEGACY_COLUMN);
+        if (legacyNullable == null) {
+            // Esquema nuevo (o ya migrado por el script): sin instancias antiguas, token_hash puede ser NOT NULL
+            if (Boolean.TRUE.equals(columnNullable(HASH_COLUMN))) {
+                jdbcTemplate.execute(alterNullabilitySql(HASH_COLUMN, "BINARY(" + SecureTokens.HASH_BYTES + ")", false));
+            }
+            return 0;
+        }
+        if (!legacyNullable) {
+            // Los tokens de esta versión no guardan el valor en claro. Repetirlo desde otra instancia no cambia nada
+            jdbcTemplate.execute(alterNullabilitySql(LEGACY_COLUMN, "VARCHAR(255)", true));
+        }
+        // Sin FOR UPDATE ni DDL: dos instancias que rellenen la misma fila escriben el mismo hash
+        return transactionTemplate.execute(status -> {
+            List<Object[]> hashes = jdbcTemplate.query(
+                    "SELECT id, " + LEGACY_COLUMN + " FROM " + TABLE
+                            + " WHERE " + HASH_COLUMN + " IS NULL AND " + LEGACY_COLUMN + " IS NOT NULL",
+                    (rs, rowNum) -> new Object[] { SecureTokens.hash(rs.getString(2)), rs.getLong(1) });
+            int migrated = 0;
+            for (int count : jdbcTemplate.batchUpdate(
+                    "UPDATE " + TABLE + " SET " + HASH_COLUMN + " = ? WHERE id = ? AND " + HASH_COLUMN + " IS NULL", hashes)) {
+                migrated += Math.max(count, 0);
+            }
+            return migrated;
+        });
+    }
+
+    /**
+     * @return Si la columna admite NULL, o null si la tabla no tiene esa columna.
+     */
+    private Boolean columnNullable(String column) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            // Los patrones de getColumns distinguen mayúsculas: H2 guarda los nombres sin comillas en mayúsculas
+            // y PostgreSQL en minúsculas. El '_' de los nombres es un comodín y se escapa
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), connection.getSchema(),
+                    pattern(metaData, TABLE), pattern(metaData, column))) {
+                return columns.next() ? columns.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls : null;
+            }
+        });
+    }
+
+    private static String pattern(DatabaseMetaData metaData, String name) throws SQLException {
+        String stored = metaData.storesUpperCaseIdentifiers() ? name.toUpperCase(Locale.ROOT)
+                : metaData.storesLowerCaseIdentifiers() ? name.toLowerCase(Locale.ROOT)
+                : name;
+        String escape = metaData.getSearchStringEscape();
+        return escape == null || escape.isEmpty() ? stored : stored.replace("_", escape + "_");
+    }
+
+    private String alterNullabilitySql(String column, String type, boolean nullable) {
+        String product = JdbcUtils.commonDatabaseName(jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+        if ("MySQL".equals(product) || "MariaDB".equals(product)) {
+            // MODIFY redefine la columna entera: el tipo tiene que coincidir con el de la columna existente
+            return "ALTER TABLE " + TABLE + " MODIFY " + column + " " + type + (nullable ? " NULL" : " NOT NULL");
+        }
+        return "ALTER TABLE " + TABLE + " ALTER COLUMN " + column + (nullable ? " DROP NOT NULL" : " SET NOT NULL"); // H2 y PostgreSQL
+    }
+}
@@ -1,23 +1,47 @@
 package com.ilich.sb.e_commerce.repository;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.ilich.sb.e_commerce.model.RefreshToken;
-import com.ilich.sb.e_commerce.model.User;
 
+import java.util.List;
 import java.util.Optional;
 import java.time.Instant; // Para limpiar por fecha
 
 @Repository
-public interface IRefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+public interface IRefreshTokenRepository extends JpaRepository<RefreshToken, Long>, IRefreshTokenMigrationRepository {
 
-    // Buscar un RefreshToken por su valor de token
-    Optional<RefreshToken> findByToken(String token);
+    // Buscar un RefreshToken por el hash de su valor, con su usuario y roles en la misma consulta
+    @EntityGraph(attributePaths = { "user", "user.roles" })
+    Optional<RefreshToken> findByTokenHash(byte[] tokenHash);
 
-    // Eliminar RefreshTokens asociados a un usuario específico (útil para logout global del usuario)
-    int deleteByUser(User user);
+    /**
+     * Rotación en un único UPDATE condicional: reemplaza el hash y la expiración solo si el token existe
+     * y no ha expirado. Dos rotaciones concurrentes del mismo token no pueden tener éxito ambas.
+     * @return 1 si se rotó; 0 si el token no existe, ya se rotó o ha expirado.
+     */
+    @Modifying
+    @Query("update RefreshToken t set t.tokenHash = :newHash, t.expiryDate = :newExpiry "
+            + "where t.tokenHash = :oldHash and t.expiryDate > :now")
+    int rotate(byte[] oldHash, byte[] newHash, Instant newExpiry, Instant now);
 
-    // Opcional: Eliminar RefreshTokens expirados (para limpieza periódica)
-    void deleteByExpiryDateBefore(Instant now);
-}
\ No newline at end of file
+    // Eliminar RefreshTokens asociados a un usuario específico (útil para logout global del usuario),
+    // con un único DELETE sin cargar el usuario ni las entidades
+    @Modifying
+    @Query("delete from RefreshToken t where t.user.id = :userId")
+    int deleteByUserId(Long userId);
+
+    // Limpieza periódica por tramos: ids de hasta limit tokens expirados, recorriendo el índice de expiry_date
+    @Query("select t.id from RefreshToken t where t.expiryDate < :now order by t.expiryDate")
+    List<Long> findExpiredIds(Instant now, Limit limit);
+
+    // Un único DELETE ... WHERE id IN (...), sin cargar las entidades
+    @Modifying
+    @Query("delete from RefreshToken t where t.id in :ids")
+    int deleteByIdIn(List<Long> ids);
+}
@@ -0,0 +1,66 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * Tokens revocados repartidos en una tabla por intervalo de expiración (revoked_keys_&lt;bucket&gt;).
+ * Un bucket contiene las claves de 16 bytes (RevocationKey) de los tokens cuyo "exp" cae en su intervalo;
+ * cuando el intervalo ha pasado todos han expirado y la tabla entera se elimina con un DROP TABLE,
+ * sin borrados fila a fila.
+ * El número de bucket (y por tanto el intervalo) lo calcula RevokedTokenCache.
+ */
+public interface IRevokedTokenBucketRepository {
+
+    /**
+     * Crea la tabla del bucket si no existe. Se llama por adelantado, fuera del camino del logout.
+     */
+    void createBucket(long bucket);
+
+    /**
+     * Inserta la clave de un token revocado en la tabla de su bucket (creándola si hiciera falta).
+     */
+    void insert(long bucket, byte[] key, Date expiryDate);
+
+    /**
+     * @return true si la clave está en la tabla del bucket; false también si la tabla ya no existe.
+     */
+    boolean exists(long bucket, byte[] key);
+
+    /**
+     * @return Buckets con tabla en la BD, incluidos los creados por otras instancias.
+     */
+    SortedSet<Long> findBuckets();
+
+    /**
+     * @return Claves de todos los tokens revocados del bucket.
+     */
+    List<byte[]> findAll(long bucket);
+
+    /**
+     * Elimina las tablas de los buckets anteriores a firstAliveBucket, también las del formato anterior
+     * (revoked_tokens_&lt;bucket&gt;).
+     * @return Buckets eliminados.
+     */
+    List<Long> dropBefore(long firstAliveBucket);
+
+    /**
+     * Lee las tablas por bucket del formato anterior, con el JTI en texto (revoked_tokens_&lt;bucket&gt;, jti VARCHAR(36)),
+     * sin modificarlas: las instancias con la versión anterior las siguen usando durante un despliegue gradual.
+     * @return JTI -> fecha de expiración de los tokens de los buckets aún vivos.
+     */
+    Map<String, Date> findLegacyBuckets(long firstAliveBucket);
+
+    /**
+     * @return Mayor id de revoked_tokens ya migrado a las tablas revoked_keys_&lt;bucket&gt; (marca en la tabla
+     *         revocation_migration), o 0 si aún no se ha migrado ninguno.
+     */
+    long findLegacyWatermark();
+
+    /**
+     * Avanza la marca de migración de revoked_tokens hasta lastId (nunca la hace retroceder).
+     */
+    void saveLegacyWatermark(long lastId);
+}
@@ -0,0 +1,160 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.ilich.sb.e_commerce.util.RevocationKey;
+
+/**
+ * Implementación JDBC de IRevokedTokenBucketRepository: una tabla revoked_keys_&lt;bucket&gt; por intervalo,
+ * con la clave en BINARY(16) como clave primaria (índice de 16 bytes por fila en lugar del JWT o el JTI en texto).
+ * Los nombres de tabla solo contienen el número de bucket, nunca datos del cliente.
+ */
+@Repository
+public class IRevokedTokenBucketRepositoryImpl implements IRevokedTokenBucketRepository {
+
+    private static final String TABLE_PREFIX = "revoked_keys_";
+    private static final Pattern TABLE_NAME = Pattern.compile("(?i)" + TABLE_PREFIX + "(\\d+)");
+    // Formato anterior, con el JTI en VARCHAR(36); solo se lee para migrarlo
+    private static final String LEGACY_TABLE_PREFIX = "revoked_tokens_";
+    private static final Pattern LEGACY_TABLE_NAME = Pattern.compile("(?i)" + LEGACY_TABLE_PREFIX + "(\\d+)");
+    // Marca de la migración de revoked_tokens: una fila con el mayor id ya copiado
+    private static final String MIGRATION_TABLE = "revocation_migration";
+    private static final String LEGACY_TOKENS_MIGRATION = "revoked_tokens";
+
+    private final JdbcTemplate jdbcTemplate;
+    // Buckets cuya tabla ya se ha creado desde esta instancia: el logout no repite el CREATE TABLE
+    private final Set<Long> created = ConcurrentHashMap.newKeySet();
+
+    public IRevokedTokenBucketRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void createBucket(long bucket) {
+        if (created.contains(bucket)) {
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table(bucket)
+                + " (key_hash BINARY(" + RevocationKey.BYTES + ") NOT NULL PRIMARY KEY, expiry_date TIMESTAMP NOT NULL)");
+        created.add(bucket);
+    }
+
+    @Override
+    public void insert(long bucket, byte[] key, Date expiryDate) {
+        createBucket(bucket);
+        try {
+            jdbcTemplate.update("INSERT INTO " + table(bucket) + " (key_hash, expiry_date) VALUES (?, ?)",
+                    key, new Timestamp(expiryDate.getTime()));
+        } catch (DuplicateKeyException e) {
+            // El token ya estaba revocado (p. ej. un logout repetido)
+        }
+    }
+
+    @Override
+    public boolean exists(long bucket, byte[] key) {
+        try {
+            return !jdbcTemplate.queryForList("SELECT 1 FROM " + table(bucket) + " WHERE key_hash = ?", Integer.class, key).isEmpty();
+        } catch (BadSqlGrammarException e) {
+            return false; // Tabla inexistente: nadie revocó tokens de ese intervalo, o ya expiraron todos
+        }
+    }
+
+    @Override
+    public SortedSet<Long> findBuckets() {
+        return findTables(TABLE_NAME);
+    }
+
+    @Override
+    public List<byte[]> findAll(long bucket) {
+        return jdbcTemplate.queryForList("SELECT key_hash FROM " + table(bucket), byte[].class);
+    }
+
+    @Override
+    public List<Long> dropBefore(long firstAliveBucket) {
+        List<Long> dropped = new ArrayList<>();
+        for (Long bucket : findBuckets().headSet(firstAliveBucket)) {
+            created.remove(bucket);
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table(bucket));
+            dropped.add(bucket);
+        }
+        for (Long bucket : findTables(LEGACY_TABLE_NAME).headSet(firstAliveBucket)) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + LEGACY_TABLE_PREFIX + bucket);
+        }
+        return dropped;
+    }
+
+    @Override
+    public Map<String, Date> findLegacyBuckets(long firstAliveBucket) {
+        Map<String, Date> alive = new HashMap<>();
+        for (Long bucket : findTables(LEGACY_TABLE_NAME).tailSet(firstAliveBucket)) {
+            jdbcTemplate.query("SELECT jti, expiry_date FROM " + LEGACY_TABLE_PREFIX + bucket,
+                    rs -> {
+                        alive.put(rs.getString(1), new Date(rs.getTimestamp(2).getTime()));
+                    });
+        }
+        return alive;
+    }
+
+    @Override
+    public long findLegacyWatermark() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + MIGRATION_TABLE
+                + " (name VARCHAR(50) NOT NULL PRIMARY KEY, last_id BIGINT NOT NULL)");
+        List<Long> lastId = jdbcTemplate.queryForList("SELECT last_id FROM " + MIGRATION_TABLE + " WHERE name = ?",
+                Long.class, LEGACY_TOKENS_MIGRATION);
+        return lastId.isEmpty() ? 0 : lastId.get(0);
+    }
+
+    @Override
+    public void saveLegacyWatermark(long lastId) {
+        // Otra instancia puede haber avanzado la marca a la vez: solo se sube
+        int updated = jdbcTemplate.update("UPDATE " + MIGRATION_TABLE + " SET last_id = ? WHERE name = ? AND last_id < ?",
+                lastId, LEGACY_TOKENS_MIGRATION, lastId);
+        if (updated == 0) {
+            try {
+                jdbcTemplate.update("INSERT INTO " + MIGRATION_TABLE + " (name, last_id) VALUES (?, ?)", LEGACY_TOKENS_MIGRATION, lastId);
+            } catch (DuplicateKeyException e) {
+                // La fila ya existía con una marca igual o mayor
+            }
+        }
+    }
+
+    // Buckets de las tablas del esquema actual cuyo nombre encaja con el patrón
+    private SortedSet<Long> findTables(Pattern tableName) {
+        return jdbcTemplate.execute((ConnectionCallback<SortedSet<Long>>) connection -> {
+            SortedSet<Long> buckets = new TreeSet<>();
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet tables = metaData.getTables(connection.getCatalog(), connection.getSchema(), "%", new String[] { "TABLE" })) {
+                while (tables.next()) {
+                    Matcher matcher = tableName.matcher(tables.getString("TABLE_NAME"));
+                    if (matcher.matches()) {
+                        buckets.add(Long.parseLong(matcher.group(1)));
+                    }
+                }
+            }
+            return buckets;
+        });
+    }
+
+    private static String table(long bucket) {
+        return TABLE_PREFIX + bucket;
+    }
+}
@@ -1,18 +1,29 @@
 package com.ilich.sb.e_commerce.repository;
 
 import java.util.Date;
+import java.util.List;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.ilich.sb.e_commerce.model.RevokedToken;
 
 @Repository
 public interface IRevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
-    // Para verificar si un token ya está en la lista negra
-    boolean existsByToken(String token);
+    // Formato anterior de la lista negra (el JWT completo en texto). Solo se lee para migrar sus tokens
+    // aún no expirados a las claves de 16 bytes de IRevokedTokenBucketRepository (RevokedTokenCache):
+    // los escritos después de la marca de migración, recorriendo la clave primaria
+    List<RevokedToken> findByIdGreaterThanAndExpiryDateAfterOrderById(Long id, Date now);
 
-    // Opcional: para limpiar tokens expirados de la lista negra periódicamente
-    // List<RevokedToken> findByExpiryDateBefore(Date date);
-    void deleteByExpiryDateBefore(Date date);
+    // Limpieza periódica por tramos: ids de hasta limit tokens expirados, recorriendo el índice de expiry_date
+    @Query("select t.id from RevokedToken t where t.expiryDate < :now order by t.expiryDate")
+    List<Long> findExpiredIds(Date now, Limit limit);
+
+    // Un único DELETE ... WHERE id IN (...), sin cargar las entidades
+    @Modifying
+    @Query("delete from RevokedToken t where t.id in :ids")
+    int deleteByIdIn(List<Long> ids);
 }
\ No newline at end of file
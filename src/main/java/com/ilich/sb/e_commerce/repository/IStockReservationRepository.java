@@ -0,0 +1,16 @@
+package com.ilich.sb.e_commerce.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.ilich.sb.e_commerce.model.StockReservation;
+
+@Repository
+public interface IStockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+    // Reservas aún vigentes (para reconstruir las reservas en memoria al arrancar)
+    List<StockReservation> findByExpiresAtAfter(Instant instant);
+}
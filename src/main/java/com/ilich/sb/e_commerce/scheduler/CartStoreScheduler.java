@@ -0,0 +1,26 @@
+package com.ilich.sb.e_commerce.scheduler;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.ilich.sb.e_commerce.service.impl.InMemoryCartServiceImpl;
+
+@Component
+@ConditionalOnProperty(name = "ecommerce.app.cart.store", havingValue = "memory")
+public class CartStoreScheduler {
+
+    private final InMemoryCartServiceImpl cartService;
+
+    public CartStoreScheduler(InMemoryCartServiceImpl cartService) {
+        this.cartService = cartService;
+    }
+
+    /**
+     * Guarda en batch los carritos en memoria modificados desde la última ejecución.
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.app.cart.flush-ms:1000}")
+    public void flushCarts() {
+        cartService.flush();
+    }
+}
@@ -0,0 +1,39 @@
+package com.ilich.sb.e_commerce.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.ilich.sb.e_commerce.service.IStockReservationService;
+
+@Component
+public class StockReservationScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservationScheduler.class);
+
+    private final IStockReservationService stockReservationService;
+
+    public StockReservationScheduler(IStockReservationService stockReservationService) {
+        this.stockReservationService = stockReservationService;
+    }
+
+    /**
+     * Libera las reservas de stock cuyo TTL ha vencido (carritos abandonados).
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.app.stock-reservation.reaper-ms:30000}")
+    public void releaseExpiredReservations() {
+        int released = stockReservationService.releaseExpired();
+        if (released > 0) {
+            logger.info("Liberadas {} reservas de stock caducadas.", released);
+        }
+    }
+
+    /**
+     * Persiste en batch las reservas modificadas desde la última ejecución.
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.app.stock-reservation.flush-ms:1000}")
+    public void flushReservations() {
+        stockReservationService.flush();
+    }
+}
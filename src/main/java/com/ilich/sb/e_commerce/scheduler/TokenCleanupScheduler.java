@@ -1,58 +1,109 @@
 package com.ilich.sb.e_commerce.scheduler;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.ilich.sb.e_commerce.repository.IRevokedTokenRepository;
 import com.ilich.sb.e_commerce.service.IRefreshTokenService;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.util.Date;
+import java.util.List;
+import java.util.function.IntSupplier;
 
+/**
+ * Limpieza incremental de los Refresh Tokens expirados y de los Access Tokens revocados que ya expiraron.
+ *
+ * Se ejecuta cada minuto y borra por tramos de chunk-size ids (SELECT de ids por el índice de expiry_date
+ * y DELETE ... WHERE id IN), cada tramo en su propia transacción: los bloqueos duran lo que un tramo y las
+ * tablas se mantienen pequeñas durante todo el día en lugar de purgarse de golpe a medianoche.
+ * Si quedan más de max-chunks-per-run tramos, el resto se borra en las siguientes ejecuciones.
+ */
 @Component
 public class TokenCleanupScheduler {
 
     private static final Logger logger = LoggerFactory.getLogger(TokenCleanupScheduler.class);
 
-    @Autowired
-    private IRefreshTokenService refreshTokenService;
+    private static final String REFRESH_TOKENS = "refresh_tokens";
+    private static final String REVOKED_TOKENS = "revoked_tokens";
+
+    private final IRefreshTokenService refreshTokenService;
+    private final IRevokedTokenRepository revokedTokenRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int chunkSize;
+    private final int maxChunksPerRun;
 
-    @Autowired
-    private IRevokedTokenRepository revokedTokenRepository;
+    public TokenCleanupScheduler(IRefreshTokenService refreshTokenService,
+                                 IRevokedTokenRepository revokedTokenRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${ecommerce.app.token-cleanup.chunk-size:1000}") int chunkSize,
+                                 @Value("${ecommerce.app.token-cleanup.max-chunks-per-run:100}") int maxChunksPerRun) {
+        this.refreshTokenService = refreshTokenService;
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = chunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
 
     /**
      * Limpia los Refresh Tokens expirados de la base de datos.
-     * Se ejecuta cada 24 horas (ajusta el cron según necesites).
      */
-    @Scheduled(cron = "0 0 0 * * ?") // Ejecuta a medianoche todos los días
-    //@Scheduled(cron = "0 */5 * * * ?") // ¡CAMBIO AQUÍ!
-    //@Scheduled(fixedRate = 86400000) // O cada 24 horas desde el inicio de la app
-    @Transactional // ¡AÑADE ESTA ANOTACIÓN!
+    @Scheduled(fixedDelayString = "${ecommerce.app.token-cleanup.interval-ms:60000}")
     public void cleanupExpiredRefreshTokens() {
-        logger.info("Iniciando limpieza de Refresh Tokens expirados...");
-        refreshTokenService.cleanExpiredRefreshTokens();
-        logger.info("Limpieza de Refresh Tokens expirados completada.");
+        Instant now = Instant.now();
+        purge(REFRESH_TOKENS, () -> refreshTokenService.cleanExpiredRefreshTokens(now, chunkSize));
     }
 
     /**
-     * Opcional: Limpia los Access Tokens revocados que ya expiraron naturalmente.
-     * Se ejecuta cada 24 horas.
+     * Limpia los Access Tokens expirados que queden en la tabla revoked_tokens (formato anterior, que
+     * RevokedTokenCache migra al arrancar). Los revocados ahora se guardan por buckets y RevokedTokenCache
+     * elimina cada bucket caducado con un DROP TABLE.
      */
-    @Scheduled(cron = "0 30 0 * * ?") // Ejecuta 30 minutos después de medianoche
-    //@Scheduled(cron = "30 */5 * * * ?") // Ejecuta 30 segundos después de cada 5 minutos
-    @Transactional // ¡AÑADE ESTA ANOTACIÓN!
+    @Scheduled(fixedDelayString = "${ecommerce.app.token-cleanup.interval-ms:60000}")
     public void cleanupExpiredRevokedAccessTokens() {
-        logger.info("Iniciando limpieza de Access Tokens revocados y expirados...");
-        // Implementar un método en RevokedTokenRepository para esto si no lo tienes
-        // Ejemplo: revokedTokenRepository.deleteByExpiryDateBefore(new Date());
-        // Necesitarás añadir `void deleteByExpiryDateBefore(Date date);` en RevokedTokenRepository
-        // y llamarlo aquí.
-        revokedTokenRepository.deleteByExpiryDateBefore(new Date()); // Asegúrate de que el método exista en tu repo
-
-        logger.info("Limpieza de Access Tokens revocados y expirados completada.");
+        Date now = new Date();
+        purge(REVOKED_TOKENS, () -> transactionTemplate.execute(status -> {
+            List<Long> ids = revokedTokenRepository.findExpiredIds(now, Limit.of(chunkSize));
+            return ids.isEmpty() ? 0 : revokedTokenRepository.deleteByIdIn(ids);
+        }));
+    }
+
+    // Borra tramos hasta que uno sale incompleto o se alcanza el máximo por ejecución; registra filas y duración
+    private void purge(String table, IntSupplier deleteChunk) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        int total = 0;
+        int chunks = 0;
+        int deleted;
+        do {
+            deleted = deleteChunk.getAsInt();
+            total += deleted;
+            chunks++;
+        } while (deleted >= chunkSize && chunks < maxChunksPerRun);
+        long nanos = sample.stop(Timer.builder("token.cleanup.duration")
+                .description("Duración de cada ejecución de la limpieza de tokens expirados")
+                .tag("table", table)
+                .register(meterRegistry));
+        DistributionSummary.builder("token.cleanup.rows")
+                .description("Filas eliminadas en cada ejecución de la limpieza de tokens expirados")
+                .tag("table", table)
+                .register(meterRegistry)
+                .record(total);
+        if (total > 0) {
+            logger.info("Eliminadas {} filas expiradas de {} en {} tramos ({} ms).", total, table, chunks, nanos / 1_000_000);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.ilich.sb.e_commerce.security.jwt;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -32,10 +33,15 @@ public class AuthTokenFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         try {
             String jwt = parseJwt(request); // Extrae el JWT de la cabecera
-            if (jwt != null && jwtUtils.validateJwtToken(jwt)) { // Si hay JWT y es válido
-                String username = jwtUtils.getUserNameFromJwtToken(jwt); // Obtiene el nombre de usuario del token
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username); // Carga los detalles del usuario
+            // Si hay JWT, se verifica su firma una sola vez y se reutilizan los claims validados
+            Claims claims = jwt != null ? jwtUtils.parseValidatedClaims(jwt) : null;
+            if (claims != null) { // Si el JWT es válido
+                // Reconstruye el usuario desde los claims (uid, roles) sin acceder a la BD
+                UserDetails userDetails = jwtUtils.getUserDetailsFromClaims(claims);
+                if (userDetails == null) {
+                    // Tokens sin esos claims: se cargan los detalles del usuario por su username
+                    userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+                }
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
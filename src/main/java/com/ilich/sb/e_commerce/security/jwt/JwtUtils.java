@@ -3,39 +3,77 @@ package com.ilich.sb.e_commerce.security.jwt;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
-import com.ilich.sb.e_commerce.repository.IRevokedTokenRepository;
 import com.ilich.sb.e_commerce.service.impl.UserDetailsImpl;
 
 import java.security.Key;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Component // Marca como un componente de Spring
 public class JwtUtils {
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
+    // Claims propios que permiten reconstruir el usuario autenticado sin consultar la BD
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLES = "roles";
+
     @Value("${ecommerce.app.jwt.secret}") // Se leerá desde application.properties
     private String jwtSecret;
 
     @Value("${ecommerce.app.jwt.expiration.ms}") // Se leerá desde application.properties
     private int jwtExpirationMs;
     
-    private IRevokedTokenRepository revokedTokenRepository; 
+    private RevokedTokenCache revokedTokenCache;
+
+    // Clave y parser inmutables: se construyen una sola vez al arrancar y son seguros entre hilos
+    private Key signingKey;
+    private JwtParser jwtParser;
     
-    public JwtUtils(IRevokedTokenRepository revokedTokenRepository) {
-        this.revokedTokenRepository = revokedTokenRepository;
+    public JwtUtils(RevokedTokenCache revokedTokenCache) {
+        this.revokedTokenCache = revokedTokenCache;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        this.jwtParser = Jwts.parserBuilder().setSigningKey(signingKey).build();
     }
 
     // Genera el token JWT
     public String generateJwtToken(Authentication authentication) {
         UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
-        return generateTokenFromUsername(userPrincipal.getUsername());
+        List<String> roles = userPrincipal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+        return generateTokenFromUsername(userPrincipal.getUsername(), userPrincipal.getId(), roles);
+    }
+
+    /**
+     * Genera un Access Token que incluye el id y los roles del usuario como claims,
+     * de modo que AuthTokenFilter pueda reconstruir el principal sin consultar la BD.
+     */
+    public String generateTokenFromUsername(String username, Long userId, Collection<String> roles) {
+        return Jwts.builder()
+                .setSubject(username)
+                .setIssuedAt(new Date()) // Fecha de emisión
+                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs)) // Fecha de expiración
+                .claim("jti", UUID.randomUUID().toString()) // Añade un JWT ID (JTI) único
+                .claim(CLAIM_USER_ID, userId)
+                .claim(CLAIM_ROLES, roles)
+                .signWith(signingKey, SignatureAlgorithm.HS512) // Firma el token con la clave secreta y algoritmo
+                .compact(); // Compacta el token en una cadena JWT
     }
 
 
@@ -46,27 +84,34 @@ public class JwtUtils {
                 .setIssuedAt(new Date()) // Fecha de emisión
                 .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs)) // Fecha de expiración
                 .claim("jti", UUID.randomUUID().toString()) // Añade un JWT ID (JTI) único
-                .signWith(key(), SignatureAlgorithm.HS512) // Firma el token con la clave secreta y algoritmo
+                .signWith(signingKey, SignatureAlgorithm.HS512) // Firma el token con la clave secreta y algoritmo
                 .compact(); // Compacta el token en una cadena JWT
     }
 
-    // Obtiene la clave de firma
-    private Key key() {
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
-    }
-
     // Valida el token JWT
     public boolean validateJwtToken(String authToken) {
+        return parseValidatedClaims(authToken) != null;
+    }
+
+    /**
+     * Verifica la firma del token una sola vez y devuelve sus claims ya validados,
+     * para que el filtro no tenga que volver a parsear el token en la misma petición.
+     * @param authToken El token JWT.
+     * @return Los claims del token, o null si el token es inválido, ha expirado o fue revocado.
+     */
+    public Claims parseValidatedClaims(String authToken) {
         try {
-            Jwts.parserBuilder().setSigningKey(key()).build().parseClaimsJws(authToken);
+            Claims claims = jwtParser.parseClaimsJws(authToken).getBody();
 
-            // 2. Después de la validación estructural, verificar si está en la lista negra
-            if (revokedTokenRepository.existsByToken(authToken)) {
+            // 2. Después de la validación estructural, verificar si está en la lista negra.
+            // Se consulta la caché por la clave del JTI (solo el bucket de su "exp"); los tokens sin JTI, por la del token completo.
+            String jti = claims.getId();
+            if (revokedTokenCache.isRevoked(jti != null ? jti : authToken, claims.getExpiration())) {
                 logger.warn("Intento de uso de token JWT revocado: {}", authToken);
-                return false; // El token está en la lista negra
+                return null; // El token está en la lista negra
             }
 
-            return true;
+            return claims;
         } catch (MalformedJwtException e) {
             logger.error("Token JWT inválido: {}", e.getMessage());
         } catch (ExpiredJwtException e) {
@@ -76,7 +121,25 @@ public class JwtUtils {
         } catch (IllegalArgumentException e) {
             logger.error("La cadena de claims JWT está vacía: {}", e.getMessage());
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * Reconstruye el principal a partir de los claims "uid" y "roles" de un token ya validado.
+     * @param claims Los claims devueltos por parseValidatedClaims.
+     * @return El UserDetailsImpl, o null si el token no incluye esos claims (tokens emitidos solo con username).
+     */
+    public UserDetailsImpl getUserDetailsFromClaims(Claims claims) {
+        Number userId = claims.get(CLAIM_USER_ID, Number.class);
+        List<?> roles = claims.get(CLAIM_ROLES, List.class);
+        if (userId == null || roles == null) {
+            return null;
+        }
+        List<GrantedAuthority> authorities = roles.stream()
+                .map(role -> new SimpleGrantedAuthority(role.toString()))
+                .collect(Collectors.toList());
+        // La contraseña no viaja en el token ni se necesita una vez autenticado
+        return new UserDetailsImpl(userId.longValue(), claims.getSubject(), null, authorities);
     }
 
     /**
@@ -85,7 +148,7 @@ public class JwtUtils {
      * @return El nombre de usuario.
      */
     public String getUserNameFromJwtToken(String authToken) {
-        return Jwts.parserBuilder().setSigningKey(key()).build().parseClaimsJws(authToken).getBody().getSubject();
+        return jwtParser.parseClaimsJws(authToken).getBody().getSubject();
     }
 
 
@@ -96,6 +159,16 @@ public class JwtUtils {
      * @return La fecha de expiración.
      */
     public Date getExpirationDateFromJwtToken(String authToken) {
-        return Jwts.parserBuilder().setSigningKey(key()).build().parseClaimsJws(authToken).getBody().getExpiration();
+        return jwtParser.parseClaimsJws(authToken).getBody().getExpiration();
+    }
+
+    /**
+     * Obtiene el JWT ID (JTI) de un token JWT.
+     * Es la clave con la que se registra el token en la lista negra.
+     * @param authToken El token JWT.
+     * @return El JTI, o null si el token no lo incluye.
+     */
+    public String getJtiFromJwtToken(String authToken) {
+        return jwtParser.parseClaimsJws(authToken).getBody().getId();
     }
 }
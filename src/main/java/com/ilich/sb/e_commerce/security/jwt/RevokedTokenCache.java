@@ -0,0 +1,290 @@
+package com.ilich.sb.e_commerce.security.jwt;
+
+import com.ilich.sb.e_commerce.model.RevokedToken;
+import com.ilich.sb.e_commerce.repository.IRevokedTokenBucketRepository;
+import com.ilich.sb.e_commerce.repository.IRevokedTokenRepository;
+import com.ilich.sb.e_commerce.util.BloomFilter;
+import com.ilich.sb.e_commerce.util.LongPairSet;
+import com.ilich.sb.e_commerce.util.RevocationKey;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Caché en memoria de los Access Tokens revocados, indexada por la clave de 16 bytes del claim "jti"
+ * (RevocationKey; el token completo para los antiguos sin jti) y organizada por buckets de expiración:
+ * un anillo de intervalos de bucket-ms, espejo de las tablas revoked_keys_&lt;bucket&gt;.
+ *
+ * Cada bucket tiene su propio filtro Bloom y su conjunto exacto, y solo se consulta el bucket del "exp"
+ * del token. Un filtro Bloom responde sin tocar la BD para la inmensa mayoría de los tokens (los no revocados);
+ * solo si da positivo se mira el conjunto exacto y, si la clave no está ahí (falso positivo), se consulta la tabla
+ * del bucket. Cuando un intervalo ha pasado, su bucket se descarta entero en memoria y su tabla con un DROP
+ * TABLE: sin borrados fila a fila ni reconstrucción del filtro.
+ *
+ * Durante un despliegue gradual, las instancias con la versión anterior siguen revocando en revoked_tokens
+ * (y en revoked_tokens_&lt;bucket&gt;). Mientras ecommerce.app.jwt.revocation.legacy-sync esté activo, cada eviction
+ * copia a este formato lo que hayan escrito desde la última vez. Las filas antiguas no se borran, porque esas
+ * instancias las siguen leyendo; desaparecen al expirar. Las revocaciones nuevas no llegan a las instancias
+ * antiguas: solo comparten las que ya estaban en sus tablas.
+ */
+@Component
+public class RevokedTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevokedTokenCache.class);
+
+    private final IRevokedTokenBucketRepository bucketRepository;
+    private final IRevokedTokenRepository legacyRepository;
+    private final long bucketMs;
+    private final long tokenLifetimeMs;
+    private final int bucketExpectedInsertions;
+    private final double falsePositiveProbability;
+    private final boolean legacySync;
+    private final Clock clock;
+
+    // Número de bucket (exp / bucketMs) -> claves revocadas con "exp" en ese intervalo
+    private final NavigableMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+    private final Counter bloomNegatives;
+    private final Counter exactHits;
+    private final Counter databaseHits;
+    private final Counter falsePositives;
+
+    @Autowired
+    public RevokedTokenCache(IRevokedTokenBucketRepository bucketRepository,
+                             IRevokedTokenRepository legacyRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${ecommerce.app.jwt.revocation.bucket-ms:60000}") long bucketMs,
+                             @Value("${ecommerce.app.jwt.expiration.ms:300000}") long tokenLifetimeMs,
+                             @Value("${ecommerce.app.jwt.revocation.bloom.expected-insertions:100000}") int expectedInsertions,
+                             @Value("${ecommerce.app.jwt.revocation.bloom.fpp:0.01}") double falsePositiveProbability,
+                             @Value("${ecommerce.app.jwt.revocation.legacy-sync:true}") boolean legacySync) {
+        this(bucketRepository, legacyRepository, meterRegistry, bucketMs, tokenLifetimeMs, expectedInsertions, falsePositiveProbability,
+                legacySync, Clock.systemUTC());
+    }
+
+    public RevokedTokenCache(IRevokedTokenBucketRepository bucketRepository,
+                             IRevokedTokenRepository legacyRepository,
+                             MeterRegistry meterRegistry,
+                             long bucketMs,
+                             long tokenLifetimeMs,
+                             int expectedInsertions,
+                             double falsePositiveProbability,
+                             boolean legacySync,
+                             Clock clock) {
+        this.bucketRepository = bucketRepository;
+        this.legacyRepository = legacyRepository;
+        this.bucketMs = bucketMs;
+        this.tokenLifetimeMs = tokenLifetimeMs;
+        // Las inserciones esperadas se reparten entre los buckets vivos a la vez (vida del token / intervalo)
+        this.bucketExpectedInsertions = (int) Math.max(1, (long) expectedInsertions * bucketMs / Math.max(bucketMs, tokenLifetimeMs));
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.legacySync = legacySync;
+        this.clock = clock;
+
+        this.bloomNegatives = lookupCounter(meterRegistry, "bloom_negative");
+        this.exactHits = lookupCounter(meterRegistry, "exact_hit");
+        this.databaseHits = lookupCounter(meterRegistry, "db_hit");
+        this.falsePositives = lookupCounter(meterRegistry, "false_positive");
+        Gauge.builder("jwt.revocation.cache.size", this, RevokedTokenCache::size)
+                .description("Tokens revocados y aún no expirados que se mantienen en memoria")
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocation.cache.buckets", buckets, Map::size)
+                .description("Buckets de expiración vivos en memoria")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("jwt.revocation.lookups")
+                .description("Consultas a la caché de revocación por resultado")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Carga en memoria los buckets todavía vivos, incluidos los escritos por otras instancias,
+     * y crea por adelantado las tablas de los próximos intervalos.
+     *
+     * Antes migra los formatos anteriores, que guardaban el JWT o el JTI en texto: la tabla revoked_tokens
+     * y las tablas revoked_tokens_&lt;bucket&gt;. Sus tokens aún no expirados se vuelven a revocar con su clave
+     * de 16 bytes. De revoked_tokens solo se leen las filas posteriores a la marca de migración guardada en la BD,
+     * así que cada fila se migra una vez aunque se llame en cada arranque y en cada resincronización.
+     */
+    @PostConstruct
+    public void loadFromDatabase() {
+        long firstAlive = firstAliveBucket();
+        migrateLegacyTokens(firstAlive);
+        for (Long bucket : bucketRepository.findBuckets().tailSet(firstAlive)) {
+            bucketRepository.findAll(bucket).forEach(key -> remember(bucket, key));
+        }
+        createUpcomingBuckets(firstAlive);
+        logger.info("Caché de revocación inicializada con {} tokens revocados en {} buckets.", size(), buckets.size());
+    }
+
+    /**
+     * Registra un token como revocado hasta su fecha de expiración original: guarda su clave en la tabla
+     * de su bucket y después en memoria. Un token que ya ha expirado no se registra.
+     *
+     * @param tokenId El claim "jti" del token, o el token completo si no lo tiene.
+     */
+    public void revoke(String tokenId, Date expiryDate) {
+        long bucket = bucketOf(expiryDate);
+        if (bucket < firstAliveBucket()) {
+            return;
+        }
+        byte[] key = RevocationKey.of(tokenId);
+        bucketRepository.insert(bucket, key, expiryDate);
+        remember(bucket, key);
+    }
+
+    /**
+     * Registra solo en memoria una clave revocada por otro nodo, que ya la guardó en la tabla de su bucket
+     * (invalidación recibida por IInvalidationBus).
+     */
+    public void rememberRevoked(byte[] key, Date expiryDate) {
+        long bucket = bucketOf(expiryDate);
+        if (bucket >= firstAliveBucket()) {
+            remember(bucket, key);
+        }
+    }
+
+    /**
+     * @param tokenId El claim "jti" de un token ya validado estructuralmente, o el token completo si no lo tiene.
+     * @param expiryDate El claim "exp" del mismo token: solo se consulta su bucket.
+     * @return true si el token fue revocado.
+     */
+    public boolean isRevoked(String tokenId, Date expiryDate) {
+        long bucketNumber = bucketOf(expiryDate);
+        Bucket bucket = buckets.get(bucketNumber);
+        if (bucket == null) {
+            bloomNegatives.increment();
+            return false;
+        }
+        byte[] key = RevocationKey.of(tokenId);
+        long high = RevocationKey.high(key);
+        long low = RevocationKey.low(key);
+        if (!bucket.bloomFilter.mightContain(high, low)) {
+            bloomNegatives.increment();
+            return false; // Caso habitual: sin acceso a la BD
+        }
+        if (bucket.keys.contains(high, low)) {
+            exactHits.increment();
+            return true;
+        }
+        // El filtro dio positivo pero la clave no está en memoria: se confirma contra la tabla del bucket
+        boolean revokedInDatabase = bucketRepository.exists(bucketNumber, key);
+        if (revokedInDatabase) {
+            databaseHits.increment();
+        } else {
+            falsePositives.increment();
+        }
+        return revokedInDatabase;
+    }
+
+    /**
+     * Descarta los buckets cuyos tokens ya expiraron todos (en memoria y su tabla con DROP TABLE)
+     * y crea las tablas de los próximos intervalos.
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.app.jwt.revocation.eviction.ms:60000}")
+    public void evictExpired() {
+        long firstAlive = firstAliveBucket();
+        buckets.headMap(firstAlive).clear();
+        if (legacySync) {
+            migrateLegacyTokens(firstAlive); // Revocaciones recientes de instancias con la versión anterior
+        }
+        List<Long> dropped = bucketRepository.dropBefore(firstAlive);
+        createUpcomingBuckets(firstAlive);
+        if (!dropped.isEmpty()) {
+            logger.debug("Caché de revocación: eliminados {} buckets caducados; quedan {} tokens revocados.", dropped.size(), size());
+        }
+    }
+
+    public int size() {
+        return buckets.values().stream().mapToInt(bucket -> bucket.keys.size()).sum();
+    }
+
+    private void remember(long bucketNumber, byte[] key) {
+        Bucket bucket = buckets.computeIfAbsent(bucketNumber, number -> new Bucket(bucketExpectedInsertions, falsePositiveProbability));
+        long high = RevocationKey.high(key);
+        long low = RevocationKey.low(key);
+        bucket.keys.add(high, low);
+        bucket.bloomFilter.put(high, low);
+    }
+
+    // Las tablas antiguas no se modifican: las instancias con la versión anterior las siguen leyendo
+    private void migrateLegacyTokens(long firstAlive) {
+        int migrated = 0;
+        List<RevokedToken> legacyTokens = legacyRepository.findByIdGreaterThanAndExpiryDateAfterOrderById(
+                bucketRepository.findLegacyWatermark(), new Date(clock.millis()));
+        for (RevokedToken legacy : legacyTokens) {
+            if (revokeIfUnknown(legacy.getJti() != null ? legacy.getJti() : legacy.getToken(), legacy.getExpiryDate())) {
+                migrated++;
+            }
+        }
+        if (!legacyTokens.isEmpty()) {
+            bucketRepository.saveLegacyWatermark(legacyTokens.get(legacyTokens.size() - 1).getId());
+        }
+        // Sin id por el que avanzar: se releen enteras, pero solo tienen los buckets aún vivos
+        for (Map.Entry<String, Date> legacy : bucketRepository.findLegacyBuckets(firstAlive).entrySet()) {
+            if (revokeIfUnknown(legacy.getKey(), legacy.getValue())) {
+                migrated++;
+            }
+        }
+        if (migrated > 0) {
+            logger.info("Caché de revocación: migrados {} tokens revocados al formato de clave de {} bytes.", migrated, RevocationKey.BYTES);
+        }
+    }
+
+    // revoke() salvo que la clave ya esté en memoria: una revisión periódica no repite el INSERT
+    private boolean revokeIfUnknown(String tokenId, Date expiryDate) {
+        Bucket bucket = buckets.get(bucketOf(expiryDate));
+        byte[] key = RevocationKey.of(tokenId);
+        if (bucket != null && bucket.keys.contains(RevocationKey.high(key), RevocationKey.low(key))) {
+            return false;
+        }
+        revoke(tokenId, expiryDate);
+        return true;
+    }
+
+    // Tablas de los intervalos en los que puede expirar un token emitido antes de la próxima rotación,
+    // para que el logout no tenga que ejecutar un CREATE TABLE
+    private void createUpcomingBuckets(long firstAlive) {
+        long lastNeeded = bucketOf(new Date(clock.millis() + tokenLifetimeMs + 2 * bucketMs));
+        for (long bucket = firstAlive; bucket <= lastNeeded; bucket++) {
+            bucketRepository.createBucket(bucket);
+        }
+    }
+
+    // Un bucket está vivo mientras su intervalo no haya terminado: alguno de sus tokens puede no haber expirado
+    private long firstAliveBucket() {
+        return clock.millis() / bucketMs;
+    }
+
+    private long bucketOf(Date expiryDate) {
+        return expiryDate.getTime() / bucketMs;
+    }
+
+    private static final class Bucket {
+        private final BloomFilter bloomFilter;
+        private final LongPairSet keys = new LongPairSet();
+
+        private Bucket(int expectedInsertions, double falsePositiveProbability) {
+            this.bloomFilter = new BloomFilter(expectedInsertions, falsePositiveProbability);
+        }
+    }
+}
@@ -3,8 +3,11 @@ package com.ilich.sb.e_commerce.service;
 import com.ilich.sb.e_commerce.model.Cart;
 import com.ilich.sb.e_commerce.model.CartItem;
 import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.request.CartItemOperationDTO;
+import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Set;
 
 public interface ICartService {
@@ -65,4 +68,33 @@ public interface ICartService {
      * @return El BigDecimal que representa el precio total del carrito.
      */
     BigDecimal getCartTotal(User user);
-}
\ No newline at end of file
+
+    /**
+     * Obtiene el carrito de un usuario listo para la respuesta (ítems, nombre y precio de cada producto y total)
+     * con una sola consulta. Si el usuario no tiene un carrito, se crea uno nuevo.
+     * @param user El usuario cuyo carrito se consulta.
+     * @return El CartResponseDTO del carrito.
+     */
+    CartResponseDTO getCartView(User user);
+
+    /**
+     * Aplica varias operaciones sobre el carrito de un usuario en una sola transacción (p. ej. al fusionar
+     * el carrito tras el login o al repetir un pedido). Las operaciones se aplican en orden y cada una fija
+     * la cantidad de un producto o se la suma/resta; si la cantidad final es 0 o menos, el producto se elimina.
+     * Cuesta un número fijo de consultas: una para los productos y un batch por tipo de escritura.
+     * @param user El usuario cuyo carrito se va a modificar.
+     * @param operations Las operaciones a aplicar.
+     * @return El CartResponseDTO del carrito resultante.
+     * @throws RuntimeException si algún producto no existe, una operación es inválida o no hay stock disponible.
+     */
+    CartResponseDTO updateCartItems(User user, List<CartItemOperationDTO> operations);
+
+    /**
+     * Vuelca a la BD los cambios del carrito que aún no se han guardado, dentro de la transacción en curso,
+     * y no deja modificar el carrito hasta que esta termina. createOrderFromCart lo llama antes de leer el
+     * carrito de la BD. CartServiceImpl guarda cada cambio en el momento, así que no hace nada.
+     * @param user El usuario cuyo carrito se va a guardar.
+     */
+    default void syncToDatabase(User user) {
+    }
+}
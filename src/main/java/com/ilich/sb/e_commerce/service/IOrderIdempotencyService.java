@@ -0,0 +1,24 @@
+package com.ilich.sb.e_commerce.service;
+
+import java.util.function.Supplier;
+
+import org.springframework.http.ResponseEntity;
+
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.response.OrderResponse;
+
+public interface IOrderIdempotencyService {
+
+    /**
+     * Ejecuta la creación del pedido una sola vez por usuario y cabecera Idempotency-Key.
+     * Una repetición devuelve la respuesta original (estado, Location y cuerpo) sin tocar carritos ni stock;
+     * si la primera petición sigue en curso en esta instancia, la repetición espera su resultado.
+     *
+     * @param user El usuario autenticado que realiza el pedido.
+     * @param idempotencyKey El valor de la cabecera Idempotency-Key.
+     * @param placement Crea el pedido; solo se invoca si la clave no tiene ya una respuesta.
+     * @return La respuesta original.
+     * @throws RuntimeException si la clave no es válida o la primera petición sigue en curso en otra instancia.
+     */
+    ResponseEntity<OrderResponse> placeOnce(User user, String idempotencyKey, Supplier<ResponseEntity<OrderResponse>> placement);
+}
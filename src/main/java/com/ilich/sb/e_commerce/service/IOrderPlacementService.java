@@ -0,0 +1,18 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.Order;
+import com.ilich.sb.e_commerce.model.User;
+
+public interface IOrderPlacementService {
+
+    /**
+     * Valida el carrito del usuario, registra un pedido PENDING y lo encola para que lo procese un worker.
+     * El pedido pasa después a CONFIRMED o REJECTED; su estado se consulta con GET /api/orders/{id}.
+     * Sus ítems salen del carrito tal como esté cuando el worker lo procesa, no en el momento de la llamada.
+     *
+     * @param user El usuario autenticado que realiza el pedido.
+     * @return El pedido PENDING, ya con id.
+     * @throws RuntimeException si el carrito está vacío o la cola de pedidos está llena.
+     */
+    Order submit(User user);
+}
@@ -2,6 +2,8 @@ package com.ilich.sb.e_commerce.service;
 
 import com.ilich.sb.e_commerce.model.Order;
 import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.response.OrderResponse;
+import org.springframework.data.domain.Page;
 
 import java.util.List;
 import java.util.Optional;
@@ -17,6 +19,33 @@ public interface IOrderService {
      */
     Order createOrderFromCart(User user);
 
+    /**
+     * Registra un pedido asíncrono vacío en estado PENDING, que luego procesa confirmPendingOrder.
+     *
+     * @param user El usuario autenticado que realiza el pedido.
+     * @return El pedido PENDING, ya con id.
+     */
+    Order createPendingOrder(User user);
+
+    /**
+     * Procesa un pedido asíncrono PENDING igual que createOrderFromCart (ítems del carrito, descuento de
+     * stock y vaciado del carrito) y lo deja en CONFIRMED. Si ya se procesó, lo devuelve sin cambios.
+     * El pedido se reclama con un UPDATE condicional antes de procesarlo: aunque varios nodos lo tengan
+     * en cola, solo uno lo confirma.
+     *
+     * @param orderId El ID del pedido PENDING.
+     * @return El pedido confirmado.
+     * @throws RuntimeException si no hay stock, el carrito está vacío o el pedido no existe.
+     */
+    Order confirmPendingOrder(Long orderId);
+
+    /**
+     * Marca como REJECTED un pedido asíncrono que sigue en PENDING, con el mismo UPDATE condicional.
+     *
+     * @param orderId El ID del pedido.
+     */
+    void rejectPendingOrder(Long orderId);
+
     /**
      * Obtiene el historial de pedidos de un usuario específico.
      *
@@ -25,6 +54,17 @@ public interface IOrderService {
      */
     List<Order> getOrdersByUser(User user);
 
+    /**
+     * Obtiene una página del historial de pedidos de un usuario, del más reciente al más antiguo.
+     * Cuesta siempre tres consultas (cabeceras, total e ítems), sin importar cuántos pedidos o ítems tenga la página.
+     *
+     * @param user El usuario cuyos pedidos se quieren obtener.
+     * @param page Número de página (desde 0).
+     * @param size Tamaño de página (máximo 100).
+     * @return Una página de OrderResponse con sus ítems.
+     */
+    Page<OrderResponse> getOrderHistory(User user, int page, int size);
+
     /**
      * Obtiene los detalles de un pedido específico por su ID para un usuario dado.
      *
@@ -0,0 +1,66 @@
+package com.ilich.sb.e_commerce.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.ilich.sb.e_commerce.model.Product;
+
+/**
+ * Motor de búsqueda de texto de productos (nombre y descripción) que sustituye a los LIKE '%x%'.
+ * Por defecto (ecommerce.app.product-search.engine=database) no hay ningún motor registrado y ProductServiceImpl
+ * usa las Specifications. Con engine=memory se usa un índice invertido en memoria de cada réplica, que busca
+ * por palabras y prefijos en lugar de subcadenas (ver InMemoryProductSearchEngine).
+ */
+public interface IProductSearchEngine {
+
+    // false mientras el índice no se haya construido: en ese caso se usa la BD
+    boolean isReady();
+
+    // Reconstruye el índice completo a partir de la tabla product
+    void rebuild();
+
+    // Añade o reemplaza un producto en el índice
+    void index(Product product);
+
+    void remove(Long productId);
+
+    /**
+     * Busca los productos cuyo texto contiene todos los términos de la consulta (cada uno también como prefijo).
+     * Los filtros de precio y categoría tienen la misma semántica que en la búsqueda por Specification.
+     * @return Coincidencias ordenadas por relevancia descendente (id ascendente como desempate).
+     */
+    List<SearchHit> search(String text, Double minPrice, Double maxPrice, Long categoryId);
+
+    /**
+     * Coincidencia de una búsqueda, con los campos necesarios para ordenar y paginar sin ir a la BD.
+     */
+    final class SearchHit {
+        private final Long id;
+        private final double score;
+        private final String name;
+        private final BigDecimal price;
+
+        public SearchHit(Long id, double score, String name, BigDecimal price) {
+            this.id = id;
+            this.score = score;
+            this.name = name;
+            this.price = price;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.ilich.sb.e_commerce.service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.payload.ProductDTO;
+import com.ilich.sb.e_commerce.payload.response.CursorPageDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -13,6 +16,14 @@ public interface IProductService {
 
     public Optional<Product> getById(long id);
 
+    // Lecturas del catálogo ya mapeadas a DTO, servidas desde ProductCatalogCache
+    public List<ProductDTO> getAllDtos();
+
+    public Optional<ProductDTO> getDtoById(long id);
+
+    // Exportación en streaming: entrega cada producto al consumer sin cargar el catálogo completo en memoria
+    public long streamAllDtos(Consumer<ProductDTO> consumer);
+
     public Product save(Product category);
 
     public Product update(long id, Product product);
@@ -21,4 +32,8 @@ public interface IProductService {
 
     Page<Product> getAllProductsWithFilterPageable(String search, Double minPrice, Double maxPrice, Long categoryId, Pageable pageable);
 
+    // Paginación keyset: sin count(*) ni OFFSET; la siguiente página se pide con el cursor devuelto
+    CursorPageDTO<Product> getProductsWithFilterKeyset(String search, Double minPrice, Double maxPrice, Long categoryId,
+                                                       String sortField, boolean ascending, String cursor, int size);
+
 }
@@ -1,5 +1,6 @@
 package com.ilich.sb.e_commerce.service;
 
+import java.time.Instant;
 import java.util.Optional;
 
 import com.ilich.sb.e_commerce.model.RefreshToken;
@@ -11,10 +12,19 @@ public interface IRefreshTokenService {
 
     Optional<RefreshToken> findByToken(String token);
 
-    RefreshToken verifyExpiration(RefreshToken token);
+    /**
+     * Rota un Refresh Token: lo sustituye por uno nuevo con un único UPDATE condicional por su hash.
+     * @return El token rotado, con el nuevo valor en claro (getToken()) y su usuario con sus roles.
+     * @throws TokenRefreshException Si el token no existe, ya se rotó o ha expirado.
+     */
+    RefreshToken rotate(String token);
 
     int deleteByUserId(Long userId);
 
-    void cleanExpiredRefreshTokens();
+    /**
+     * Elimina un tramo de hasta limit Refresh Tokens expirados, en su propia transacción.
+     * @return Número de tokens eliminados; menos de limit indica que no quedan más.
+     */
+    int cleanExpiredRefreshTokens(Instant now, int limit);
 
 }
@@ -0,0 +1,41 @@
+package com.ilich.sb.e_commerce.service;
+
+import java.util.Map;
+
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.payload.response.StockAvailabilityDTO;
+
+/**
+ * Reservas temporales (con TTL) de stock para los productos que están en un carrito.
+ * Las reservas viven en memoria y se persisten en batches; la BD sigue siendo la autoridad del stock
+ * en el checkout (UPDATE condicional), las reservas reparten la contención durante la sesión.
+ */
+public interface IStockReservationService {
+
+    /**
+     * Fija la reserva del carrito para el producto en la cantidad indicada (0 la libera) y renueva su caducidad.
+     * Si se ejecuta dentro de una transacción y esta se revierte, se restaura la reserva anterior.
+     * @throws RuntimeException "Not enough stock for product" si el stock menos las reservas de otros carritos no alcanza.
+     */
+    void hold(Long cartId, Product product, int quantity);
+
+    void release(Long cartId, Long productId);
+
+    /**
+     * Convierte las reservas del carrito en descuentos de stock tras el commit del pedido.
+     * @param stockAfter id de producto -> stock que quedó en la BD tras el descuento.
+     */
+    void confirm(Long cartId, Map<Long, Integer> stockAfter);
+
+    // Disponible = stock - reservas vigentes; solo consulta la BD la primera vez que se pide un producto
+    StockAvailabilityDTO getAvailability(Long productId);
+
+    // Olvida el stock en memoria del producto (se modificó por otra vía); las reservas se mantienen
+    void evictStock(Long productId);
+
+    // Libera las reservas caducadas; devuelve cuántas se liberaron
+    int releaseExpired();
+
+    // Persiste en batch las reservas modificadas desde el último flush
+    void flush();
+}
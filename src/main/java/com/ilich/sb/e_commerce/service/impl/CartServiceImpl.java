@@ -1,33 +1,46 @@
 package com.ilich.sb.e_commerce.service.impl;
 
+import com.ilich.sb.e_commerce.mapper.CartMapper;
 import com.ilich.sb.e_commerce.model.Cart;
 import com.ilich.sb.e_commerce.model.CartItem;
 import com.ilich.sb.e_commerce.model.Product;
 import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.request.CartItemOperationDTO;
+import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
 import com.ilich.sb.e_commerce.repository.ICartItemRepository;
 import com.ilich.sb.e_commerce.repository.ICartRepository;
 import com.ilich.sb.e_commerce.repository.IProductRepository;
 import com.ilich.sb.e_commerce.service.ICartService;
+import com.ilich.sb.e_commerce.service.IStockReservationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Service
+@ConditionalOnProperty(name = "ecommerce.app.cart.store", havingValue = "database", matchIfMissing = true)
 public class CartServiceImpl implements ICartService {
 
     private final ICartRepository cartRepository;
     private final ICartItemRepository cartItemRepository;
     private final IProductRepository productRepository; // Necesitamos acceso a productos para añadirlos al carrito
+    private final IStockReservationService stockReservationService; // Reserva el stock mientras el producto está en el carrito
 
     @Autowired
-    public CartServiceImpl(ICartRepository cartRepository, ICartItemRepository cartItemRepository, IProductRepository productRepository) {
+    public CartServiceImpl(ICartRepository cartRepository, ICartItemRepository cartItemRepository, IProductRepository productRepository,
+                           IStockReservationService stockReservationService) {
         this.cartRepository = cartRepository;
         this.cartItemRepository = cartItemRepository;
         this.productRepository = productRepository;
+        this.stockReservationService = stockReservationService;
     }
 
     @Override
@@ -41,6 +54,16 @@ public class CartServiceImpl implements ICartService {
                 });
     }
 
+    @Override
+    public CartResponseDTO getCartView(User user) {
+        List<ICartRepository.CartView> rows = cartRepository.findCartViewByUser(user);
+        if (rows.isEmpty()) {
+            // Usuario sin carrito: se crea vacío
+            return new CartResponseDTO(getCartByUser(user).getId(), new HashSet<>(), BigDecimal.ZERO);
+        }
+        return CartMapper.mapToCartResponse(rows);
+    }
+
     @Override
     @Transactional
     public CartItem addProductToCart(User user, Long productId, int quantity) {
@@ -54,20 +77,53 @@ public class CartServiceImpl implements ICartService {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
 
-        // Intenta encontrar si el producto ya existe en el carrito
-        Optional<CartItem> existingCartItem = cartItemRepository.findByCartAndProduct(cart, product);
+        // Inserta el ítem o suma la cantidad en una sola sentencia atómica (sin leer antes el CartItem).
+        // El carrito y el producto se siguen leyendo: la reserva de stock necesita el Product y su cantidad total.
+        ICartItemRepository.UpsertedCartItem upserted = cartItemRepository.addQuantity(cart.getId(), productId, quantity);
 
-        CartItem cartItem;
-        if (existingCartItem.isPresent()) {
-            // Si el producto ya está en el carrito, actualiza la cantidad
-            cartItem = existingCartItem.get();
-            cartItem.setQuantity(cartItem.getQuantity() + quantity);
-        } else {
-            // Si el producto no está en el carrito, crea un nuevo CartItem
-            cartItem = new CartItem(cart, product, quantity);
-            cart.addCartItem(cartItem); // Añade el CartItem a la colección del Cart
+        // Reserva el stock de la cantidad total del carrito. Si no hay suficiente disponible,
+        // la excepción deshace también el upsert.
+        stockReservationService.hold(cart.getId(), product, upserted.getQuantity());
+
+        return new CartItem(upserted.getId(), cart, product, upserted.getQuantity());
+    }
+
+    @Override
+    @Transactional
+    public CartResponseDTO updateCartItems(User user, List<CartItemOperationDTO> operations) {
+        // Cantidades actuales con la misma consulta que GET /api/cart
+        List<ICartRepository.CartView> rows = cartRepository.findCartViewByUser(user);
+        Long cartId = rows.isEmpty() ? getCartByUser(user).getId() : rows.get(0).getCartId();
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        Map<Long, Integer> current = new HashMap<>();
+        rows.stream()
+                .filter(row -> row.getCartItemId() != null)
+                .forEach(row -> current.put(row.getProductId(), row.getQuantity()));
+
+        // Aplica las operaciones en orden sobre la cantidad actual de cada producto
+        for (CartItemOperationDTO operation : operations) {
+            if ((operation.getQuantity() == null) == (operation.getDelta() == null)) {
+                throw new RuntimeException("Invalid cart operation for product: " + operation.getProductId() + ". Set either quantity or delta.");
+            }
+            Long productId = operation.getProductId();
+            int base = quantities.getOrDefault(productId, current.getOrDefault(productId, 0));
+            quantities.put(productId, operation.getQuantity() != null ? operation.getQuantity() : Math.max(base + operation.getDelta(), 0));
         }
-        return cartItemRepository.save(cartItem); // Guarda o actualiza el CartItem
+
+        // Todos los productos en una consulta IN
+        Map<Long, Product> products = new HashMap<>();
+        productRepository.findAllById(quantities.keySet()).forEach(product -> products.put(product.getId(), product));
+        for (Long productId : quantities.keySet()) {
+            if (!products.containsKey(productId)) {
+                throw new RuntimeException("Product not found with id: " + productId);
+            }
+        }
+
+        // Reserva (o libera, con 0) la cantidad final; un fallo deshace toda la operación
+        quantities.forEach((productId, quantity) -> stockReservationService.hold(cartId, products.get(productId), quantity));
+
+        cartItemRepository.setQuantities(cartId, quantities);
+        return CartMapper.mapToCartResponse(cartRepository.findCartViewByUser(user));
     }
 
     @Override
@@ -76,11 +132,12 @@ public class CartServiceImpl implements ICartService {
         Cart cart = getCartByUser(user); // Obtiene el carrito del usuario
 
         // Busca el producto en el carrito
-        CartItem cartItem = cartItemRepository.findByCartAndProduct(cart,
-                        productRepository.findById(productId)
-                                .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId)))
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
+        CartItem cartItem = cartItemRepository.findByCartAndProduct(cart, product)
                 .orElseThrow(() -> new RuntimeException("Product with id: " + productId + " not found in cart."));
 
+        stockReservationService.hold(cart.getId(), product, newQuantity); // Con cantidad 0 libera la reserva
         if (newQuantity <= 0) {
             // Si la nueva cantidad es 0 o menos, elimina el ítem del carrito
             cart.removeCartItem(cartItem); // Elimina de la colección del Cart
@@ -104,6 +161,7 @@ public class CartServiceImpl implements ICartService {
                                 .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId)))
                 .orElseThrow(() -> new RuntimeException("Product with id: " + productId + " not found in cart."));
 
+        stockReservationService.release(cart.getId(), productId);
         cart.removeCartItem(cartItem); // Elimina de la colección del Cart
         cartItemRepository.delete(cartItem); // Elimina de la base de datos
     }
@@ -112,9 +170,10 @@ public class CartServiceImpl implements ICartService {
     @Transactional
     public void clearCart(User user) {
         Cart cart = getCartByUser(user); // Obtiene el carrito del usuario
-        cartItemRepository.deleteAll(cart.getCartItems()); // Elimina todos los ítems asociados al carrito
-        cart.getCartItems().clear(); // Limpia la colección en memoria
-        cartRepository.save(cart); // Guarda el carrito con la colección vacía
+        // Los productos se leen de la BD: los añadidos por upsert no pasan por la colección en memoria del carrito
+        cartItemRepository.findProductIdsByCartId(cart.getId())
+                .forEach(productId -> stockReservationService.release(cart.getId(), productId));
+        cartItemRepository.deleteAllByCartId(cart.getId()); // Un único DELETE para todos los ítems
     }
 
     @Override
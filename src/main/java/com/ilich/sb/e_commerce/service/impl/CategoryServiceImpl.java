@@ -6,6 +6,7 @@ import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.ilich.sb.e_commerce.cache.ProductCatalogCache;
 import com.ilich.sb.e_commerce.model.Category;
 import com.ilich.sb.e_commerce.repository.ICategoryRepository;
 import com.ilich.sb.e_commerce.service.ICategoryService;
@@ -14,10 +15,12 @@ import com.ilich.sb.e_commerce.service.ICategoryService;
 public class CategoryServiceImpl implements ICategoryService {
 
     private final ICategoryRepository iCategoryRepository;
+    private final ProductCatalogCache productCatalogCache; // Los ProductDTO incluyen su categoría
 
     @Autowired
-    public CategoryServiceImpl(ICategoryRepository iCategoryRepository) {
+    public CategoryServiceImpl(ICategoryRepository iCategoryRepository, ProductCatalogCache productCatalogCache) {
         this.iCategoryRepository = iCategoryRepository;
+        this.productCatalogCache = productCatalogCache;
     }
 
     @Override
@@ -39,7 +42,12 @@ public class CategoryServiceImpl implements ICategoryService {
     public Category update(long id, Category category) {
         Optional<Category> cat = iCategoryRepository.findById(id);
             //.orElseThrow(()-> new RuntimeException("No existe id: "+id));
-        return cat.isPresent() ? iCategoryRepository.save(category) : null;
+        if (cat.isEmpty()) {
+            return null;
+        }
+        Category saved = iCategoryRepository.save(category);
+        productCatalogCache.invalidate();
+        return saved;
     }
 
 
@@ -47,6 +55,7 @@ public class CategoryServiceImpl implements ICategoryService {
     public boolean delete(long id) {
         if (iCategoryRepository.existsById(id)) {
             iCategoryRepository.deleteById(id);
+            productCatalogCache.invalidate();
             return true;
         }
         return false;
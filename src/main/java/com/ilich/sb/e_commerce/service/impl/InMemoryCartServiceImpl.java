@@ -0,0 +1,592 @@
+package com.ilich.sb.e_commerce.service.impl;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ilich.sb.e_commerce.mapper.CartMapper;
+import com.ilich.sb.e_commerce.model.Cart;
+import com.ilich.sb.e_commerce.model.CartItem;
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.request.CartItemOperationDTO;
+import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
+import com.ilich.sb.e_commerce.repository.ICartItemRepository;
+import com.ilich.sb.e_commerce.repository.ICartRepository;
+import com.ilich.sb.e_commerce.service.ICartService;
+import com.ilich.sb.e_commerce.service.IProductService;
+import com.ilich.sb.e_commerce.service.IStockReservationService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Carritos en memoria con escritura diferida (write-behind): alternativa a CartServiceImpl que se activa con
+ * ecommerce.app.cart.store=memory.
+ *
+ * - Los carritos activos viven en una caché acotada por número de carritos y por inactividad, con el id del
+ *   usuario como clave. Solo se lee la BD al activar un carrito; los productos salen del catálogo cacheado.
+ * - Las operaciones sobre un carrito se serializan con locks por franjas (striping) sobre el id del usuario:
+ *   no hay lock global y dos carritos solo compiten si caen en la misma franja.
+ * - Cada carrito acumula la cantidad final de los productos que han cambiado desde el último guardado, así que
+ *   muchas operaciones sobre el mismo producto acaban en una sola escritura. CartStoreScheduler guarda los
+ *   carritos pendientes en batch, una transacción por franja, con el lock de la franja tomado hasta el commit.
+ *   Un carrito desalojado de la caché con cambios pendientes se sigue sirviendo hasta que se guarda.
+ * - Si el batch de una franja viola una restricción de la BD (p. ej. la FK de un producto ya eliminado), se
+ *   reintenta carrito a carrito y, dentro del carrito que falla, línea a línea: las líneas que siguen fallando
+ *   se descartan (métrica cart.flush.dropped) para que no bloqueen el guardado del resto. Los demás errores
+ *   (BD caída, timeouts) dejan los cambios pendientes para el siguiente flush.
+ * - createOrderFromCart llama antes a syncToDatabase, que vuelca el carrito en su misma transacción. Hasta el
+ *   commit, el carrito de ese usuario queda en checkout: sus operaciones esperan, pero la franja se libera en cuanto
+ *   se escribe el batch, así que los demás usuarios de la franja no esperan a que termine el pedido.
+ *
+ * Como las reservas de stock, el estado es por instancia: con varias réplicas cada usuario debe ir siempre a la
+ * misma, y si la aplicación se cae se pierden los cambios del último intervalo. Los ítems añadidos en memoria
+ * no tienen id hasta que el carrito se vuelve a cargar de la BD.
+ */
+@Service
+@ConditionalOnProperty(name = "ecommerce.app.cart.store", havingValue = "memory")
+public class InMemoryCartServiceImpl implements ICartService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryCartServiceImpl.class);
+
+    private static final int STRIPES = 64; // Potencia de 2
+
+    private final ICartRepository cartRepository;
+    private final ICartItemRepository cartItemRepository;
+    private final IProductService productService; // ProductDTO cacheados: sin consulta por operación
+    private final IStockReservationService stockReservationService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter droppedLines;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final Condition[] checkoutEnded = new Condition[STRIPES];
+    private final Cache<Long, CartState> carts;
+    // Carritos con cambios sin guardar, también los ya desalojados de la caché. Solo se modifica con el lock de su franja
+    private final Map<Long, CartState> dirty = new ConcurrentHashMap<>();
+    // Por franja, se incrementa cada vez que la BD pasa a ser la única copia de uno de sus carritos: una carga que
+    // empezó antes se descarta. Se lee y se modifica con el lock de la franja
+    private final long[] versions = new long[STRIPES];
+    // Usuario -> hilo cuya transacción de checkout aún no ha terminado. Solo se modifica con el lock de su franja
+    private final Map<Long, Thread> checkouts = new ConcurrentHashMap<>();
+
+    public InMemoryCartServiceImpl(ICartRepository cartRepository,
+                                   ICartItemRepository cartItemRepository,
+                                   IProductService productService,
+                                   IStockReservationService stockReservationService,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${ecommerce.app.cart.maximum-size:100000}") long maximumSize,
+                                   @Value("${ecommerce.app.cart.idle-minutes:30}") long idleMinutes) {
+        this.cartRepository = cartRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.productService = productService;
+        this.stockReservationService = stockReservationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.droppedLines = Counter.builder("cart.flush.dropped")
+                .description("Líneas de carrito descartadas porque la BD las rechaza incluso escritas solas")
+                .register(meterRegistry);
+        this.carts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .build();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+            checkoutEnded[i] = stripes[i].newCondition();
+        }
+    }
+
+    @Override
+    public Cart getCartByUser(User user) {
+        CartSnapshot snapshot = withCart(user, CartState::snapshot);
+        // Los productos se resuelven fuera del lock: el precio es siempre el actual del catálogo
+        Cart cart = new Cart(snapshot.cartId, user, new HashSet<>());
+        snapshot.lines.forEach((productId, line) -> productService.getDtoById(productId)
+                .ifPresent(dto -> cart.addCartItem(new CartItem(line.itemId, cart, new Product(dto), line.quantity))));
+        return cart;
+    }
+
+    @Override
+    public CartResponseDTO getCartView(User user) {
+        Cart cart = getCartByUser(user);
+        return CartMapper.mapToCartResponse(cart.getCartItems(), cart.getId(), total(cart));
+    }
+
+    @Override
+    public CartItem addProductToCart(User user, Long productId, int quantity) {
+        if (quantity <= 0) {
+            throw new RuntimeException("Quantity must be positive.");
+        }
+        Product product = findProduct(productId);
+        return withCart(user, state -> {
+            Line line = state.lines.get(productId);
+            int newQuantity = (line != null ? line.quantity : 0) + quantity;
+            // Si no hay stock disponible para la cantidad total, el carrito no cambia
+            stockReservationService.hold(state.cartId, product, newQuantity);
+            setQuantity(user.getId(), state, productId, newQuantity);
+            return new CartItem(line != null ? line.itemId : null, new Cart(state.cartId, user, new HashSet<>()), product, newQuantity);
+        });
+    }
+
+    @Override
+    public CartResponseDTO updateCartItems(User user, List<CartItemOperationDTO> operations) {
+        for (CartItemOperationDTO operation : operations) {
+            if ((operation.getQuantity() == null) == (operation.getDelta() == null)) {
+                throw new RuntimeException("Invalid cart operation for product: " + operation.getProductId() + ". Set either quantity or delta.");
+            }
+        }
+        Map<Long, Product> products = new HashMap<>();
+        operations.forEach(operation -> products.computeIfAbsent(operation.getProductId(), this::findProduct));
+
+        withCart(user, state -> {
+            // Aplica las operaciones en orden sobre la cantidad actual de cada producto
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            for (CartItemOperationDTO operation : operations) {
+                Long productId = operation.getProductId();
+                Line line = state.lines.get(productId);
+                int base = quantities.getOrDefault(productId, line != null ? line.quantity : 0);
+                quantities.put(productId, operation.getQuantity() != null ? operation.getQuantity() : Math.max(base + operation.getDelta(), 0));
+            }
+
+            // Reserva (o libera, con 0) la cantidad final; si una falla se devuelven las anteriores a como estaban
+            List<Long> held = new ArrayList<>();
+            try {
+                quantities.forEach((productId, quantity) -> {
+                    stockReservationService.hold(state.cartId, products.get(productId), quantity);
+                    held.add(productId);
+                });
+            } catch (RuntimeException e) {
+                for (Long productId : held) {
+                    Line line = state.lines.get(productId);
+                    try {
+                        stockReservationService.hold(state.cartId, products.get(productId), line != null ? line.quantity : 0);
+                    } catch (RuntimeException restoreFailure) {
+                        logger.warn("No se pudo restaurar la reserva del producto {} del carrito {}: {}", productId, state.cartId, restoreFailure.getMessage());
+                    }
+                }
+                throw e;
+            }
+            quantities.forEach((productId, quantity) -> setQuantity(user.getId(), state, productId, quantity));
+            return null;
+        });
+        return getCartView(user);
+    }
+
+    @Override
+    public CartItem updateProductQuantity(User user, Long productId, int newQuantity) {
+        Product product = findProduct(productId);
+        return withCart(user, state -> {
+            Line line = state.lines.get(productId);
+            if (line == null) {
+                throw new RuntimeException("Product with id: " + productId + " not found in cart.");
+            }
+            stockReservationService.hold(state.cartId, product, newQuantity); // Con cantidad 0 libera la reserva
+            setQuantity(user.getId(), state, productId, newQuantity);
+            return newQuantity <= 0 ? null : new CartItem(line.itemId, new Cart(state.cartId, user, new HashSet<>()), product, newQuantity);
+        });
+    }
+
+    @Override
+    public void removeProductFromCart(User user, Long productId) {
+        findProduct(productId);
+        withCart(user, state -> {
+            if (!state.lines.containsKey(productId)) {
+                throw new RuntimeException("Product with id: " + productId + " not found in cart.");
+            }
+            stockReservationService.release(state.cartId, productId);
+            setQuantity(user.getId(), state, productId, 0);
+            return null;
+        });
+    }
+
+    @Override
+    public void clearCart(User user) {
+        withCart(user, state -> {
+            for (Long productId : new ArrayList<>(state.lines.keySet())) {
+                stockReservationService.release(state.cartId, productId);
+                setQuantity(user.getId(), state, productId, 0);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Set<CartItem> getCartItems(User user) {
+        return getCartByUser(user).getCartItems();
+    }
+
+    @Override
+    public BigDecimal getCartTotal(User user) {
+        return total(getCartByUser(user));
+    }
+
+    /**
+     * Escribe los cambios pendientes del carrito en la transacción en curso y lo deja en checkout hasta que esta
+     * termina: las operaciones sobre ese carrito esperan, las de los demás usuarios de su franja no.
+     */
+    @Override
+    public void syncToDatabase(User user) {
+        Long userId = user.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            checkOut(userId);
+        } else {
+            transactionTemplate.executeWithoutResult(status -> checkOut(userId));
+        }
+    }
+
+    /**
+     * Guarda en batch los cambios pendientes de todos los carritos, una transacción por franja.
+     * @return El número de carritos guardados.
+     */
+    public int flush() {
+        Map<Integer, List<Long>> byStripe = dirty.keySet().stream().collect(Collectors.groupingBy(this::stripeIndex));
+        int flushed = 0;
+        for (Map.Entry<Integer, List<Long>> entry : byStripe.entrySet()) {
+            int stripe = entry.getKey();
+            try {
+                flushed += writeInTransaction(stripe, entry.getValue(), null);
+            } catch (DataIntegrityViolationException e) {
+                // Un carrito con datos que la BD rechaza no debe impedir guardar los demás de la franja
+                logger.warn("El batch de {} carritos viola una restricción; se reintenta carrito a carrito: {}", entry.getValue().size(), e.getMessage());
+                for (Long userId : entry.getValue()) {
+                    flushed += flushCart(stripe, userId);
+                }
+            } catch (RuntimeException e) {
+                // Los cambios siguen pendientes y se reintentan en el siguiente flush
+                logger.error("No se pudieron guardar {} carritos: {}", entry.getValue().size(), e.getMessage());
+            }
+        }
+        return flushed;
+    }
+
+    // Guarda un carrito solo y, si la BD lo rechaza, sus líneas una a una, descartando las que fallan
+    private int flushCart(int stripe, Long userId) {
+        try {
+            return writeInTransaction(stripe, List.of(userId), null);
+        } catch (DataIntegrityViolationException e) {
+            for (Long productId : pendingProducts(stripe, userId)) {
+                try {
+                    writeInTransaction(stripe, List.of(userId), productId);
+                } catch (DataIntegrityViolationException lineFailure) {
+                    drop(stripe, userId, productId, lineFailure);
+                } catch (RuntimeException lineFailure) {
+                    logger.error("No se pudo guardar el producto {} del carrito del usuario {}: {}", productId, userId, lineFailure.getMessage());
+                }
+            }
+            return 0;
+        } catch (RuntimeException e) {
+            logger.error("No se pudo guardar el carrito del usuario {}: {}", userId, e.getMessage());
+            return 0;
+        }
+    }
+
+    private int writeInTransaction(int stripe, List<Long> userIds, Long onlyProduct) {
+        Integer written = transactionTemplate.execute(status -> writeUntilCompletion(stripe, userIds, onlyProduct));
+        return written != null ? written : 0;
+    }
+
+    private List<Long> pendingProducts(int stripe, Long userId) {
+        ReentrantLock lock = stripes[stripe];
+        lock.lock();
+        try {
+            CartState state = dirty.get(userId);
+            return state != null ? new ArrayList<>(state.pending.keySet()) : List.of();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Descarta una línea que la BD rechaza incluso escrita sola: deja de estar pendiente, sale del carrito en
+    // memoria y libera su reserva de stock
+    private void drop(int stripe, Long userId, Long productId, RuntimeException cause) {
+        ReentrantLock lock = stripes[stripe];
+        lock.lock();
+        try {
+            CartState state = dirty.get(userId);
+            if (state == null || checkouts.containsKey(userId) || state.pending.remove(productId) == null) {
+                return;
+            }
+            state.lines.remove(productId);
+            stockReservationService.release(state.cartId, productId);
+            droppedLines.increment();
+            logger.error("Se descarta el producto {} del carrito {}: la BD lo rechaza ({})", productId, state.cartId, cause.getMessage());
+            if (state.pending.isEmpty()) {
+                dirty.remove(userId);
+                if (carts.getIfPresent(userId) != state) {
+                    versions[stripe]++; // Ya solo está en la BD
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        int flushed = flush();
+        if (!dirty.isEmpty()) {
+            logger.warn("Se pierden los cambios sin guardar de {} carritos al detener la aplicación.", dirty.size());
+        } else if (flushed > 0) {
+            logger.info("Guardados {} carritos al detener la aplicación.", flushed);
+        }
+    }
+
+    // Ejecuta la acción con el lock de la franja del usuario. Si el carrito no está en memoria se carga de la BD
+    // fuera del lock y se vuelve a intentar.
+    private <T> T withCart(User user, Function<CartState, T> action) {
+        Long userId = user.getId();
+        int stripe = stripeIndex(userId);
+        ReentrantLock lock = stripes[stripe];
+        CartState loaded = null;
+        long loadedAt = 0;
+        while (true) {
+            lock.lock();
+            try {
+                awaitCheckout(stripe, userId);
+                CartState state = carts.getIfPresent(userId);
+                if (state == null) {
+                    state = dirty.get(userId); // Desalojado con cambios pendientes: la BD aún no los tiene
+                    if (state == null && loaded != null && loadedAt == versions[stripe]) {
+                        state = loaded;
+                    }
+                    if (state != null) {
+                        carts.put(userId, state);
+                    }
+                }
+                if (state != null) {
+                    return action.apply(state);
+                }
+                loadedAt = versions[stripe];
+            } finally {
+                lock.unlock();
+            }
+            loaded = load(user);
+        }
+    }
+
+    // Debe llamarse con el lock de la franja. Espera (soltando el lock) a que termine el checkout de otro hilo
+    private void awaitCheckout(int stripe, Long userId) {
+        Thread owner;
+        while ((owner = checkouts.get(userId)) != null && owner != Thread.currentThread()) {
+            checkoutEnded[stripe].awaitUninterruptibly();
+        }
+    }
+
+    // Una consulta (la de GET /api/cart en CartServiceImpl) y, si el usuario no tiene carrito, el alta
+    private CartState load(User user) {
+        List<ICartRepository.CartView> rows = cartRepository.findCartViewByUser(user);
+        Long cartId = !rows.isEmpty() ? rows.get(0).getCartId() : findOrCreateCartId(user);
+        CartState state = new CartState(cartId);
+        rows.stream()
+                .filter(row -> row.getCartItemId() != null)
+                .forEach(row -> state.lines.put(row.getProductId(), new Line(row.getCartItemId(), row.getQuantity())));
+        return state;
+    }
+
+    private Long findOrCreateCartId(User user) {
+        try {
+            return cartRepository.findByUser(user).orElseGet(() -> cartRepository.save(new Cart(user))).getId();
+        } catch (DataIntegrityViolationException e) {
+            // Otra carga concurrente del mismo usuario (la carga va sin lock) creó el carrito primero
+            return cartRepository.findByUser(user).orElseThrow(() -> e).getId();
+        }
+    }
+
+    // Debe llamarse con el lock de la franja del usuario
+    private void setQuantity(Long userId, CartState state, Long productId, int quantity) {
+        if (quantity > 0) {
+            Line line = state.lines.get(productId);
+            state.lines.put(productId, new Line(line != null ? line.itemId : null, quantity));
+        } else {
+            state.lines.remove(productId);
+        }
+        state.pending.put(productId, Math.max(quantity, 0));
+        dirty.put(userId, state);
+    }
+
+    // Toma el lock de la franja hasta que termine la transacción en curso y escribe en ella los cambios pendientes
+    // de los carritos indicados: antes del commit nadie puede modificarlos ni leer una BD que aún no los refleja.
+    // La transacción solo contiene ese batch. Con commit se dan por guardados; con rollback vuelven a quedar pendientes.
+    // Los carritos en checkout se saltan: su transacción ya los escribe. Con onlyProduct solo se escribe esa línea.
+    private int writeUntilCompletion(int stripe, List<Long> userIds, Long onlyProduct) {
+        ReentrantLock lock = stripes[stripe];
+        lock.lock();
+        List<Long> targets = userIds.stream().filter(userId -> !checkouts.containsKey(userId)).collect(Collectors.toList());
+        Map<Long, CartState> written = new HashMap<>();
+        Map<Long, Map<Long, Integer>> byCart = new HashMap<>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    complete(stripe, targets, written, byCart, status == STATUS_COMMITTED);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+        return write(targets, written, byCart, onlyProduct);
+    }
+
+    // Como writeUntilCompletion para un solo carrito, pero el lock de la franja se suelta tras escribir el batch:
+    // el resto de la transacción de checkout (stock, pedido) solo bloquea las operaciones de este usuario.
+    private void checkOut(Long userId) {
+        int stripe = stripeIndex(userId);
+        ReentrantLock lock = stripes[stripe];
+        List<Long> targets = List.of(userId);
+        Map<Long, CartState> written = new HashMap<>();
+        Map<Long, Map<Long, Integer>> byCart = new HashMap<>();
+        lock.lock();
+        try {
+            awaitCheckout(stripe, userId);
+            if (checkouts.putIfAbsent(userId, Thread.currentThread()) != null) {
+                return; // El mismo hilo ya lo tiene en checkout en esta transacción
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    lock.lock();
+                    try {
+                        checkouts.remove(userId);
+                        complete(stripe, targets, written, byCart, status == STATUS_COMMITTED);
+                        if (status == STATUS_COMMITTED) {
+                            // El pedido ha vaciado el carrito en la BD: la copia en memoria se descarta
+                            carts.invalidate(userId);
+                            dirty.remove(userId);
+                            versions[stripe]++;
+                        }
+                        checkoutEnded[stripe].signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            write(targets, written, byCart, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Debe llamarse con el lock de la franja. Pasa los cambios pendientes de los carritos (o solo su línea de
+    // onlyProduct) a un batch
+    private int write(List<Long> userIds, Map<Long, CartState> written, Map<Long, Map<Long, Integer>> byCart, Long onlyProduct) {
+        for (Long userId : userIds) {
+            CartState state = dirty.get(userId);
+            if (state == null || state.pending.isEmpty()) {
+                continue;
+            }
+            if (onlyProduct == null) {
+                written.put(userId, state);
+                byCart.put(state.cartId, state.pending);
+                state.pending = new HashMap<>();
+            } else if (state.pending.containsKey(onlyProduct)) {
+                written.put(userId, state);
+                byCart.put(state.cartId, new HashMap<>(Map.of(onlyProduct, state.pending.remove(onlyProduct))));
+            }
+        }
+        if (!byCart.isEmpty()) {
+            cartItemRepository.setQuantities(byCart);
+        }
+        return byCart.size();
+    }
+
+    // Debe llamarse con el lock de la franja al terminar la transacción de write
+    private void complete(int stripe, List<Long> userIds, Map<Long, CartState> written,
+                          Map<Long, Map<Long, Integer>> byCart, boolean committed) {
+        for (Long userId : userIds) {
+            CartState state = written.get(userId);
+            if (!committed) {
+                if (state != null) {
+                    byCart.get(state.cartId).forEach(state.pending::putIfAbsent); // Lo cambiado después tiene prioridad
+                    dirty.put(userId, state);
+                }
+                continue;
+            }
+            state = dirty.get(userId);
+            if (state != null && state.pending.isEmpty()) {
+                dirty.remove(userId);
+                if (carts.getIfPresent(userId) != state) {
+                    versions[stripe]++; // Ya solo está en la BD
+                }
+            }
+        }
+    }
+
+    private Product findProduct(Long productId) {
+        return productService.getDtoById(productId)
+                .map(Product::new)
+                .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
+    }
+
+    private static BigDecimal total(Cart cart) {
+        return cart.getCartItems().stream()
+                .map(CartItem::getSubtotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private int stripeIndex(Long userId) {
+        return Long.hashCode(userId) & (STRIPES - 1);
+    }
+
+    /**
+     * Estado de un carrito en memoria. Se accede siempre con el lock de la franja de su usuario.
+     */
+    private static final class CartState {
+        private final Long cartId;
+        private final Map<Long, Line> lines = new LinkedHashMap<>(); // id de producto -> línea
+        // id de producto -> cantidad final aún sin guardar (0 elimina el ítem)
+        private Map<Long, Integer> pending = new HashMap<>();
+
+        private CartState(Long cartId) {
+            this.cartId = cartId;
+        }
+
+        private CartSnapshot snapshot() {
+            return new CartSnapshot(cartId, new LinkedHashMap<>(lines));
+        }
+    }
+
+    private static final class CartSnapshot {
+        private final Long cartId;
+        private final Map<Long, Line> lines;
+
+        private CartSnapshot(Long cartId, Map<Long, Line> lines) {
+            this.cartId = cartId;
+            this.lines = lines;
+        }
+    }
+
+    private static final class Line {
+        private final Long itemId; // null hasta que el carrito se recarga de la BD
+        private final int quantity;
+
+        private Line(Long itemId, int quantity) {
+            this.itemId = itemId;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.ilich.sb.e_commerce.service.impl;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.repository.IProductRepository;
+import com.ilich.sb.e_commerce.service.IProductSearchEngine;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Índice invertido en memoria sobre el nombre y la descripción de los productos.
+ *
+ * Cada término normalizado (minúsculas, sin tildes) apunta a los productos que lo contienen con un peso
+ * tf / sqrt(longitud), donde los términos del nombre cuentan NAME_WEIGHT veces más que los de la descripción.
+ * La relevancia de un producto es la suma, por cada término de la consulta, de idf * peso; los términos se
+ * buscan también como prefijo ("lap" encuentra "laptop"), con menos peso que una coincidencia exacta.
+ *
+ * Se construye al arrancar desde la tabla product y lo mantiene al día ProductSearchIndexListener
+ * tras cada commit que crea, modifica o elimina un producto.
+ *
+ * Solo se activa con ecommerce.app.product-search.engine=memory, porque cambia lo que encuentra la búsqueda:
+ * - Cada término de la consulta debe ser una palabra del producto o el comienzo de una. A diferencia del
+ *   LIKE '%x%' de la búsqueda en BD, "top" ya no encuentra "laptop".
+ * - El índice es de cada réplica: ProductSearchIndexListener solo ve las escrituras hechas en este nodo,
+ *   así que con varias réplicas los productos escritos en otra no aparecen hasta reiniciar o llamar a rebuild().
+ */
+@Component
+@ConditionalOnProperty(name = "ecommerce.app.product-search.engine", havingValue = "memory")
+public class InMemoryProductSearchEngine implements IProductSearchEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryProductSearchEngine.class);
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{Alnum}]+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final float NAME_WEIGHT = 3f;
+    private static final double PREFIX_MATCH_FACTOR = 0.5;
+
+    private final IProductRepository productRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    // Las búsquedas comparten el lock de lectura; las actualizaciones y la reconstrucción toman el de escritura
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // término -> (id de producto -> peso del término en ese producto)
+    private final NavigableMap<String, Map<Long, Float>> postings = new TreeMap<>();
+    private final Map<Long, IndexedProduct> products = new HashMap<>();
+    private volatile boolean ready;
+
+    public InMemoryProductSearchEngine(IProductRepository productRepository, PlatformTransactionManager transactionManager) {
+        this.productRepository = productRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // Sin índice la búsqueda sigue funcionando con las Specifications
+            logger.error("No se pudo construir el índice de búsqueda de productos: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            products.clear();
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<IProductRepository.SearchDocument> documents = productRepository.streamSearchDocuments()) {
+                    documents.forEach(doc -> addLocked(doc.getId(), doc.getName(), doc.getPrice(), doc.getCategoryId(),
+                            termWeights(doc.getName(), doc.getDescription())));
+                }
+            });
+            ready = true;
+            logger.info("Índice de búsqueda de productos construido: {} productos, {} términos", products.size(), postings.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void index(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        Long categoryId = product.getCategory() != null ? product.getCategory().getId() : null;
+        Map<String, Float> weights = termWeights(product.getName(), product.getDescription());
+        lock.writeLock().lock();
+        try {
+            IndexedProduct current = products.get(product.getId());
+            // Los cambios de stock también disparan el listener: si lo indexado no cambia no se toca el índice
+            if (current != null && current.sameFields(product.getName(), product.getPrice(), categoryId)
+                    && sameTerms(product.getId(), current, weights)) {
+                return;
+            }
+            removeLocked(product.getId());
+            addLocked(product.getId(), product.getName(), product.getPrice(), categoryId, weights);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(String text, Double minPrice, Double maxPrice, Long categoryId) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(text));
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+        BigDecimal min = minPrice != null && maxPrice != null ? BigDecimal.valueOf(minPrice) : null;
+        BigDecimal max = minPrice != null && maxPrice != null ? BigDecimal.valueOf(maxPrice) : null;
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = null;
+            for (String queryTerm : queryTerms) {
+                Map<Long, Double> termScores = scoreTerm(queryTerm, scores);
+                if (scores != null) {
+                    for (Map.Entry<Long, Double> entry : termScores.entrySet()) {
+                        entry.setValue(entry.getValue() + scores.get(entry.getKey()));
+                    }
+                }
+                scores = termScores; // Solo sobreviven los productos que contienen todos los términos
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            List<SearchHit> hits = new ArrayList<>();
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                IndexedProduct product = products.get(entry.getKey());
+                if (product.matches(min, max, categoryId)) {
+                    hits.add(new SearchHit(entry.getKey(), entry.getValue(), product.name, product.price));
+                }
+            }
+            hits.sort(Comparator.comparingDouble(SearchHit::getScore).reversed().thenComparing(SearchHit::getId));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return products.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Puntuación de un término de la consulta: la mejor entre sus coincidencias exactas o por prefijo
+    private Map<Long, Double> scoreTerm(String queryTerm, Map<Long, Double> candidates) {
+        Map<Long, Double> termScores = new HashMap<>();
+        double totalProducts = products.size();
+        for (Map.Entry<String, Map<Long, Float>> term
+                : postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false).entrySet()) {
+            Map<Long, Float> termPostings = term.getValue();
+            double idf = Math.log(1 + totalProducts / termPostings.size());
+            double factor = term.getKey().equals(queryTerm) ? 1.0 : PREFIX_MATCH_FACTOR;
+            for (Map.Entry<Long, Float> posting : termPostings.entrySet()) {
+                if (candidates == null || candidates.containsKey(posting.getKey())) {
+                    termScores.merge(posting.getKey(), idf * factor * posting.getValue(), Math::max);
+                }
+            }
+        }
+        return termScores;
+    }
+
+    // Peso de cada término en un producto: frecuencia (el nombre cuenta NAME_WEIGHT veces) normalizada por longitud
+    private static Map<String, Float> termWeights(String name, String description) {
+        Map<String, Float> weights = new HashMap<>();
+        List<String> nameTerms = tokenize(name);
+        List<String> descriptionTerms = tokenize(description);
+        nameTerms.forEach(term -> weights.merge(term, NAME_WEIGHT, Float::sum));
+        descriptionTerms.forEach(term -> weights.merge(term, 1f, Float::sum));
+
+        float norm = (float) Math.sqrt(Math.max(1, nameTerms.size() + descriptionTerms.size()));
+        weights.replaceAll((term, frequency) -> frequency / norm);
+        return weights;
+    }
+
+    private boolean sameTerms(Long id, IndexedProduct current, Map<String, Float> weights) {
+        if (current.terms.length != weights.size()) {
+            return false;
+        }
+        for (String term : current.terms) {
+            Map<Long, Float> termPostings = postings.get(term);
+            if (!weights.containsKey(term) || termPostings == null || !weights.get(term).equals(termPostings.get(id))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addLocked(Long id, String name, BigDecimal price, Long categoryId, Map<String, Float> weights) {
+        for (Map.Entry<String, Float> entry : weights.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>()).put(id, entry.getValue());
+        }
+        products.put(id, new IndexedProduct(name, price, categoryId, weights.keySet().toArray(new String[0])));
+    }
+
+    private void removeLocked(Long id) {
+        IndexedProduct removed = products.remove(id);
+        if (removed == null) {
+            return;
+        }
+        for (String term : removed.terms) {
+            Map<Long, Float> termPostings = postings.get(term);
+            if (termPostings != null) {
+                termPostings.remove(id);
+                if (termPostings.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    // Minúsculas, sin tildes y partido por cualquier carácter no alfanumérico
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> terms = new ArrayList<>();
+        for (String term : NON_WORD.split(normalized)) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Lo que el índice guarda de cada producto: sus términos (para poder retirarlo) y los campos de filtrado y orden.
+     * La descripción no se guarda: solo cuentan sus términos.
+     */
+    private static final class IndexedProduct {
+        private final String name;
+        private final BigDecimal price;
+        private final Long categoryId;
+        private final String[] terms;
+
+        private IndexedProduct(String name, BigDecimal price, Long categoryId, String[] terms) {
+            this.name = name;
+            this.price = price;
+            this.categoryId = categoryId;
+            this.terms = terms;
+        }
+
+        private boolean sameFields(String name, BigDecimal price, Long categoryId) {
+            return Objects.equals(this.name, name)
+                    && (this.price == null ? price == null : price != null && this.price.compareTo(price) == 0)
+                    && Objects.equals(this.categoryId, categoryId);
+        }
+
+        private boolean matches(BigDecimal minPrice, BigDecimal maxPrice, Long categoryId) {
+            if (minPrice != null && (price == null || price.compareTo(minPrice) < 0 || price.compareTo(maxPrice) > 0)) {
+                return false;
+            }
+            return categoryId == null || categoryId.equals(this.categoryId);
+        }
+    }
+}
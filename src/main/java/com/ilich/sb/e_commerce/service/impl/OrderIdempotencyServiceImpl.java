@@ -0,0 +1,284 @@
+package com.ilich.sb.e_commerce.service.impl;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ilich.sb.e_commerce.model.IdempotencyRecord;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.response.OrderResponse;
+import com.ilich.sb.e_commerce.repository.IIdempotencyRecordRepository;
+import com.ilich.sb.e_commerce.service.IOrderIdempotencyService;
+
+/**
+ * Idempotencia de POST /api/orders por (usuario, Idempotency-Key).
+ *
+ * - Las respuestas ya dadas se sirven desde una caché Caffeine con TTL; la tabla idempotency_keys es la copia
+ *   durable que se consulta tras un reinicio, un desalojo o cuando la primera petición llegó a otra instancia.
+ * - Antes de crear el pedido se inserta la fila sin respuesta: la restricción única reserva la clave también
+ *   entre instancias. Si la creación falla la fila se borra y la clave puede reintentarse.
+ * - El pedido y la respuesta se guardan en la misma transacción: si la instancia muere antes del commit no queda
+ *   pedido, y la reserva solo dura lease-seconds. Pasado ese tiempo sin respuesta, un reintento la retoma
+ *   en lugar de recibir 409 hasta que caduque la clave. Si la instancia original solo era lenta, su respuesta ya
+ *   no se guarda y su pedido se deshace: nunca se confirman dos pedidos con la misma clave.
+ * - Los duplicados concurrentes en esta instancia esperan al intento en curso en lugar de ejecutar otro;
+ *   en otra instancia reciben 409 hasta que la primera termine.
+ */
+@Service
+public class OrderIdempotencyServiceImpl implements IOrderIdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderIdempotencyServiceImpl.class);
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 100; // Longitud de la columna idempotency_key
+    private static final long WAIT_SECONDS = 30;
+    private static final String IN_PROGRESS = "A request with this Idempotency-Key is still in progress.";
+
+    private final IIdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final Duration lease;
+
+    private final Cache<String, StoredResponse> responses;
+    // Intentos en curso en esta instancia; los duplicados esperan su resultado
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public OrderIdempotencyServiceImpl(IIdempotencyRecordRepository idempotencyRecordRepository,
+                                       ObjectMapper objectMapper,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${ecommerce.app.orders.idempotency.ttl-hours:24}") long ttlHours,
+                                       @Value("${ecommerce.app.orders.idempotency.lease-seconds:60}") long leaseSeconds,
+                                       @Value("${ecommerce.app.orders.idempotency.maximum-size:100000}") long maximumSize) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = Duration.ofHours(ttlHours);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public ResponseEntity<OrderResponse> placeOnce(User user, String idempotencyKey,
+                                                   Supplier<ResponseEntity<OrderResponse>> placement) {
+        if (idempotencyKey == null || idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new RuntimeException("Invalid Idempotency-Key header: 1 to " + MAX_KEY_LENGTH + " characters.");
+        }
+        String cacheKey = user.getId() + ":" + idempotencyKey;
+        StoredResponse cached = responses.getIfPresent(cacheKey);
+        if (cached != null) {
+            return cached.toResponseEntity();
+        }
+
+        CompletableFuture<StoredResponse> attempt = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(cacheKey, attempt);
+        if (running != null) {
+            return await(running).toResponseEntity();
+        }
+        try {
+            // El intento anterior pudo terminar entre la consulta a la caché y el putIfAbsent
+            cached = responses.getIfPresent(cacheKey);
+            if (cached != null) {
+                attempt.complete(cached);
+                return cached.toResponseEntity();
+            }
+            Optional<IdempotencyRecord> existing = findExisting(user.getId(), idempotencyKey);
+            if (existing.isPresent() && existing.get().isCompleted()) {
+                StoredResponse stored = toStoredResponse(existing.get());
+                responses.put(cacheKey, stored);
+                attempt.complete(stored);
+                return stored.toResponseEntity();
+            }
+
+            Reservation reservation = existing.isPresent() ? takeOver(existing.get()) : reserve(user.getId(), idempotencyKey);
+            ResponseEntity<OrderResponse> response = execute(reservation, placement);
+            StoredResponse original = new StoredResponse(response.getStatusCode().value(),
+                    response.getHeaders().getLocation(), response.getBody());
+            responses.put(cacheKey, original);
+            attempt.complete(original);
+            return response;
+        } catch (RuntimeException e) {
+            attempt.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, attempt);
+        }
+    }
+
+    /**
+     * Borra de la BD las claves caducadas (la caché en memoria caduca sola).
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.app.orders.idempotency.cleanup-ms:3600000}")
+    @Transactional
+    public void cleanExpired() {
+        int deleted = idempotencyRecordRepository.deleteExpired(Instant.now());
+        if (deleted > 0) {
+            logger.debug("Eliminadas {} claves de idempotencia caducadas.", deleted);
+        }
+    }
+
+    // Fila de la clave en la BD, salvo que ya haya caducado
+    private Optional<IdempotencyRecord> findExisting(Long userId, String idempotencyKey) {
+        Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey);
+        if (existing.isPresent() && existing.get().getExpiresAt().isBefore(Instant.now())) {
+            idempotencyRecordRepository.delete(existing.get()); // Caducada y aún sin limpiar: la clave vuelve a estar libre
+            return Optional.empty();
+        }
+        return existing;
+    }
+
+    private Reservation reserve(Long userId, String idempotencyKey) {
+        Instant lockedUntil = newLease();
+        try {
+            IdempotencyRecord record = idempotencyRecordRepository.saveAndFlush(
+                    new IdempotencyRecord(userId, idempotencyKey, Instant.now().plus(ttl), lockedUntil));
+            return new Reservation(record.getId(), lockedUntil);
+        } catch (DataIntegrityViolationException e) {
+            // Otra instancia reservó la clave entre la consulta y el INSERT
+            throw new RuntimeException(IN_PROGRESS);
+        }
+    }
+
+    // Reserva sin respuesta: 409 mientras su lease siga vigente; después, la retoma la primera petición que llegue
+    private Reservation takeOver(IdempotencyRecord record) {
+        Instant now = Instant.now();
+        if (record.getLockedUntil() != null && !record.getLockedUntil().isBefore(now)) {
+            throw new RuntimeException(IN_PROGRESS);
+        }
+        Instant lockedUntil = newLease();
+        if (idempotencyRecordRepository.takeOver(record.getId(), lockedUntil, now) == 0) {
+            throw new RuntimeException(IN_PROGRESS);
+        }
+        logger.warn("Retomada la Idempotency-Key {} del usuario {}: la petición original no terminó.",
+                record.getIdempotencyKey(), record.getUserId());
+        return new Reservation(record.getId(), lockedUntil);
+    }
+
+    // Crea el pedido y guarda la respuesta en una sola transacción
+    private ResponseEntity<OrderResponse> execute(Reservation reservation, Supplier<ResponseEntity<OrderResponse>> placement) {
+        try {
+            return transactionTemplate.execute(status -> {
+                ResponseEntity<OrderResponse> response = placement.get();
+                URI location = response.getHeaders().getLocation();
+                int updated = idempotencyRecordRepository.complete(reservation.id, reservation.lockedUntil,
+                        response.getStatusCode().value(), location != null ? location.toString() : null,
+                        serialize(response.getBody()));
+                if (updated == 0) {
+                    // El lease venció y otra petición retomó la clave: este pedido se deshace
+                    throw new RuntimeException(IN_PROGRESS);
+                }
+                return response;
+            });
+        } catch (RuntimeException e) {
+            idempotencyRecordRepository.release(reservation.id, reservation.lockedUntil); // Sin pedido: la clave puede reintentarse
+            throw e;
+        }
+    }
+
+    // Misma precisión en Java y en la columna: complete y release comparan el lease por igualdad
+    private Instant newLease() {
+        return Instant.now().plus(lease).truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    private StoredResponse toStoredResponse(IdempotencyRecord record) {
+        return new StoredResponse(record.getHttpStatus(),
+                record.getLocation() != null ? URI.create(record.getLocation()) : null,
+                deserialize(record.getResponseBody()));
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> running) {
+        try {
+            return running.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // Mismo resultado que el intento original (p. ej. carrito vacío o sin stock)
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(IN_PROGRESS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException(IN_PROGRESS);
+        }
+    }
+
+    private String serialize(OrderResponse body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta del pedido.", e);
+        }
+    }
+
+    private OrderResponse deserialize(String body) {
+        try {
+            return objectMapper.readValue(body, OrderResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo leer la respuesta guardada del pedido.", e);
+        }
+    }
+
+    /**
+     * Clave reservada por esta petición: id de la fila y fin del lease con el que se reservó.
+     */
+    private static final class Reservation {
+        private final Long id;
+        private final Instant lockedUntil;
+
+        private Reservation(Long id, Instant lockedUntil) {
+            this.id = id;
+            this.lockedUntil = lockedUntil;
+        }
+    }
+
+    /**
+     * Respuesta original de un POST /api/orders: estado, Location y cuerpo.
+     */
+    private static final class StoredResponse {
+        private final int status;
+        private final URI location;
+        private final OrderResponse body;
+
+        private StoredResponse(int status, URI location, OrderResponse body) {
+            this.status = status;
+            this.location = location;
+            this.body = body;
+        }
+
+        private ResponseEntity<OrderResponse> toResponseEntity() {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(status).header(REPLAYED_HEADER, "true");
+            if (location != null) {
+                builder.location(location);
+            }
+            return builder.body(body);
+        }
+    }
+}
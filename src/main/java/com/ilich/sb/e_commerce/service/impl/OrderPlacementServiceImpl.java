@@ -0,0 +1,222 @@
+package com.ilich.sb.e_commerce.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.ilich.sb.e_commerce.model.Order;
+import com.ilich.sb.e_commerce.model.OrderStatus;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.repository.IOrderRepository;
+import com.ilich.sb.e_commerce.service.ICartService;
+import com.ilich.sb.e_commerce.service.IOrderPlacementService;
+import com.ilich.sb.e_commerce.service.IOrderService;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pedidos asíncronos (ecommerce.app.orders.async=true): POST /api/orders solo valida el carrito, inserta el
+ * pedido en PENDING y lo encola; un pool fijo de workers hace el checkout fuera de los hilos de Tomcat.
+ *
+ * - La cola está acotada: si está llena la petición se rechaza al momento (503) en lugar de acumular hilos
+ *   esperando bloqueos de fila.
+ * - Cada worker saca de una vez hasta batch-size pedidos y los procesa seguidos, cada uno en su propia
+ *   transacción: un pedido sin stock se rechaza sin deshacer los demás.
+ * - Solo se rechaza por fallos de negocio (sin stock, carrito vacío). Los fallos transitorios de la BD (bloqueo no
+ *   obtenido, víctima de deadlock, timeout, conexión caída) se reintentan con espera exponencial; si se agotan los
+ *   intentos el pedido sigue en PENDING y se vuelve a encolar en el próximo arranque.
+ * - Al arrancar se vuelven a encolar los pedidos PENDING sin ítems que quedaron sin procesar. Con varias réplicas
+ *   todas los encolan, pero confirmPendingOrder reclama cada pedido con un UPDATE condicional: solo una lo procesa.
+ * - El pedido no guarda una copia del carrito: el worker toma el contenido que tenga el carrito al procesarlo.
+ *   Lo que el usuario añada o quite entre el envío y el proceso entra en el pedido; si lo vacía, el pedido se rechaza.
+ */
+@Service
+@ConditionalOnProperty(name = "ecommerce.app.orders.async", havingValue = "true")
+public class OrderPlacementServiceImpl implements IOrderPlacementService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderPlacementServiceImpl.class);
+
+    private static final long POLL_MS = 500;
+
+    private final IOrderService orderService;
+    private final ICartService cartService;
+    private final IOrderRepository orderRepository;
+    private final int workers;
+    private final int batchSize;
+    private final int retryAttempts;
+    private final long retryBackoffMs;
+
+    private final BlockingQueue<Long> queue; // Ids de pedidos PENDING
+    // Huecos libres en la cola: se reservan antes de insertar el pedido, así el add a la cola nunca falla
+    private final Semaphore slots;
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    @Autowired
+    public OrderPlacementServiceImpl(IOrderService orderService,
+                                     ICartService cartService,
+                                     IOrderRepository orderRepository,
+                                     @Value("${ecommerce.app.orders.queue-capacity:1000}") int capacity,
+                                     @Value("${ecommerce.app.orders.workers:4}") int workers,
+                                     @Value("${ecommerce.app.orders.batch-size:20}") int batchSize,
+                                     @Value("${ecommerce.app.orders.retry-attempts:3}") int retryAttempts,
+                                     @Value("${ecommerce.app.orders.retry-backoff-ms:100}") long retryBackoffMs) {
+        this.orderService = orderService;
+        this.cartService = cartService;
+        this.orderRepository = orderRepository;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.retryAttempts = retryAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.slots = new Semaphore(capacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("order-worker-"));
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::drain);
+        }
+        // Si hay más pendientes que capacidad, el arranque espera a que los workers hagan sitio
+        List<Long> pending = orderRepository.findIdsByStatusWithoutItems(OrderStatus.PENDING);
+        for (Long orderId : pending) {
+            slots.acquireUninterruptibly();
+            queue.add(orderId);
+        }
+        if (!pending.isEmpty()) {
+            logger.info("Reencolados {} pedidos pendientes.", pending.size());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Los workers terminan el lote en curso; lo que quede en la cola se reencola en el próximo arranque
+        running = false;
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            logger.warn("Los workers de pedidos no terminaron a tiempo.");
+        }
+    }
+
+    @Override
+    public Order submit(User user) {
+        if (cartService.getCartView(user).getItems().isEmpty()) {
+            throw new RuntimeException("Cannot create an order from an empty cart.");
+        }
+        if (!slots.tryAcquire()) {
+            throw new RuntimeException("Order queue is full. Try again later.");
+        }
+        Order order;
+        try {
+            order = orderService.createPendingOrder(user);
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Dentro de una transacción ajena (p. ej. la de Idempotency-Key): el worker no vería el pedido antes del commit
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        queue.add(order.getId());
+                    } else {
+                        slots.release();
+                    }
+                }
+            });
+        } else {
+            queue.add(order.getId());
+        }
+        return order;
+    }
+
+    private void drain() {
+        List<Long> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Long first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                slots.release(batch.size());
+                for (Long orderId : batch) {
+                    process(orderId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(Long orderId) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                orderService.confirmPendingOrder(orderId);
+                return;
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    reject(orderId, e);
+                    return;
+                }
+                if (attempt >= retryAttempts || !running) {
+                    // Sigue en PENDING: se reintenta en el próximo arranque
+                    logger.warn("Pedido {} sin procesar tras {} intentos: {}", orderId, attempt, e.getMessage());
+                    return;
+                }
+                logger.info("Fallo transitorio en el pedido {} (intento {}): {}", orderId, attempt, e.getMessage());
+                Thread.sleep(retryBackoffMs << (attempt - 1));
+            }
+        }
+    }
+
+    // Fallos de la BD que no dicen nada del pedido: reintentar puede funcionar
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof PessimisticLockingFailureException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void reject(Long orderId, RuntimeException e) {
+        logger.info("Pedido {} rechazado: {}", orderId, e.getMessage());
+        try {
+            orderService.rejectPendingOrder(orderId);
+        } catch (RuntimeException rejectFailure) {
+            // Sigue en PENDING: se reintenta en el próximo arranque
+            logger.error("No se pudo rechazar el pedido {}: {}", orderId, rejectFailure.getMessage());
+        }
+    }
+}
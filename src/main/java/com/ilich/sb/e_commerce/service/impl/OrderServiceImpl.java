@@ -1,46 +1,118 @@
 package com.ilich.sb.e_commerce.service.impl;
 
+import com.ilich.sb.e_commerce.cache.CatalogResponseCache;
+import com.ilich.sb.e_commerce.cache.IInvalidationBus;
+import com.ilich.sb.e_commerce.cache.InvalidationEvent;
+import com.ilich.sb.e_commerce.cache.ProductCatalogCache;
+import com.ilich.sb.e_commerce.mapper.OrderMapper;
 import com.ilich.sb.e_commerce.model.*; // Importa todas las entidades necesarias
+import com.ilich.sb.e_commerce.payload.response.OrderItemResponse;
+import com.ilich.sb.e_commerce.payload.response.OrderResponse;
 import com.ilich.sb.e_commerce.repository.*; // Importa todos los repositorios
+import com.ilich.sb.e_commerce.repository.IOrderRepository.OrderHistoryView;
+import com.ilich.sb.e_commerce.service.ICartService;
 import com.ilich.sb.e_commerce.service.IOrderService;
+import com.ilich.sb.e_commerce.service.IStockReservationService;
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional; // Importa desde Jakarta
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class OrderServiceImpl implements IOrderService {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
     private final IOrderRepository orderRepository;
     private final IOrderItemRepository orderItemRepository;
     private final ICartRepository cartRepository;
     private final ICartItemRepository cartItemRepository;
     private final IProductRepository productRepository; // Necesario para actualizar stock
+    private final ProductCatalogCache productCatalogCache; // El stock forma parte de los ProductDTO cacheados
+    private final CatalogResponseCache catalogResponseCache;
+    private final IInvalidationBus invalidationBus; // Las cachés del catálogo de las demás réplicas
+    private final EntityManager entityManager;
+    private final IStockReservationService stockReservationService;
+    private final ICartService cartService; // Con el carrito en memoria, hay que volcarlo antes de leerlo de la BD
 
     @Autowired
     public OrderServiceImpl(IOrderRepository orderRepository,
                         IOrderItemRepository orderItemRepository,
                         ICartRepository cartRepository,
                         ICartItemRepository cartItemRepository,
-                        IProductRepository productRepository) {
+                        IProductRepository productRepository,
+                        ProductCatalogCache productCatalogCache,
+                        CatalogResponseCache catalogResponseCache,
+                        IInvalidationBus invalidationBus,
+                        EntityManager entityManager,
+                        IStockReservationService stockReservationService,
+                        ICartService cartService) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
         this.cartRepository = cartRepository;
         this.cartItemRepository = cartItemRepository;
         this.productRepository = productRepository;
+        this.productCatalogCache = productCatalogCache;
+        this.catalogResponseCache = catalogResponseCache;
+        this.invalidationBus = invalidationBus;
+        this.entityManager = entityManager;
+        this.stockReservationService = stockReservationService;
+        this.cartService = cartService;
     }
 
     @Override
     @Transactional // Asegura que toda la operación (crear pedido, actualizar stock, limpiar carrito) sea atómica
     public Order createOrderFromCart(User user) {
-        // 1. Obtener el carrito del usuario
+        Order newOrder = new Order();
+        newOrder.setUser(user);
+        newOrder.setOrderDate(LocalDateTime.now()); // Confirmar fecha de orden
+        newOrder.setStatus(OrderStatus.PENDING); // Estado inicial
+        return fillFromCart(newOrder, user);
+    }
+
+    @Override
+    @Transactional
+    public Order createPendingOrder(User user) {
+        return orderRepository.save(new Order(user, BigDecimal.ZERO, OrderStatus.PENDING));
+    }
+
+    @Override
+    @Transactional
+    public Order confirmPendingOrder(Long orderId) {
+        // Se reclama antes de leerlo: otro nodo que procese el mismo pedido se queda en 0 filas
+        boolean claimed = orderRepository.claimPendingOrder(orderId, OrderStatus.CONFIRMED) == 1;
+        Order order = orderRepository.findById(orderId)
+                .orElseThrow(() -> new RuntimeException("Order not found with id: " + orderId));
+        if (!claimed) {
+            return order; // Ya procesado (p. ej. reencolado tras un reinicio o en otro nodo)
+        }
+        order.setStatus(OrderStatus.CONFIRMED);
+        return fillFromCart(order, order.getUser());
+    }
+
+    @Override
+    @Transactional
+    public void rejectPendingOrder(Long orderId) {
+        orderRepository.claimPendingOrder(orderId, OrderStatus.REJECTED);
+    }
+
+    // Convierte el carrito del usuario en los ítems del pedido, descuenta el stock y vacía el carrito
+    private Order fillFromCart(Order newOrder, User user) {
+        // 1. Obtener el carrito del usuario (guardando antes los cambios que aún estén solo en memoria)
+        cartService.syncToDatabase(user);
         Cart userCart = cartRepository.findByUser(user)
                 .orElseThrow(() -> new RuntimeException("Cart not found for user: " + user.getUsername()));
 
@@ -50,28 +122,28 @@ public class OrderServiceImpl implements IOrderService {
             throw new RuntimeException("Cannot create an order from an empty cart.");
         }
 
-        // 2. Crear una nueva instancia de Order
-        Order newOrder = new Order();
-        newOrder.setUser(user);
-        newOrder.setOrderDate(LocalDateTime.now()); // Confirmar fecha de orden
-        newOrder.setStatus(OrderStatus.PENDING); // Estado inicial
-
+        // 2. Calcular los ítems del pedido
         BigDecimal totalOrderAmount = BigDecimal.ZERO;
         Set<OrderItem> orderItems = new HashSet<>();
+        Map<Long, Integer> quantities = new HashMap<>();
+        Map<Long, Product> products = new HashMap<>();
 
         // 3. Convertir CartItems a OrderItems y actualizar el stock de productos
         for (CartItem cartItem : cartItems) {
             Product product = cartItem.getProduct();
             Integer requestedQuantity = cartItem.getQuantity();
 
-            // Verificar stock disponible
+            // Comprobación rápida con el stock leído; la definitiva la hace el UPDATE condicional
             if (product.getStockQuantity() < requestedQuantity) {
                 throw new RuntimeException("Not enough stock for product: " + product.getName() + ". Available: " + product.getStockQuantity() + ", Requested: " + requestedQuantity);
             }
 
+            // Renueva la reserva del carrito: falla si su reserva caducó y otros carritos tienen el stock reservado
+            stockReservationService.hold(userCart.getId(), product, requestedQuantity);
+
             // Crear OrderItem
             OrderItem orderItem = new OrderItem(
-                    newOrder, // Asignar el Order recién creado
+                    newOrder, // Asignar el Order que se está creando
                     product,
                     requestedQuantity,
                     product.getPrice() // Capturar el precio actual del producto en el momento de la compra
@@ -79,22 +151,42 @@ public class OrderServiceImpl implements IOrderService {
             orderItems.add(orderItem);
             totalOrderAmount = totalOrderAmount.add(orderItem.getSubtotal());
 
-            // Actualizar stock del producto
-            product.setStockQuantity(product.getStockQuantity() - requestedQuantity);
-            productRepository.save(product); // Guardar el producto con el stock actualizado
+            quantities.merge(product.getId(), requestedQuantity, Integer::sum);
+            products.put(product.getId(), product);
         }
 
-        newOrder.setOrderItems(orderItems); // Establecer los ítems en el pedido
+        // Descuento atómico del stock de todos los ítems en un único batch. Si otro pedido se llevó
+        // el stock entre la lectura y este punto, la excepción deshace también los demás descuentos.
+        List<Long> rejected = productRepository.decrementStock(quantities);
+        if (!rejected.isEmpty()) {
+            Product product = products.get(rejected.get(0));
+            throw new RuntimeException("Not enough stock for product: " + product.getName() + ". Requested: " + quantities.get(product.getId()));
+        }
+        // El UPDATE no pasa por Hibernate: se sustituyen las entidades obsoletas del contexto de persistencia
+        // por otras recargadas en una sola consulta (refresh haría un SELECT por producto)
+        products.values().forEach(entityManager::detach);
+        products.keySet().forEach(catalogResponseCache::invalidateProduct);
+        // Tras el commit, las reservas del carrito pasan a ser descuentos del stock en memoria
+        Map<Long, Integer> stockAfter = new HashMap<>();
+        productRepository.findAllById(products.keySet())
+                .forEach(product -> stockAfter.put(product.getId(), product.getStockQuantity()));
+        stockReservationService.confirm(userCart.getId(), stockAfter);
+
+        newOrder.getOrderItems().addAll(orderItems); // Sin reemplazar la colección: el pedido PENDING ya puede estar gestionado
         newOrder.setTotalAmount(totalOrderAmount); // Establecer el total calculado
 
+        productCatalogCache.invalidateProducts(products.keySet()); // El stock de estos productos ha cambiado
+        invalidationBus.publishAfterCommit(products.keySet().stream().map(InvalidationEvent::productChanged).toList());
+
         // 4. Guardar el nuevo pedido y sus ítems
         Order savedOrder = orderRepository.save(newOrder);
         // orderItemRepository.saveAll(orderItems); // No es necesario si CascadeType.ALL está en Order
 
         // 5. Limpiar el carrito del usuario
-        cartItemRepository.deleteAll(cartItems); // Eliminar todos los ítems del carrito
+        // Un único DELETE por cart_id sea cual sea el tamaño del carrito. Vuelca antes el pedido y limpia
+        // el contexto de persistencia: savedOrder queda desasociado pero ya tiene todo lo que necesita el mapper.
+        cartItemRepository.deleteAllByCartId(userCart.getId());
         userCart.getCartItems().clear(); // Limpiar la colección en memoria
-        cartRepository.save(userCart); // Guardar el carrito vacío (o se manejará por cascade si está configurado)
 
         return savedOrder;
     }
@@ -104,6 +196,23 @@ public class OrderServiceImpl implements IOrderService {
         return orderRepository.findByUser(user);
     }
 
+    @Override
+    public Page<OrderResponse> getOrderHistory(User user, int page, int size) {
+        // El orden (orderDate desc, id desc) va fijo en la consulta
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_HISTORY_PAGE_SIZE));
+        Page<OrderHistoryView> orders = orderRepository.findHistoryByUser(user, pageRequest);
+        if (orders.isEmpty()) {
+            return orders.map(order -> OrderMapper.toOrderResponse(order, Set.of()));
+        }
+
+        // Todos los ítems de la página en una consulta, agrupados por pedido
+        List<Long> orderIds = orders.getContent().stream().map(OrderHistoryView::getOrderId).toList();
+        Map<Long, Set<OrderItemResponse>> itemsByOrder = orderItemRepository.findHistoryItemsByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(IOrderItemRepository.OrderItemHistoryView::getOrderId,
+                        Collectors.mapping(OrderMapper::toOrderItemResponse, Collectors.toSet())));
+        return orders.map(order -> OrderMapper.toOrderResponse(order, itemsByOrder.getOrDefault(order.getOrderId(), Set.of())));
+    }
+
     @Override
     public Optional<Order> getOrderByIdAndUser(Long orderId, User user) {
         return orderRepository.findByIdAndUser(orderId, user);
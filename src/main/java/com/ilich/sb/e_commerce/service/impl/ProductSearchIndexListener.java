@@ -0,0 +1,52 @@
+package com.ilich.sb.e_commerce.service.impl;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.service.IProductSearchEngine;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Listener JPA de Product: mantiene al día el motor de búsqueda cuando un producto se crea, se modifica
+ * o se elimina (desde ProductServiceImpl o desde cualquier otro punto).
+ * Dentro de una transacción el índice se actualiza tras el commit, para no indexar cambios que se revierten.
+ */
+public class ProductSearchIndexListener {
+
+    // Se resuelve de forma diferida: el listener se crea junto con el EntityManagerFactory
+    private final ObjectProvider<IProductSearchEngine> searchEngine;
+
+    public ProductSearchIndexListener(ObjectProvider<IProductSearchEngine> searchEngine) {
+        this.searchEngine = searchEngine;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void index(Product product) {
+        afterCommit(() -> searchEngine.ifAvailable(engine -> engine.index(product)));
+    }
+
+    @PostRemove
+    public void remove(Product product) {
+        Long id = product.getId();
+        afterCommit(() -> searchEngine.ifAvailable(engine -> engine.remove(id)));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,32 +1,73 @@
 package com.ilich.sb.e_commerce.service.impl;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.ilich.sb.e_commerce.cache.ProductCatalogCache;
+import com.ilich.sb.e_commerce.mapper.IProductMapper;
 import com.ilich.sb.e_commerce.model.Category;
+import com.ilich.sb.e_commerce.payload.ProductDTO;
+import com.ilich.sb.e_commerce.payload.response.CursorPageDTO;
+import com.ilich.sb.e_commerce.util.KeysetCursor;
 import com.ilich.sb.e_commerce.repository.ICategoryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.ilich.sb.e_commerce.model.Product;
 import com.ilich.sb.e_commerce.repository.IProductRepository;
+import com.ilich.sb.e_commerce.service.IProductSearchEngine;
+import com.ilich.sb.e_commerce.service.IProductSearchEngine.SearchHit;
 import com.ilich.sb.e_commerce.service.IProductService;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
 import static com.ilich.sb.e_commerce.model.specification.ProductSpecification.*;
 
 @Service
 public class ProductServiceImpl implements IProductService {
 
+    private static final int MAX_KEYSET_PAGE_SIZE = 100;
+
     @Autowired
     private IProductRepository iProductRepository;
 
     @Autowired
     private ICategoryRepository iCategoryRepository;
 
+    @Autowired
+    private IProductMapper productMapper;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    // Opcional: sin motor (ecommerce.app.product-search.engine=database) la búsqueda de texto usa LIKE
+    @Autowired(required = false)
+    private IProductSearchEngine productSearchEngine;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Cada cuántas filas se vacía el contexto de persistencia durante la exportación
+    @Value("${ecommerce.app.product-export.clear-every:500}")
+    private int exportClearEvery;
+
     @Override
     public List<Product> getAll() {
         return iProductRepository.findAll();
@@ -37,6 +78,33 @@ public class ProductServiceImpl implements IProductService {
         return iProductRepository.findById(id);
     }
 
+    @Override
+    public List<ProductDTO> getAllDtos() {
+        return productCatalogCache.getAll(() -> productMapper.toDtoList(iProductRepository.findAll()));
+    }
+
+    @Override
+    public Optional<ProductDTO> getDtoById(long id) {
+        return productCatalogCache.getById(id, () -> iProductRepository.findById(id).map(productMapper::toDto));
+    }
+
+    @Override
+    @Transactional(readOnly = true) // El Stream necesita la conexión abierta mientras se recorre
+    public long streamAllDtos(Consumer<ProductDTO> consumer) {
+        long count = 0;
+        try (Stream<Product> products = iProductRepository.streamAllWithCategory()) {
+            for (Product product : (Iterable<Product>) products::iterator) {
+                consumer.accept(productMapper.toDto(product));
+                count++;
+                // Vaciar el contexto de persistencia cada N filas mantiene el heap plano (0 lo desactiva)
+                if (exportClearEvery > 0 && count % exportClearEvery == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        return count;
+    }
+
     @Override
     public Product save(Product product) {
         // Lógica de negocio: asegura que la categoría existe si se proporciona
@@ -62,7 +130,9 @@ public class ProductServiceImpl implements IProductService {
             throw new IllegalArgumentException("Product stock cannot be negative.");
         }
 
-        return iProductRepository.save(product);
+        Product saved = iProductRepository.save(product);
+        productCatalogCache.invalidate();
+        return saved;
     }
 
     @Override
@@ -93,7 +163,9 @@ public class ProductServiceImpl implements IProductService {
             throw new IllegalArgumentException("Product stock cannot be negative.");
         }
 
-        return iProductRepository.save(product);
+        Product saved = iProductRepository.save(product);
+        productCatalogCache.invalidate();
+        return saved;
     }
 
     @Override
@@ -105,14 +177,132 @@ public class ProductServiceImpl implements IProductService {
         // Si el producto existe, entonces podrías hacer un findById para obtenerlo
         // o simplemente llamar a deleteById si tu repositorio lo soporta
         iProductRepository.deleteById(id); // O productRepository.delete(productRepository.findById(id).get());
+        productCatalogCache.invalidate();
         return true;
     }
 
     @Override
     public Page<Product> getAllProductsWithFilterPageable(String search, Double minPrice, Double maxPrice, Long categoryId, Pageable pageable) {
 
+        // Sin orden explícito se devuelve por relevancia; los órdenes que el índice no conoce siguen yendo a la BD
+        if (useSearchEngine(search) && pageable.getSort().stream().allMatch(order -> KeysetCursor.isSupportedSortField(order.getProperty()))) {
+            List<SearchHit> hits = new ArrayList<>(productSearchEngine.search(search, minPrice, maxPrice, categoryId));
+            if (pageable.getSort().isSorted()) {
+                hits.sort(hitComparator(pageable.getSort()));
+            }
+            List<SearchHit> pageHits = hits;
+            if (pageable.isPaged()) {
+                int from = (int) Math.min(pageable.getOffset(), hits.size());
+                pageHits = hits.subList(from, Math.min(from + pageable.getPageSize(), hits.size()));
+            }
+            return new PageImpl<>(findAllInOrder(pageHits), pageable, hits.size());
+        }
+
+        Specification<Product> spec = buildFilterSpecification(search, minPrice, maxPrice, categoryId);
+
+        return iProductRepository.findAll(spec, pageable);
+
+    }
+
+    @Override
+    public CursorPageDTO<Product> getProductsWithFilterKeyset(String search, Double minPrice, Double maxPrice, Long categoryId,
+                                                              String sortField, boolean ascending, String cursor, int size) {
+        if (!KeysetCursor.isSupportedSortField(sortField)) {
+            throw new IllegalArgumentException(KeysetCursor.INVALID_CURSOR_MESSAGE + " Unsupported sort field: " + sortField);
+        }
+        int pageSize = Math.min(Math.max(size, 1), MAX_KEYSET_PAGE_SIZE);
+
+        if (useSearchEngine(search)) {
+            return searchKeyset(search, minPrice, maxPrice, categoryId, sortField, ascending, cursor, pageSize);
+        }
+
+        Specification<Product> spec = buildFilterSpecification(search, minPrice, maxPrice, categoryId);
+        if (cursor != null && !cursor.isBlank()) {
+            KeysetCursor after = KeysetCursor.decode(cursor, sortField);
+            spec = spec.and(seekAfter(sortField, after.getLastValue(), after.getLastId(), ascending));
+        }
+
+        // Orden total (campo, id) para que el cursor sea estable; se pide una fila extra para saber si hay más
+        Sort.Direction direction = ascending ? Sort.Direction.ASC : Sort.Direction.DESC;
+        Sort sort = "id".equals(sortField)
+                ? Sort.by(direction, "id")
+                : Sort.by(direction, sortField).and(Sort.by(direction, "id"));
+        List<Product> rows = iProductRepository.findBy(spec, query -> query.sortBy(sort).limit(pageSize + 1).all());
+
+        boolean hasNext = rows.size() > pageSize;
+        List<Product> content = hasNext ? rows.subList(0, pageSize) : rows;
+        String nextCursor = hasNext ? KeysetCursor.after(content.get(content.size() - 1), sortField).encode() : null;
+        return new CursorPageDTO<>(content, nextCursor, pageSize);
+    }
+
+    // Keyset sobre las coincidencias del índice: el orden y el "seek" se aplican en memoria
+    private CursorPageDTO<Product> searchKeyset(String search, Double minPrice, Double maxPrice, Long categoryId,
+                                                String sortField, boolean ascending, String cursor, int pageSize) {
+        Comparator<SearchHit> order = hitComparator(Sort.by(ascending ? Sort.Direction.ASC : Sort.Direction.DESC, sortField));
+        Stream<SearchHit> hits = productSearchEngine.search(search, minPrice, maxPrice, categoryId).stream();
+        if (cursor != null && !cursor.isBlank()) {
+            KeysetCursor after = KeysetCursor.decode(cursor, sortField);
+            SearchHit last = new SearchHit(after.getLastId(), 0,
+                    "name".equals(sortField) ? (String) after.getLastValue() : null,
+                    "price".equals(sortField) ? (BigDecimal) after.getLastValue() : null);
+            hits = hits.filter(hit -> order.compare(hit, last) > 0);
+        }
+        List<SearchHit> rows = hits.sorted(order).limit(pageSize + 1L).collect(Collectors.toList());
+
+        boolean hasNext = rows.size() > pageSize;
+        List<SearchHit> pageHits = hasNext ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasNext) {
+            SearchHit lastHit = pageHits.get(pageHits.size() - 1);
+            Comparable<?> lastValue = "name".equals(sortField) ? lastHit.getName()
+                    : "price".equals(sortField) ? lastHit.getPrice() : lastHit.getId();
+            nextCursor = new KeysetCursor(sortField, lastHit.getId(), lastValue).encode();
+        }
+        return new CursorPageDTO<>(findAllInOrder(pageHits), nextCursor, pageSize);
+    }
+
+    private boolean useSearchEngine(String search) {
+        return search != null && !search.trim().isEmpty() && productSearchEngine != null && productSearchEngine.isReady();
+    }
+
+    // Orden de las coincidencias por id, name o price, con el id como desempate
+    private static Comparator<SearchHit> hitComparator(Sort sort) {
+        Comparator<SearchHit> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<SearchHit> byProperty;
+            switch (order.getProperty()) {
+                case "name":
+                    byProperty = Comparator.comparing(SearchHit::getName);
+                    break;
+                case "price":
+                    byProperty = Comparator.comparing(SearchHit::getPrice);
+                    break;
+                default:
+                    byProperty = Comparator.comparing(SearchHit::getId);
+            }
+            byProperty = order.isAscending() ? byProperty : byProperty.reversed();
+            comparator = comparator == null ? byProperty : comparator.thenComparing(byProperty);
+        }
+        Comparator<SearchHit> byId = Comparator.comparing(SearchHit::getId);
+        if (sort.getOrderFor("id") == null && sort.iterator().hasNext() && !sort.iterator().next().isAscending()) {
+            byId = byId.reversed(); // Mismo sentido que el orden principal, como en la keyset por BD
+        }
+        return comparator == null ? byId : comparator.thenComparing(byId);
+    }
+
+    // Carga los productos de una página manteniendo el orden de las coincidencias (se omiten los ya eliminados)
+    private List<Product> findAllInOrder(List<SearchHit> hits) {
+        List<Long> ids = hits.stream().map(SearchHit::getId).collect(Collectors.toList());
+        Map<Long, Product> byId = iProductRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    // Filtros comunes a la búsqueda paginada por OFFSET y a la keyset
+    private Specification<Product> buildFilterSpecification(String search, Double minPrice, Double maxPrice, Long categoryId) {
         Specification<Product> spec = Specification.where(null); // Empieza con una especificación nula
 
+        // Solo sin motor de búsqueda: LIKE '%x%' no puede usar índices y recorre la tabla entera
         if (search != null && !search.trim().isEmpty()) {
             spec = spec.and(hasNameLike(search).or(hasDescriptionLike(search)));
         }
@@ -122,9 +312,7 @@ public class ProductServiceImpl implements IProductService {
         if (categoryId != null) {
             spec = spec.and(hasCategoryId(categoryId));
         }
-
-        return iProductRepository.findAll(spec, pageable);
-
+        return spec;
     }
 
 }
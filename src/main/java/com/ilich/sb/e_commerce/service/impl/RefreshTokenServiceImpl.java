@@ -1,42 +1,60 @@
 package com.ilich.sb.e_commerce.service.impl;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.ilich.sb.e_commerce.exception.TokenRefreshException;
 import com.ilich.sb.e_commerce.model.RefreshToken;
 import com.ilich.sb.e_commerce.model.User;
 import com.ilich.sb.e_commerce.repository.IRefreshTokenRepository;
-import com.ilich.sb.e_commerce.repository.IUserRepository;
 import com.ilich.sb.e_commerce.service.IRefreshTokenService;
+import com.ilich.sb.e_commerce.util.SecureTokens;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional; // Para operaciones transaccionales
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
-import java.util.UUID; // Para generar el token aleatorio
 
 @Service
 public class RefreshTokenServiceImpl implements IRefreshTokenService {
 
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenServiceImpl.class);
+
     @Value("${ecommerce.app.jwt.refresh.expiration.ms}") // Duración del Refresh Token
     private Long refreshTokenDurationMs;
 
     @Autowired
     private IRefreshTokenRepository refreshTokenRepository;
 
-    @Autowired
-    private IUserRepository userRepository;
+    /**
+     * Migra los tokens guardados en claro por versiones anteriores a la columna token_hash,
+     * antes de que la aplicación acepte peticiones y después periódicamente: durante un despliegue
+     * gradual las instancias con la versión anterior siguen creando tokens sin hash.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${ecommerce.app.token-cleanup.interval-ms:60000}")
+    public void migrateLegacyTokens() {
+        int migrated = refreshTokenRepository.migrateLegacyTokens();
+        if (migrated > 0) {
+            logger.info("Migrados {} Refresh Tokens a la columna token_hash.", migrated);
+        }
+    }
 
     /**
-     * Busca un RefreshToken por su valor.
+     * Busca un RefreshToken por su valor (a través de su hash).
      * @param token El valor del Refresh Token.
      * @return Un Optional que contiene el RefreshToken si se encuentra.
      */
     @Override
     public Optional<RefreshToken> findByToken(String token) {
-        return refreshTokenRepository.findByToken(token);
+        return refreshTokenRepository.findByTokenHash(SecureTokens.hash(token));
     }
 
     /**
@@ -50,52 +68,64 @@ public class RefreshTokenServiceImpl implements IRefreshTokenService {
     @Override
     public RefreshToken createRefreshToken(User user) {
         // Opcional: Si quieres que un usuario solo tenga un RefreshToken activo a la vez:
-        // refreshTokenRepository.deleteByUser(user); // Revoca el anterior si existe
+        // refreshTokenRepository.deleteByUserId(user.getId()); // Revoca el anterior si existe
 
         RefreshToken refreshToken = new RefreshToken();
         refreshToken.setUser(user);
         refreshToken.setExpiryDate(Instant.now().plusMillis(refreshTokenDurationMs));
-        refreshToken.setToken(UUID.randomUUID().toString()); // Genera una cadena aleatoria y única
+        refreshToken.setToken(SecureTokens.newToken()); // Cadena aleatoria y única; en la BD solo se guarda su hash
 
         refreshToken = refreshTokenRepository.save(refreshToken);
         return refreshToken;
     }
 
     /**
-     * Verifica si un RefreshToken ha expirado.
-     * @param token El RefreshToken a verificar.
-     * @return El RefreshToken si no ha expirado.
-     * @throws TokenRefreshException Si el token ha expirado.
+     * Rota un RefreshToken en el sitio: un UPDATE condicional que comprueba existencia y expiración
+     * y reemplaza el hash, y una lectura del token rotado con su usuario y roles.
+     * Los tokens expirados no se borran aquí: los elimina TokenCleanupScheduler.
+     * @param token El valor del Refresh Token presentado por el cliente.
+     * @return El RefreshToken con el nuevo valor en claro.
+     * @throws TokenRefreshException Si el token no existe, ya se rotó o ha expirado.
      */
     @Override
-    public RefreshToken verifyExpiration(RefreshToken token) {
-        if (token.getExpiryDate().compareTo(Instant.now()) < 0) {
-            refreshTokenRepository.delete(token); // Elimina el token expirado de la BD
-            throw new TokenRefreshException(token.getToken(),
-                "Refresh token ha expirado. Por favor, inicia sesión de nuevo.");
+    @Transactional
+    public RefreshToken rotate(String token) {
+        String newToken = SecureTokens.newToken();
+        byte[] newHash = SecureTokens.hash(newToken);
+        Instant now = Instant.now();
+        if (refreshTokenRepository.rotate(SecureTokens.hash(token), newHash, now.plusMillis(refreshTokenDurationMs), now) == 0) {
+            throw new TokenRefreshException(token,
+                "Refresh token no encontrado o expirado. Por favor, inicia sesión de nuevo.");
         }
-        return token;
+        RefreshToken rotated = refreshTokenRepository.findByTokenHash(newHash)
+                .orElseThrow(() -> new IllegalStateException("Refresh token rotado no encontrado."));
+        rotated.setToken(newToken);
+        return rotated;
     }
 
     /**
-     * Elimina un RefreshToken de la base de datos por su usuario.
+     * Elimina los RefreshTokens de un usuario con un único DELETE.
      * Usado en el logout para revocar todos los refresh tokens de un usuario.
-     * @param user El usuario cuyos tokens se eliminarán.
+     * @param userId El id del usuario cuyos tokens se eliminarán.
      * @return Número de tokens eliminados.
      */
     @Override
     @Transactional // Asegura que la operación de eliminación se complete correctamente
     public int deleteByUserId(Long userId) {
-        return refreshTokenRepository.deleteByUser(userRepository.findById(userId).get());
+        return refreshTokenRepository.deleteByUserId(userId);
     }
 
     /**
-     * Elimina todos los RefreshTokens expirados de la base de datos.
-     * Debería ser llamado por un trabajo programado (scheduler).
+     * Elimina un tramo de RefreshTokens expirados de la base de datos: un SELECT de ids por el índice
+     * de expiry_date y un DELETE por id. Lo llama TokenCleanupScheduler hasta vaciar los expirados.
      */
     @Transactional
     @Override
-    public void cleanExpiredRefreshTokens() {
-        refreshTokenRepository.deleteByExpiryDateBefore(Instant.now());
+    public int cleanExpiredRefreshTokens(Instant now, int limit) {
+        List<Long> ids = refreshTokenRepository.findExpiredIds(now, Limit.of(limit));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return refreshTokenRepository.deleteByIdIn(ids);
     }
 }
\ No newline at end of file
@@ -0,0 +1,422 @@
+package com.ilich.sb.e_commerce.service.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.model.StockReservation;
+import com.ilich.sb.e_commerce.payload.response.StockAvailabilityDTO;
+import com.ilich.sb.e_commerce.repository.IProductRepository;
+import com.ilich.sb.e_commerce.repository.IStockReservationRepository;
+import com.ilich.sb.e_commerce.service.IStockReservationService;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Reservas de stock en memoria, agrupadas por producto y protegidas con locks por franjas (striping):
+ * dos carritos solo compiten si sus productos caen en la misma franja, y nunca se bloquea la fila product.
+ *
+ * Cada producto guarda un stock en memoria (se carga una vez desde el producto o la BD) y sus reservas por carrito.
+ * Las reservas modificadas se marcan como pendientes y StockReservationScheduler las persiste en batch;
+ * si la aplicación se cae se pierden como mucho las del último intervalo, y caducan igualmente.
+ * Las reservas son por instancia: con varias réplicas cada una solo conoce las suyas.
+ */
+@Service
+public class StockReservationServiceImpl implements IStockReservationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservationServiceImpl.class);
+
+    private static final int STRIPES = 64; // Potencia de 2
+    private static final int UNKNOWN_STOCK = -1;
+    private static final String DELETE_SQL = "DELETE FROM stock_reservation WHERE cart_id = ? AND product_id = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO stock_reservation (cart_id, product_id, quantity, expires_at) VALUES (?, ?, ?, ?)";
+
+    private final IProductRepository productRepository;
+    private final IStockReservationRepository reservationRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final long ttlMillis;
+
+    private final Object[] stripes = new Object[STRIPES];
+    // Solo se modifica bajo el lock de la franja del producto
+    private final Map<Long, ProductHolds> holdsByProduct = new ConcurrentHashMap<>();
+    // Reservas modificadas pendientes de persistir
+    private final Set<HoldKey> dirty = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public StockReservationServiceImpl(IProductRepository productRepository,
+                                       IStockReservationRepository reservationRepository,
+                                       JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${ecommerce.app.stock-reservation.ttl-seconds:900}") long ttlSeconds) {
+        this(productRepository, reservationRepository, jdbcTemplate, transactionManager, ttlSeconds, Clock.systemUTC());
+    }
+
+    public StockReservationServiceImpl(IProductRepository productRepository,
+                                       IStockReservationRepository reservationRepository,
+                                       JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       long ttlSeconds,
+                                       Clock clock) {
+        this.productRepository = productRepository;
+        this.reservationRepository = reservationRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+        this.ttlMillis = ttlSeconds * 1000;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Recupera las reservas vigentes que se persistieron antes del último reinicio.
+     */
+    @PostConstruct
+    public void loadFromDatabase() {
+        List<StockReservation> active = reservationRepository.findByExpiresAtAfter(clock.instant());
+        for (StockReservation reservation : active) {
+            synchronized (stripe(reservation.getProductId())) {
+                holdsByProduct.computeIfAbsent(reservation.getProductId(), id -> new ProductHolds())
+                        .put(reservation.getCartId(), reservation.getQuantity(), reservation.getExpiresAt().toEpochMilli());
+            }
+        }
+        logger.info("Cargadas {} reservas de stock vigentes.", active.size());
+    }
+
+    @Override
+    public void hold(Long cartId, Product product, int quantity) {
+        if (quantity <= 0) {
+            release(cartId, product.getId());
+            return;
+        }
+        Long productId = product.getId();
+        long now = clock.millis();
+        int previousQuantity;
+        long previousExpiry;
+        synchronized (stripe(productId)) {
+            ProductHolds holds = holdsByProduct.computeIfAbsent(productId, id -> new ProductHolds());
+            if (holds.stock == UNKNOWN_STOCK) {
+                holds.stock = product.getStockQuantity();
+            }
+            purgeExpired(productId, holds, now);
+            Hold current = holds.byCart.get(cartId);
+            previousQuantity = current != null ? current.quantity : 0;
+            previousExpiry = current != null ? current.expiresAt : 0;
+
+            int available = holds.stock - holds.reserved + previousQuantity; // Su propia reserva sigue contando para él
+            if (quantity > available) {
+                throw new RuntimeException("Not enough stock for product: " + product.getName() + ". Available: " + Math.max(0, available) + ", Requested: " + quantity);
+            }
+            holds.put(cartId, quantity, now + ttlMillis);
+        }
+        dirty.add(new HoldKey(cartId, productId));
+        onRollback(() -> restore(cartId, productId, previousQuantity, previousExpiry));
+    }
+
+    @Override
+    public void release(Long cartId, Long productId) {
+        int previousQuantity;
+        long previousExpiry;
+        synchronized (stripe(productId)) {
+            ProductHolds holds = holdsByProduct.get(productId);
+            Hold removed = holds != null ? holds.remove(cartId) : null;
+            if (removed == null) {
+                return;
+            }
+            previousQuantity = removed.quantity;
+            previousExpiry = removed.expiresAt;
+        }
+        dirty.add(new HoldKey(cartId, productId));
+        onRollback(() -> restore(cartId, productId, previousQuantity, previousExpiry));
+    }
+
+    @Override
+    public void confirm(Long cartId, Map<Long, Integer> stockAfter) {
+        Runnable confirmation = () -> stockAfter.forEach((productId, stock) -> {
+            synchronized (stripe(productId)) {
+                ProductHolds holds = holdsByProduct.computeIfAbsent(productId, id -> new ProductHolds());
+                holds.remove(cartId);
+                // Los commits concurrentes pueden llegar desordenados: el stock solo baja por esta vía
+                holds.stock = holds.stock == UNKNOWN_STOCK ? stock : Math.min(holds.stock, stock);
+            }
+            dirty.add(new HoldKey(cartId, productId));
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            afterCommit(confirmation);
+        } else {
+            confirmation.run();
+        }
+    }
+
+    @Override
+    public StockAvailabilityDTO getAvailability(Long productId) {
+        long now = clock.millis();
+        synchronized (stripe(productId)) {
+            ProductHolds holds = holdsByProduct.get(productId);
+            if (holds != null && holds.stock != UNKNOWN_STOCK) {
+                purgeExpired(productId, holds, now);
+                return new StockAvailabilityDTO(productId, holds.stock, holds.reserved);
+            }
+        }
+        // Primera consulta de este producto: se lee su stock una única vez
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
+        synchronized (stripe(productId)) {
+            ProductHolds holds = holdsByProduct.computeIfAbsent(productId, id -> new ProductHolds());
+            if (holds.stock == UNKNOWN_STOCK) {
+                holds.stock = product.getStockQuantity();
+            }
+            purgeExpired(productId, holds, now);
+            return new StockAvailabilityDTO(productId, holds.stock, holds.reserved);
+        }
+    }
+
+    @Override
+    public void evictStock(Long productId) {
+        Runnable eviction = () -> {
+            synchronized (stripe(productId)) {
+                ProductHolds holds = holdsByProduct.get(productId);
+                if (holds == null) {
+                    return;
+                }
+                holds.stock = UNKNOWN_STOCK;
+                if (holds.byCart.isEmpty()) {
+                    holdsByProduct.remove(productId);
+                }
+            }
+        };
+        // Dentro de una transacción se repite tras el commit, para descartar el stock leído antes de confirmar
+        eviction.run();
+        afterCommit(eviction);
+    }
+
+    @Override
+    public int releaseExpired() {
+        long now = clock.millis();
+        int released = 0;
+        for (Long productId : holdsByProduct.keySet()) {
+            synchronized (stripe(productId)) {
+                ProductHolds holds = holdsByProduct.get(productId);
+                if (holds != null) {
+                    released += purgeExpired(productId, holds, now);
+                }
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public void flush() {
+        List<HoldKey> keys = new ArrayList<>();
+        for (Iterator<HoldKey> it = dirty.iterator(); it.hasNext(); ) {
+            keys.add(it.next());
+            it.remove();
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        // Estado actual de cada reserva pendiente (null si ya no existe)
+        List<HoldKey> present = new ArrayList<>();
+        Map<HoldKey, Hold> snapshot = new HashMap<>();
+        for (HoldKey key : keys) {
+            synchronized (stripe(key.productId)) {
+                ProductHolds holds = holdsByProduct.get(key.productId);
+                Hold hold = holds != null ? holds.byCart.get(key.cartId) : null;
+                if (hold != null) {
+                    present.add(key);
+                    snapshot.put(key, new Hold(hold.quantity, hold.expiresAt));
+                }
+            }
+        }
+        try {
+            // Dos sentencias en batch en una sola transacción: borrar todas las pendientes y reinsertar las vigentes
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(DELETE_SQL, new KeyBatchSetter(keys) {
+                    @Override
+                    void setValues(PreparedStatement ps, HoldKey key) throws SQLException {
+                        ps.setLong(1, key.cartId);
+                        ps.setLong(2, key.productId);
+                    }
+                });
+                if (!present.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_SQL, new KeyBatchSetter(present) {
+                        @Override
+                        void setValues(PreparedStatement ps, HoldKey key) throws SQLException {
+                            Hold hold = snapshot.get(key);
+                            ps.setLong(1, key.cartId);
+                            ps.setLong(2, key.productId);
+                            ps.setInt(3, hold.quantity);
+                            ps.setTimestamp(4, Timestamp.from(Instant.ofEpochMilli(hold.expiresAt)));
+                        }
+                    });
+                }
+            });
+        } catch (RuntimeException e) {
+            dirty.addAll(keys); // Se reintentan en el siguiente flush
+            logger.error("No se pudieron persistir {} reservas de stock: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    // Vuelve a dejar la reserva como estaba antes de una operación revertida (sin validar stock)
+    private void restore(Long cartId, Long productId, int quantity, long expiresAt) {
+        synchronized (stripe(productId)) {
+            ProductHolds holds = holdsByProduct.computeIfAbsent(productId, id -> new ProductHolds());
+            if (quantity > 0) {
+                holds.put(cartId, quantity, expiresAt);
+            } else {
+                holds.remove(cartId);
+            }
+        }
+        dirty.add(new HoldKey(cartId, productId));
+    }
+
+    // Debe llamarse con el lock de la franja del producto
+    private int purgeExpired(Long productId, ProductHolds holds, long now) {
+        int released = 0;
+        for (Iterator<Map.Entry<Long, Hold>> it = holds.byCart.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Hold> entry = it.next();
+            if (entry.getValue().expiresAt <= now) {
+                holds.reserved -= entry.getValue().quantity;
+                it.remove();
+                dirty.add(new HoldKey(entry.getKey(), productId));
+                released++;
+            }
+        }
+        return released;
+    }
+
+    private Object stripe(Long productId) {
+        return stripes[Long.hashCode(productId) & (STRIPES - 1)];
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static void onRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stock en memoria y reservas de un producto. Se accede siempre con el lock de su franja.
+     */
+    private static final class ProductHolds {
+        private int stock = UNKNOWN_STOCK;
+        private int reserved;
+        private final Map<Long, Hold> byCart = new HashMap<>();
+
+        private void put(Long cartId, int quantity, long expiresAt) {
+            Hold previous = byCart.put(cartId, new Hold(quantity, expiresAt));
+            reserved += quantity - (previous != null ? previous.quantity : 0);
+        }
+
+        private Hold remove(Long cartId) {
+            Hold removed = byCart.remove(cartId);
+            if (removed != null) {
+                reserved -= removed.quantity;
+            }
+            return removed;
+        }
+    }
+
+    private static final class Hold {
+        private final int quantity;
+        private final long expiresAt; // epoch ms
+
+        private Hold(int quantity, long expiresAt) {
+            this.quantity = quantity;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class HoldKey {
+        private final Long cartId;
+        private final Long productId;
+
+        private HoldKey(Long cartId, Long productId) {
+            this.cartId = cartId;
+            this.productId = productId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HoldKey)) {
+                return false;
+            }
+            HoldKey other = (HoldKey) o;
+            return cartId.equals(other.cartId) && productId.equals(other.productId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(cartId, productId);
+        }
+    }
+
+    private abstract static class KeyBatchSetter implements BatchPreparedStatementSetter {
+        private final List<HoldKey> keys;
+
+        private KeyBatchSetter(List<HoldKey> keys) {
+            this.keys = keys;
+        }
+
+        abstract void setValues(PreparedStatement ps, HoldKey key) throws SQLException;
+
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+            setValues(ps, keys.get(i));
+        }
+
+        @Override
+        public int getBatchSize() {
+            return keys.size();
+        }
+    }
+}
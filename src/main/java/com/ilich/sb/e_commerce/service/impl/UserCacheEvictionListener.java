@@ -0,0 +1,42 @@
+package com.ilich.sb.e_commerce.service.impl;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.ilich.sb.e_commerce.cache.IInvalidationBus;
+import com.ilich.sb.e_commerce.cache.InvalidationEvent;
+import com.ilich.sb.e_commerce.model.User;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Listener JPA de la entidad User: invalida la caché de UserDetailsServiceImpl cada vez que
+ * un usuario se crea, se modifica o se elimina, sin importar desde dónde se haga,
+ * y lo difunde al resto de réplicas por IInvalidationBus.
+ * Un cambio solo en la colección roles no dispara @PostUpdate (solo se escribe user_roles): quien modifique
+ * los roles de un usuario existente debe llamar a UserDetailsServiceImpl.evictUser.
+ * Hibernate lo instancia a través del contenedor de beans de Spring.
+ */
+public class UserCacheEvictionListener {
+
+    // Se resuelve de forma diferida: el listener se crea junto con el EntityManagerFactory
+    private final ObjectProvider<UserDetailsServiceImpl> userDetailsService;
+    private final ObjectProvider<IInvalidationBus> invalidationBus;
+
+    public UserCacheEvictionListener(ObjectProvider<UserDetailsServiceImpl> userDetailsService,
+                                     ObjectProvider<IInvalidationBus> invalidationBus) {
+        this.userDetailsService = userDetailsService;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void evict(User user) {
+        userDetailsService.ifAvailable(service -> service.evictUser(user.getUsername()));
+        if (user.getUsername() != null) {
+            invalidationBus.ifAvailable(bus -> bus.publish(InvalidationEvent.userEvicted(user.getUsername())));
+        }
+    }
+}
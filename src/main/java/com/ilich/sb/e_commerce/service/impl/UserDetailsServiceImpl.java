@@ -1,20 +1,42 @@
 package com.ilich.sb.e_commerce.service.impl;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.ilich.sb.e_commerce.model.User;
 import com.ilich.sb.e_commerce.repository.IUserRepository;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.Collection;
+
 @Service // Marca como un servicio de Spring
 public class UserDetailsServiceImpl implements UserDetailsService {
 
     private final IUserRepository userRepository;
 
-    public UserDetailsServiceImpl(IUserRepository userRepository) {
+    // Caché acotada por tamaño y TTL de los UserDetails, indexada por username.
+    // Evita releer 'users' y 'user_roles' cuando los mismos usuarios se autentican repetidamente.
+    private final Cache<String, UserDetailsImpl> userCache;
+
+    public UserDetailsServiceImpl(IUserRepository userRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${ecommerce.app.user-cache.maximum-size:10000}") long maximumSize,
+                                  @Value("${ecommerce.app.user-cache.ttl-seconds:300}") long ttlSeconds) {
         this.userRepository = userRepository;
+        this.userCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats() // Aciertos, fallos y desalojos expuestos vía Micrometer
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, userCache, "users");
     }
 
     /**
@@ -27,15 +49,46 @@ public class UserDetailsServiceImpl implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        // Carga atómica por clave: un evictUser durante la carga espera a que termine y la descarta,
+        // en lugar de que un get-then-put vuelva a guardar después los datos antiguos
+        return userCache.get(username, this::loadFromDatabase);
+    }
+
+    private UserDetailsImpl loadFromDatabase(String username) {
         // 1. Intentamos buscar el usuario en la base de datos usando nuestro UserRepository.
         // Usamos Optional para manejar el caso de que el usuario no sea encontrado de forma segura.
+        // Los usuarios inexistentes no se cachean: la excepción sale de la carga sin guardar nada.
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado con username: " + username));
 
-        // 2. Si el usuario es encontrado, lo devolvemos.
-        // Como nuestra entidad 'User' implementa 'UserDetails', podemos devolverla directamente.
+        // 2. Si el usuario es encontrado, construimos sus UserDetails, que la caché guarda.
         // Spring Security usará los métodos getUsername(), getPassword() y getAuthorities()
-        // de tu entidad User para realizar la autenticación y autorización.
+        // para realizar la autenticación y autorización.
         return UserDetailsImpl.build(user);
     }
-}
\ No newline at end of file
+
+    /**
+     * Invalida la entrada de un usuario. Debe llamarse explícitamente cuando cambian sus roles:
+     * UserCacheEvictionListener solo se dispara al escribir la fila de users, no la tabla user_roles.
+     * @param username El nombre de usuario a invalidar.
+     */
+    public void evictUser(String username) {
+        if (username != null) {
+            userCache.invalidate(username);
+        }
+    }
+
+    /**
+     * Invalida de una vez varias entradas (lote de invalidaciones recibidas de otros nodos).
+     */
+    public void evictUsers(Collection<String> usernames) {
+        userCache.invalidateAll(usernames);
+    }
+
+    /**
+     * Invalida toda la caché (ej. tras cambios masivos de roles).
+     */
+    public void evictAll() {
+        userCache.invalidateAll();
+    }
+}
@@ -16,17 +16,17 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import com.ilich.sb.e_commerce.exception.TokenRefreshException;
+import com.ilich.sb.e_commerce.cache.IInvalidationBus;
+import com.ilich.sb.e_commerce.cache.InvalidationEvent;
 import com.ilich.sb.e_commerce.model.RefreshToken;
-import com.ilich.sb.e_commerce.model.RevokedToken;
 import com.ilich.sb.e_commerce.model.Role;
 import com.ilich.sb.e_commerce.model.User;
 import com.ilich.sb.e_commerce.payload.response.JwtResponseDTO;
-import com.ilich.sb.e_commerce.repository.IRevokedTokenRepository;
 import com.ilich.sb.e_commerce.repository.IRoleRepository;
 import com.ilich.sb.e_commerce.repository.IUserRepository;
 import com.ilich.sb.e_commerce.security.jwt.AuthTokenFilter;
 import com.ilich.sb.e_commerce.security.jwt.JwtUtils;
+import com.ilich.sb.e_commerce.security.jwt.RevokedTokenCache;
 import com.ilich.sb.e_commerce.service.IRefreshTokenService;
 import com.ilich.sb.e_commerce.service.IUserService;
 
@@ -41,26 +41,32 @@ public class UserServiceImpl implements IUserService {
     private final AuthenticationManager authenticationManager;
     private final IUserRepository userRepository;
     private final IRoleRepository roleRepository;
-    private final IRevokedTokenRepository revokedTokenRepository;
     private final PasswordEncoder encoder;
     private final JwtUtils jwtUtils;
+    private final RevokedTokenCache revokedTokenCache;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final IInvalidationBus invalidationBus;
 
     public UserServiceImpl(
             AuthenticationManager authenticationManager,
             IUserRepository userRepository,
             IRoleRepository roleRepository,
-            IRevokedTokenRepository revokedTokenRepository,
             IRefreshTokenService refreshTokenService,
             PasswordEncoder encoder,
-            JwtUtils jwtUtils
+            JwtUtils jwtUtils,
+            RevokedTokenCache revokedTokenCache,
+            UserDetailsServiceImpl userDetailsService,
+            IInvalidationBus invalidationBus
         ) {
         this.authenticationManager = authenticationManager;
         this.roleRepository = roleRepository;
         this.userRepository = userRepository;
         this.refreshTokenService = refreshTokenService;
-        this.revokedTokenRepository = revokedTokenRepository;
         this.encoder = encoder;
         this.jwtUtils = jwtUtils;
+        this.revokedTokenCache = revokedTokenCache;
+        this.userDetailsService = userDetailsService;
+        this.invalidationBus = invalidationBus;
     }
 
     @Override
@@ -79,6 +85,8 @@ public class UserServiceImpl implements IUserService {
         roles.add(userRole.get());
         user.setRoles(roles);
         userRepository.save(user);
+        // Descarta cualquier entrada previa de este username en la caché de UserDetails
+        userDetailsService.evictUser(user.getUsername());
         return "Usuario registrado exitosamente!";
     }
 
@@ -118,9 +126,13 @@ public class UserServiceImpl implements IUserService {
             try {
                 // 2. Obtener la fecha de expiración del token
                 Date expiryDate = jwtUtils.getExpirationDateFromJwtToken(jwt);
-                // 3. Crear una entrada en la tabla de tokens revocados
-                RevokedToken revokedToken = new RevokedToken(jwt, expiryDate);
-                revokedTokenRepository.save(revokedToken);
+                String jti = jwtUtils.getJtiFromJwtToken(jwt);
+                // 3. Registrar la revocación en el bucket de su expiración (tabla + caché en memoria que consulta
+                // el filtro), por la clave de 16 bytes del JTI; los tokens sin JTI, por la del token completo
+                String tokenId = jti != null ? jti : jwt;
+                revokedTokenCache.revoke(tokenId, expiryDate);
+                // 4. Difundir la revocación al resto de réplicas, que la aplican en su caché en memoria
+                invalidationBus.publish(InvalidationEvent.tokenRevoked(tokenId, expiryDate));
                 logger.info("Access Token revocado exitosamente: {}", jwt.substring(0, Math.min(jwt.length(), 50)) + "...");
             } catch (Exception e) {
                 logger.warn("No se pudo revocar el Access Token (ya expirado o inválido): {}", e.getMessage());
@@ -138,7 +150,7 @@ public class UserServiceImpl implements IUserService {
              logger.warn("No se encontró Refresh Token en la solicitud de logout.");
         }
 
-        // 4. Limpiar el contexto de seguridad actual (opcional pero buena práctica)
+        // 5. Limpiar el contexto de seguridad actual (opcional pero buena práctica)
         SecurityContextHolder.clearContext();
 
         return "¡Logout exitoso! Tu token ha sido invalidado.";
@@ -146,27 +158,24 @@ public class UserServiceImpl implements IUserService {
 
     @Override
     public JwtResponseDTO refreshToken(String requestRefreshToken) {
-        return refreshTokenService.findByToken(requestRefreshToken)
-                .map(refreshTokenService::verifyExpiration) // Verifica si ha expirado
-                .map(RefreshToken::getUser) // Obtiene el usuario asociado
-                .map(user -> {
-                    // Genera un nuevo Access Token
-                    String newAccessToken = jwtUtils.generateTokenFromUsername(user.getUsername());
-                    refreshTokenService.deleteByUserId(user.getId()); // Elimina el viejo (o solo el que se usó)
-
-                    // Opcional: Generar un nuevo Refresh Token y revocar el anterior
-                    // Esto implementa rotación de refresh tokens.
-                    RefreshToken newRefreshToken = refreshTokenService.createRefreshToken(user);
-
-                    return new JwtResponseDTO (
-                        newAccessToken,
-                        newRefreshToken.getToken(),
-                        0L,
-                        "",
-                        null);
-                })
-                .orElseThrow(() -> new TokenRefreshException(requestRefreshToken,
-                        "Refresh token no encontrado en la base de datos!"));
+        // Rotación del Refresh Token en el sitio: un UPDATE condicional por su hash (lanza TokenRefreshException
+        // si no existe, ya se rotó o ha expirado) y una lectura del token rotado con su usuario y roles.
+        // Las demás sesiones del usuario conservan sus Refresh Tokens.
+        RefreshToken rotated = refreshTokenService.rotate(requestRefreshToken);
+        User user = rotated.getUser();
+
+        // Genera un nuevo Access Token
+        List<String> roles = user.getRoles().stream()
+                .map(Role::getName)
+                .collect(Collectors.toList());
+        String newAccessToken = jwtUtils.generateTokenFromUsername(user.getUsername(), user.getId(), roles);
+
+        return new JwtResponseDTO (
+            newAccessToken,
+            rotated.getToken(),
+            0L,
+            "",
+            null);
     }
 
     // Método auxiliar para obtener el Refresh Token de las cookies
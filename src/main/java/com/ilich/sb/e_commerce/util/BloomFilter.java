@@ -0,0 +1,113 @@
+package com.ilich.sb.e_commerce.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro Bloom concurrente y de tamaño fijo.
+ * Responde "definitivamente no está" o "quizás está" con una tasa de falsos positivos acotada.
+ * Los bits se guardan en un AtomicLongArray, por lo que put() y mightContain() son seguros entre hilos
+ * sin necesidad de bloqueos.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashFunctions;
+
+    /**
+     * @param expectedInsertions Número de elementos esperados.
+     * @param fpp Tasa de falsos positivos deseada (ej. 0.01 = 1%).
+     */
+    public BloomFilter(int expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive.");
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be between 0 and 1.");
+        }
+        // Fórmulas estándar: m = -n ln(p) / (ln 2)^2 ; k = m/n ln 2
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.numBits = (long) words * 64;
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(String key) {
+        long[] h = hash(key);
+        put(h[0], h[1]);
+    }
+
+    public boolean mightContain(String key) {
+        long[] h = hash(key);
+        return mightContain(h[0], h[1]);
+    }
+
+    // Doble hashing (Kirsch-Mitzenmacher): g_i(x) = h1 + i*h2
+    public void put(long h1, long h2) {
+        long combined = h1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            setBit(Math.floorMod(combined, numBits));
+            combined += h2;
+        }
+    }
+
+    public boolean mightContain(long h1, long h2) {
+        long combined = h1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            if (!getBit(Math.floorMod(combined, numBits))) {
+                return false;
+            }
+            combined += h2;
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return numBits;
+    }
+
+    public int hashFunctions() {
+        return numHashFunctions;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = bits.get(word);
+            if ((current & mask) != 0) {
+                return; // Ya estaba encendido
+            }
+        } while (!bits.compareAndSet(word, current, current | mask));
+    }
+
+    private boolean getBit(long index) {
+        return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+    }
+
+    // Dos hashes de 64 bits independientes sobre los bytes UTF-8 de la clave (FNV-1a + mezcla final de MurmurHash3)
+    private static long[] hash(String key) {
+        byte[] data = key.getBytes(StandardCharsets.UTF_8);
+        long h1 = 0xcbf29ce484222325L;
+        long h2 = 0x84222325cbf29ce4L;
+        for (byte b : data) {
+            h1 ^= b;
+            h1 *= 0x100000001b3L;
+            h2 += b;
+            h2 *= 0xc6a4a7935bd1e995L;
+        }
+        return new long[] { fmix64(h1), fmix64(h2) | 1L };
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
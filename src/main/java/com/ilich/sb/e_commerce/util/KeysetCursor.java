@@ -0,0 +1,99 @@
+package com.ilich.sb.e_commerce.util;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.ilich.sb.e_commerce.model.Product;
+
+/**
+ * Cursor opaco para la paginación keyset de productos: guarda el campo de orden,
+ * el valor de ese campo y el id de la última fila devuelta.
+ * Se serializa como "campo|id|valor" en Base64 URL-safe, de modo que el cliente no dependa de su formato.
+ */
+public class KeysetCursor {
+
+    public static final String INVALID_CURSOR_MESSAGE = "Invalid cursor.";
+
+    private final String sortField;
+    private final Long lastId;
+    private final Comparable<?> lastValue;
+
+    public KeysetCursor(String sortField, Long lastId, Comparable<?> lastValue) {
+        this.sortField = sortField;
+        this.lastId = lastId;
+        this.lastValue = lastValue;
+    }
+
+    /**
+     * Construye el cursor que apunta justo después del producto dado.
+     */
+    public static KeysetCursor after(Product product, String sortField) {
+        return new KeysetCursor(sortField, product.getId(), sortValue(product, sortField));
+    }
+
+    /**
+     * Campos por los que se puede ordenar en modo keyset (todos NOT NULL, con id como desempate).
+     */
+    public static boolean isSupportedSortField(String sortField) {
+        return "id".equals(sortField) || "name".equals(sortField) || "price".equals(sortField);
+    }
+
+    public String encode() {
+        String raw = sortField + "|" + lastId + "|" + lastValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException Si el cursor está mal formado o no corresponde al campo de orden pedido.
+     */
+    public static KeysetCursor decode(String cursor, String expectedSortField) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3); // El valor (ej. un nombre) puede contener '|'
+            if (parts.length != 3 || !parts[0].equals(expectedSortField)) {
+                throw new IllegalArgumentException(INVALID_CURSOR_MESSAGE);
+            }
+            Long lastId = Long.valueOf(parts[1]);
+            return new KeysetCursor(parts[0], lastId, parseValue(parts[0], parts[2]));
+        } catch (IllegalArgumentException e) { // Incluye Base64 y NumberFormatException
+            throw new IllegalArgumentException(INVALID_CURSOR_MESSAGE, e);
+        }
+    }
+
+    private static Comparable<?> sortValue(Product product, String sortField) {
+        switch (sortField) {
+            case "name":
+                return product.getName();
+            case "price":
+                return product.getPrice();
+            default:
+                return product.getId();
+        }
+    }
+
+    private static Comparable<?> parseValue(String sortField, String value) {
+        switch (sortField) {
+            case "name":
+                return value;
+            case "price":
+                return new BigDecimal(value);
+            case "id":
+                return Long.valueOf(value);
+            default:
+                throw new IllegalArgumentException(INVALID_CURSOR_MESSAGE);
+        }
+    }
+
+    public String getSortField() {
+        return sortField;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    public Comparable<?> getLastValue() {
+        return lastValue;
+    }
+}
@@ -0,0 +1,79 @@
+package com.ilich.sb.e_commerce.util;
+
+/**
+ * Conjunto de claves de 128 bits (pares de long) con direccionamiento abierto y sondeo lineal.
+ * Guarda las claves en dos long[] en lugar de un objeto por elemento (16 bytes por clave más el hueco libre).
+ *
+ * Pensado para claves ya uniformes (p. ej. RevocationKey): la posición sale directamente de los bits bajos.
+ * Los métodos son synchronized: RevokedTokenCache solo lo consulta tras un positivo del filtro Bloom.
+ */
+public class LongPairSet {
+
+    private static final int MIN_CAPACITY = 16; // Potencia de 2
+
+    private long[] highs;
+    private long[] lows;
+    private boolean[] used;
+    private int size;
+
+    public LongPairSet() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @return true si la clave no estaba ya en el conjunto.
+     */
+    public synchronized boolean add(long high, long low) {
+        int slot = find(high, low);
+        if (used[slot]) {
+            return false;
+        }
+        used[slot] = true;
+        highs[slot] = high;
+        lows[slot] = low;
+        size++;
+        if (size * 2 > used.length) { // Factor de carga máximo 0,5
+            rehash(used.length * 2);
+        }
+        return true;
+    }
+
+    public synchronized boolean contains(long high, long low) {
+        return used[find(high, low)];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Posición de la clave, o del primer hueco libre donde iría
+    private int find(long high, long low) {
+        int mask = used.length - 1;
+        int slot = (int) (low ^ (low >>> 32) ^ high) & mask;
+        while (used[slot] && (highs[slot] != high || lows[slot] != low)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = find(oldHighs[i], oldLows[i]);
+                used[slot] = true;
+                highs[slot] = oldHighs[i];
+                lows[slot] = oldLows[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        used = new boolean[capacity];
+    }
+}
@@ -0,0 +1,37 @@
+package com.ilich.sb.e_commerce.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Clave de revocación de tamaño fijo: los 16 primeros bytes del SHA-256 del claim "jti"
+ * (o del token completo, para los tokens antiguos sin jti).
+ * Ocupa 16 bytes en la BD (BINARY(16)) y dos long en memoria, en lugar del JWT completo.
+ */
+public final class RevocationKey {
+
+    public static final int BYTES = 16;
+
+    private RevocationKey() {
+    }
+
+    public static byte[] of(String id) {
+        try {
+            byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(id.getBytes(StandardCharsets.UTF_8));
+            return Arrays.copyOf(sha256, BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible.", e); // Obligatorio en toda JVM
+        }
+    }
+
+    public static long high(byte[] key) {
+        return ByteBuffer.wrap(key).getLong(0);
+    }
+
+    public static long low(byte[] key) {
+        return ByteBuffer.wrap(key).getLong(Long.BYTES);
+    }
+}
@@ -0,0 +1,54 @@
+package com.ilich.sb.e_commerce.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Tokens opacos aleatorios (Refresh Tokens) y su hash de ancho fijo para guardarlos en la BD.
+ *
+ * Cada hilo tiene su propio SecureRandom DRBG, sembrado una sola vez: a diferencia de UUID.randomUUID(),
+ * que comparte un único SecureRandom en toda la JVM, los hilos no compiten por el mismo bloqueo.
+ */
+public final class SecureTokens {
+
+    public static final int HASH_BYTES = 32; // SHA-256
+    private static final int TOKEN_BYTES = 32; // 256 bits aleatorios
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(() -> instance(() -> SecureRandom.getInstance("DRBG")));
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> instance(() -> MessageDigest.getInstance("SHA-256")));
+
+    private SecureTokens() {
+    }
+
+    /**
+     * @return 32 bytes aleatorios en Base64 URL-safe (43 caracteres).
+     */
+    public static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.get().nextBytes(bytes);
+        return ENCODER.encodeToString(bytes);
+    }
+
+    /**
+     * @return SHA-256 del token (HASH_BYTES bytes): lo que se guarda y se busca en la BD en lugar del token.
+     */
+    public static byte[] hash(String token) {
+        return SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private interface Factory<T> {
+        T create() throws NoSuchAlgorithmException;
+    }
+
+    private static <T> T instance(Factory<T> factory) {
+        try {
+            return factory.create();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Algoritmo no disponible.", e); // DRBG y SHA-256 son obligatorios en toda JVM
+        }
+    }
+}
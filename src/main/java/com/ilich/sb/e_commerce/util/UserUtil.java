@@ -17,7 +17,11 @@ public class UserUtil {
     public UserUtil(IUserRepository userRepository) {
         this.userRepository = userRepository;
     }
-    // Helper para obtener el usuario autenticado
+    /**
+     * Helper para obtener el usuario autenticado.
+     * Devuelve una referencia JPA por id (sin consulta): basta para asociarla a carritos y pedidos
+     * o filtrar por usuario. Sus atributos solo se cargan si se accede a ellos.
+     */
     public User getCurrentAuthenticatedUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         // Asegúrate de que el usuario esté autenticado y sea de tipo UserDetailsImpl
@@ -25,7 +29,6 @@ public class UserUtil {
             throw new RuntimeException("User not authenticated."); // Esto no debería ocurrir con @PreAuthorize
         }
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        return userRepository.findByUsername(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("Authenticated user not found in database."));
+        return userRepository.getReferenceById(userDetails.getId());
     }
 }
@@ -0,0 +1,109 @@
+package com.ilich.sb.e_commerce.benchmark;
+
+import com.ilich.sb.e_commerce.ECommerceApplication;
+import com.ilich.sb.e_commerce.model.Cart;
+import com.ilich.sb.e_commerce.model.Category;
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
+import com.ilich.sb.e_commerce.repository.ICartRepository;
+import com.ilich.sb.e_commerce.repository.ICategoryRepository;
+import com.ilich.sb.e_commerce.repository.IProductRepository;
+import com.ilich.sb.e_commerce.repository.IUserRepository;
+import com.ilich.sb.e_commerce.service.ICartService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operaciones de carrito concurrentes (8 hilos) sobre la aplicación completa con H2 en memoria (perfil test).
+ *
+ * - database: CartServiceImpl, que lee y escribe la BD en cada operación.
+ * - memory: InMemoryCartServiceImpl, con los carritos en memoria y guardado diferido en batch cada segundo.
+ *
+ * H2 en memoria es el caso más favorable para database (sin red ni disco): con MySQL la diferencia es mayor.
+ * Ejecutar el main() desde el IDE, o:
+ *   java -cp target/test-classes:target/classes:&lt;dependencias&gt; org.openjdk.jmh.Main CartStoreBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class CartStoreBenchmark {
+
+    private static final int USERS = 1000;
+    private static final int PRODUCTS = 50;
+
+    @Param({ "database", "memory" })
+    public String store;
+
+    private ConfigurableApplicationContext context;
+    private ICartService cartService;
+    private List<User> users;
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(ECommerceApplication.class)
+                .profiles("test")
+                // Como argumentos: las properties() del builder no pisan las de application.properties
+                .run("--ecommerce.app.cart.store=" + store,
+                        "--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        cartService = context.getBean(ICartService.class);
+
+        Category category = context.getBean(ICategoryRepository.class).save(new Category("Benchmark"));
+        List<Product> newProducts = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            // Stock de sobra: las reservas crecen con cada add durante toda la medición
+            newProducts.add(new Product("Product " + i, "Description " + i, new BigDecimal("10.00"), Integer.MAX_VALUE / 2, category));
+        }
+        products = context.getBean(IProductRepository.class).saveAll(newProducts);
+        List<User> newUsers = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            newUsers.add(new User("cartbench" + i, "password"));
+        }
+        users = context.getBean(IUserRepository.class).saveAll(newUsers);
+        // Carritos ya creados: se mide la operación habitual, no el alta del carrito
+        context.getBean(ICartRepository.class).saveAll(users.stream().map(Cart::new).toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long addToCart() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        User user = users.get(random.nextInt(USERS));
+        return cartService.addProductToCart(user, products.get(random.nextInt(PRODUCTS)).getId(), 1).getQuantity();
+    }
+
+    @Benchmark
+    public int viewCart() {
+        CartResponseDTO cart = cartService.getCartView(users.get(ThreadLocalRandom.current().nextInt(USERS)));
+        return cart.getItems().size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CartStoreBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
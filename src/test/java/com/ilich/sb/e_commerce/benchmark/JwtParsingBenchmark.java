@@ -0,0 +1,81 @@
+package com.ilich.sb.e_commerce.benchmark;
+
+import com.ilich.sb.e_commerce.repository.IRevokedTokenBucketRepository;
+import com.ilich.sb.e_commerce.repository.IRevokedTokenRepository;
+import com.ilich.sb.e_commerce.security.jwt.JwtUtils;
+import com.ilich.sb.e_commerce.security.jwt.RevokedTokenCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Coste por petición de la autenticación JWT en AuthTokenFilter.
+ *
+ * - legacyValidateThenGetUsername: lo que hacía el filtro antes (validateJwtToken + getUserNameFromJwtToken),
+ *   derivando la clave HMAC y verificando la firma en cada llamada.
+ * - parseOnce: parser construido al arrancar y una única verificación que devuelve los claims.
+ *
+ * Ejecutar el main() desde el IDE, o tras "mvn test-compile" con el classpath de test:
+ *   java -cp target/test-classes:target/classes:&lt;dependencias&gt; org.openjdk.jmh.Main JwtParsingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtParsingBenchmark {
+
+    private static final String SECRET =
+            "SuperSecretKeyQueDebeSerLargaYComplejaParaProduccion1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private JwtUtils jwtUtils;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        RevokedTokenCache revokedTokenCache = new RevokedTokenCache(
+                mock(IRevokedTokenBucketRepository.class), mock(IRevokedTokenRepository.class), new SimpleMeterRegistry(), 60000, 300000, 1000, 0.01, false);
+        jwtUtils = new JwtUtils(revokedTokenCache);
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 300000);
+        jwtUtils.init();
+        token = jwtUtils.generateTokenFromUsername("benchmark-user");
+    }
+
+    @Benchmark
+    public String legacyValidateThenGetUsername() {
+        // validateJwtToken(): clave derivada + verificación de firma
+        Key validationKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+        Jwts.parserBuilder().setSigningKey(validationKey).build().parseClaimsJws(token);
+        // getUserNameFromJwtToken(): otra derivación + otra verificación
+        Key usernameKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+        return Jwts.parserBuilder().setSigningKey(usernameKey).build().parseClaimsJws(token).getBody().getSubject();
+    }
+
+    @Benchmark
+    public String parseOnce() {
+        Claims claims = jwtUtils.parseValidatedClaims(token);
+        return claims.getSubject();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtParsingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,173 @@
+package com.ilich.sb.e_commerce.benchmark;
+
+import com.ilich.sb.e_commerce.model.Category;
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.repository.IProductRepository;
+import com.ilich.sb.e_commerce.service.IProductSearchEngine.SearchHit;
+import com.ilich.sb.e_commerce.service.impl.InMemoryProductSearchEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Búsqueda de texto de productos: primera página (20 productos) de una búsqueda filtrada por categoría.
+ *
+ * - specificationLike: las dos consultas que genera findAll(spec, pageable) con hasNameLike/hasDescriptionLike
+ *   (página con LIKE '%x%' + count), sobre una tabla product en H2 en memoria. Ningún índice B-tree sirve
+ *   para LIKE '%x%', así que las dos recorren la tabla entera. (description es VARCHAR y no TEXT, lo que
+ *   favorece a esta variante.)
+ * - invertedIndex: InMemoryProductSearchEngine + la carga por id de los 20 productos de la página.
+ *
+ * Con 1M de productos hace falta bastante heap (ver jvmArgsAppend). Ejecutar el main() desde el IDE, o:
+ *   java -cp target/test-classes:target/classes:&lt;dependencias&gt; org.openjdk.jmh.Main ProductSearchBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ProductSearchBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int CATEGORIES = 10;
+    private static final int VOCABULARY = 5000;
+    // Aparece en ~1% de los productos
+    private static final String QUERY = "portatil";
+
+    @Param({ "10000", "100000", "1000000" })
+    public int products;
+
+    private InMemoryProductSearchEngine engine;
+    private Connection connection;
+    private PreparedStatement likePage;
+    private PreparedStatement likeCount;
+    private long categoryId;
+
+    @Setup
+    public void setUp() throws SQLException {
+        engine = new InMemoryProductSearchEngine(mock(IProductRepository.class), mock(PlatformTransactionManager.class));
+        connection = DriverManager.getConnection("jdbc:h2:mem:product_search_" + products + ";DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table product (id bigint primary key, name varchar(255) not null, "
+                    + "description varchar(2000), price numeric(10,2) not null, stock_quantity int not null, category_id bigint not null)");
+            statement.execute("create index idx_product_category on product (category_id)");
+        }
+
+        Random random = new Random(42);
+        List<Category> categories = new ArrayList<>();
+        for (long i = 1; i <= CATEGORIES; i++) {
+            categories.add(new Category(i, "Category " + i));
+        }
+        try (PreparedStatement insert = connection.prepareStatement("insert into product values (?, ?, ?, ?, ?, ?)")) {
+            for (long id = 1; id <= products; id++) {
+                String name = words(random, 3);
+                String description = words(random, 12) + (random.nextInt(100) == 0 ? " " + QUERY : "");
+                BigDecimal price = BigDecimal.valueOf(random.nextInt(100000), 2);
+                Category category = categories.get(random.nextInt(CATEGORIES));
+                engine.index(new Product(id, name, description, price, 10, category));
+
+                insert.setLong(1, id);
+                insert.setString(2, name);
+                insert.setString(3, description);
+                insert.setBigDecimal(4, price);
+                insert.setInt(5, 10);
+                insert.setLong(6, category.getId());
+                insert.addBatch();
+                if (id % 1000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        categoryId = 3;
+
+        String where = " from product p where (lower(p.name) like ? or lower(p.description) like ?) and p.category_id = ?";
+        likePage = connection.prepareStatement("select p.id, p.name, p.description, p.price, p.stock_quantity, p.category_id"
+                + where + " offset 0 rows fetch first " + PAGE_SIZE + " rows only");
+        likeCount = connection.prepareStatement("select count(p.id)" + where);
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : " ").append("w").append(random.nextInt(VOCABULARY));
+        }
+        return text.toString();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public long specificationLike() throws SQLException {
+        String pattern = "%" + QUERY + "%";
+        long sum = 0;
+        for (PreparedStatement statement : List.of(likePage, likeCount)) {
+            statement.setString(1, pattern);
+            statement.setString(2, pattern);
+            statement.setLong(3, categoryId);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    sum += rs.getLong(1);
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long invertedIndex() throws SQLException {
+        List<SearchHit> hits = engine.search(QUERY, null, null, categoryId);
+        List<Long> pageIds = hits.subList(0, Math.min(PAGE_SIZE, hits.size())).stream()
+                .map(SearchHit::getId).collect(Collectors.toList());
+        long sum = hits.size();
+        if (pageIds.isEmpty()) {
+            return sum;
+        }
+        String placeholders = pageIds.stream().map(id -> "?").collect(Collectors.joining(","));
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select p.id, p.name, p.description, p.price, p.stock_quantity, p.category_id from product p where p.id in ("
+                        + placeholders + ")")) {
+            for (int i = 0; i < pageIds.size(); i++) {
+                statement.setLong(i + 1, pageIds.get(i));
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    sum += rs.getLong(1);
+                }
+            }
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProductSearchBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,83 @@
+package com.ilich.sb.e_commerce.benchmark;
+
+import com.ilich.sb.e_commerce.ECommerceApplication;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.repository.IUserRepository;
+import com.ilich.sb.e_commerce.service.IRefreshTokenService;
+import com.ilich.sb.e_commerce.service.IUserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refrescos de token por segundo (8 hilos) sobre la aplicación completa con H2 en memoria (perfil test):
+ * UserServiceImpl.refreshToken, que rota el Refresh Token con un UPDATE condicional por su hash
+ * y emite un nuevo Access Token. Cada hilo es un cliente que encadena sus propios refrescos.
+ *
+ * H2 en memoria no tiene latencia de red: con MySQL cada ida y vuelta ahorrada pesa más.
+ * Ejecutar el main() desde el IDE, o:
+ *   java -cp target/test-classes:target/classes:&lt;dependencias&gt; org.openjdk.jmh.Main RefreshTokenBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RefreshTokenBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Application {
+        private final AtomicInteger clients = new AtomicInteger();
+        private ConfigurableApplicationContext context;
+        private IUserService userService;
+
+        @Setup
+        public void setUp() {
+            context = new SpringApplicationBuilder(ECommerceApplication.class)
+                    .profiles("test")
+                    // Como argumentos: las properties() del builder no pisan las de application.properties
+                    .run("--server.port=0",
+                            "--spring.jpa.show-sql=false",
+                            "--logging.level.root=WARN");
+            userService = context.getBean(IUserService.class);
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private String refreshToken;
+
+        @Setup
+        public void setUp(Application application) {
+            User user = application.context.getBean(IUserRepository.class)
+                    .save(new User("refreshbench" + application.clients.incrementAndGet(), "password"));
+            refreshToken = application.context.getBean(IRefreshTokenService.class).createRefreshToken(user).getToken();
+        }
+    }
+
+    @Benchmark
+    public String refresh(Application application, Client client) {
+        client.refreshToken = application.userService.refreshToken(client.refreshToken).getRefreshToken();
+        return client.refreshToken;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RefreshTokenBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,139 @@
+package com.ilich.sb.e_commerce.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ilich.sb.e_commerce.model.Role;
+import com.ilich.sb.e_commerce.payload.ProductDTO;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.repository.IRevokedTokenBucketRepository;
+import com.ilich.sb.e_commerce.repository.IRevokedTokenRepository;
+import com.ilich.sb.e_commerce.repository.IUserRepository;
+import com.ilich.sb.e_commerce.security.jwt.RevokedTokenCache;
+import com.ilich.sb.e_commerce.service.impl.UserDetailsServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class InvalidationBusTest {
+
+    private Node nodeA;
+    private Node nodeB;
+
+    @BeforeEach
+    void setUp() {
+        LoopbackInvalidationBus.Group group = new LoopbackInvalidationBus.Group();
+        nodeA = new Node(group);
+        nodeB = new Node(group);
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.bus.leave();
+        nodeB.bus.leave();
+    }
+
+    @Test
+    void testTokenRevokedOnOneNodeIsRejectedOnTheOther() {
+        Date expiryDate = new Date(System.currentTimeMillis() + 60_000);
+        assertFalse(nodeB.revokedTokenCache.isRevoked("jti-1", expiryDate));
+
+        // Logout en el nodo A
+        nodeA.revokedTokenCache.revoke("jti-1", expiryDate);
+        nodeA.bus.publish(InvalidationEvent.tokenRevoked("jti-1", expiryDate));
+
+        assertEquals(0, nodeA.applier.applyPending()); // El emisor no se reenvía su propio evento
+        assertEquals(1, nodeB.applier.applyPending());
+        // El nodo B lo rechaza desde memoria: ni inserta la fila otra vez ni consulta la BD
+        assertTrue(nodeB.revokedTokenCache.isRevoked("jti-1", expiryDate));
+        verify(nodeB.bucketRepository, never()).insert(anyLong(), any(byte[].class), any(Date.class));
+        verify(nodeB.bucketRepository, never()).exists(anyLong(), any(byte[].class));
+    }
+
+    @Test
+    void testUserEvictionsAreAppliedInBatches() {
+        User user = new User(1L, "testuser", "encodedPassword");
+        user.getRoles().add(new Role("ROLE_USER"));
+        when(nodeB.userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        nodeB.userDetailsService.loadUserByUsername("testuser");
+        nodeB.userDetailsService.loadUserByUsername("testuser");
+        verify(nodeB.userRepository, times(1)).findByUsername("testuser");
+
+        for (int i = 0; i < 5; i++) {
+            nodeA.bus.publish(InvalidationEvent.userEvicted("testuser"));
+        }
+        nodeA.bus.publish(InvalidationEvent.tokenRevoked("jti-2", new Date(System.currentTimeMillis() + 60_000)));
+
+        assertEquals(6, nodeB.applier.applyPending());
+        nodeB.userDetailsService.loadUserByUsername("testuser");
+        verify(nodeB.userRepository, times(2)).findByUsername("testuser");
+        assertEquals(5.0, nodeB.meterRegistry.counter("invalidation.applied", "type", "user_evicted").count());
+        assertEquals(1.0, nodeB.meterRegistry.counter("invalidation.applied", "type", "token_revoked").count());
+    }
+
+    @Test
+    void testProductWrittenOnOneNodeIsReloadedOnTheOther() {
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<Optional<ProductDTO>> loader = () -> {
+            loads.incrementAndGet();
+            return Optional.of(new ProductDTO(1L, "Laptop", "Descripción", new BigDecimal("10.00"), 5, null, null));
+        };
+        nodeB.productCatalogCache.getById(1L, loader);
+        nodeB.productCatalogCache.getById(2L, loader);
+
+        // Un pedido en el nodo A descuenta el stock del producto 1
+        nodeA.bus.publish(InvalidationEvent.productChanged(1L));
+        assertEquals(1, nodeB.applier.applyPending());
+
+        nodeB.productCatalogCache.getById(1L, loader);
+        nodeB.productCatalogCache.getById(2L, loader);
+        assertEquals(3, loads.get()); // Solo se recarga el producto escrito
+        assertEquals(1.0, nodeB.meterRegistry.counter("invalidation.applied", "type", "product_changed").count());
+    }
+
+    @Test
+    void testEventEncodingRoundTrip() {
+        InvalidationEvent token = InvalidationEvent.tokenRevoked("jti-3", new Date(1_700_000_000_000L));
+        InvalidationEvent user = InvalidationEvent.userEvicted("ñandú:admin\nx");
+        InvalidationEvent product = InvalidationEvent.productChanged(42L);
+        InvalidationEvent categories = InvalidationEvent.categoriesChanged();
+
+        assertEquals(token, InvalidationEvent.decode(token.encode()));
+        assertEquals(user, InvalidationEvent.decode(user.encode()));
+        assertEquals(product, InvalidationEvent.decode(product.encode()));
+        assertEquals(categories, InvalidationEvent.decode(categories.encode()));
+        assertFalse(user.encode().contains("\n")); // Una línea por evento en el payload de NOTIFY
+        assertThrows(IllegalArgumentException.class, () -> InvalidationEvent.decode("X:basura"));
+    }
+
+    private static final class Node {
+        private final IRevokedTokenBucketRepository bucketRepository = mock(IRevokedTokenBucketRepository.class);
+        private final IUserRepository userRepository = mock(IUserRepository.class);
+        private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        private final RevokedTokenCache revokedTokenCache;
+        private final UserDetailsServiceImpl userDetailsService;
+        private final ProductCatalogCache productCatalogCache;
+        private final InvalidationApplier applier;
+        private final LoopbackInvalidationBus bus;
+
+        private Node(LoopbackInvalidationBus.Group group) {
+            revokedTokenCache = new RevokedTokenCache(bucketRepository, mock(IRevokedTokenRepository.class),
+                    meterRegistry, 60_000, 300_000, 1000, 0.01, false);
+            userDetailsService = new UserDetailsServiceImpl(userRepository, meterRegistry, 100, 300);
+            // Sin start(): los tests aplican la cola con applyPending()
+            productCatalogCache = new ProductCatalogCache(meterRegistry, 1_000_000, 300);
+            applier = new InvalidationApplier(revokedTokenCache, userDetailsService, productCatalogCache,
+                    new CatalogResponseCache(new ObjectMapper(), meterRegistry, 1_000_000, 300), meterRegistry, 256);
+            bus = new LoopbackInvalidationBus(applier, group);
+        }
+    }
+}
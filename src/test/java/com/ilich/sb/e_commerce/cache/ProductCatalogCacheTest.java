@@ -0,0 +1,107 @@
+package com.ilich.sb.e_commerce.cache;
+
+import com.ilich.sb.e_commerce.payload.ProductDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductCatalogCacheTest {
+
+    private ProductCatalogCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ProductCatalogCache(new SimpleMeterRegistry(), 1_000_000, 300);
+        loads = new AtomicInteger();
+    }
+
+    private ProductDTO product(long id, int stock) {
+        return new ProductDTO(id, "Product " + id, "Description", new BigDecimal("10.00"), stock, null, null);
+    }
+
+    @Test
+    void testGetAllIsLoadedOnce() {
+        List<ProductDTO> first = cache.getAll(() -> { loads.incrementAndGet(); return List.of(product(1L, 5)); });
+        List<ProductDTO> second = cache.getAll(() -> { loads.incrementAndGet(); return List.of(product(1L, 5)); });
+
+        assertEquals(1, loads.get());
+        assertSame(first, second);
+    }
+
+    @Test
+    void testInvalidateForcesReload() {
+        cache.getAll(() -> List.of(product(1L, 5)));
+        cache.invalidate();
+
+        List<ProductDTO> reloaded = cache.getAll(() -> List.of(product(1L, 4)));
+
+        assertEquals(4, reloaded.get(0).getStockQuantity());
+    }
+
+    @Test
+    void testSnapshotLoadedDuringWriteIsNotStored() {
+        // Una escritura ocurre mientras se carga la lista: el resultado no se guarda en la caché
+        cache.getAll(() -> {
+            cache.invalidate();
+            return List.of(product(1L, 5));
+        });
+
+        cache.getAll(() -> { loads.incrementAndGet(); return List.of(product(1L, 4)); });
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testMissingProductIsNotCached() {
+        assertTrue(cache.getById(99L, () -> { loads.incrementAndGet(); return Optional.empty(); }).isEmpty());
+        assertTrue(cache.getById(99L, () -> { loads.incrementAndGet(); return Optional.empty(); }).isEmpty());
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testGetByIdIsCachedUntilInvalidated() {
+        cache.getById(1L, () -> { loads.incrementAndGet(); return Optional.of(product(1L, 5)); });
+        cache.getById(1L, () -> { loads.incrementAndGet(); return Optional.of(product(1L, 5)); });
+        assertEquals(1, loads.get());
+
+        cache.invalidate();
+        cache.getById(1L, () -> { loads.incrementAndGet(); return Optional.of(product(1L, 5)); });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testInvalidateProductsKeepsOtherProducts() {
+        cache.getAll(() -> List.of(product(1L, 5), product(2L, 5)));
+        cache.getById(1L, () -> Optional.of(product(1L, 5)));
+        cache.getById(2L, () -> Optional.of(product(2L, 5)));
+
+        // Un pedido descuenta el stock del producto 1
+        cache.invalidateProducts(List.of(1L));
+
+        cache.getById(2L, () -> { loads.incrementAndGet(); return Optional.of(product(2L, 5)); });
+        assertEquals(0, loads.get());
+        assertEquals(4, cache.getById(1L, () -> Optional.of(product(1L, 4))).orElseThrow().getStockQuantity());
+        assertEquals(4, cache.getAll(() -> List.of(product(1L, 4), product(2L, 5))).get(0).getStockQuantity());
+    }
+
+    @Test
+    void testProductLoadedDuringItsInvalidationIsNotStored() {
+        cache.getById(1L, () -> {
+            cache.invalidateProducts(List.of(1L));
+            return Optional.of(product(1L, 5));
+        });
+
+        cache.getById(1L, () -> { loads.incrementAndGet(); return Optional.of(product(1L, 4)); });
+
+        assertEquals(1, loads.get());
+    }
+}
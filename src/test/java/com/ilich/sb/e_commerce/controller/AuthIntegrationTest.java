@@ -11,19 +11,27 @@ import com.ilich.sb.e_commerce.payload.response.TokenRefreshResponseDTO;
 import com.ilich.sb.e_commerce.repository.IRefreshTokenRepository;
 import com.ilich.sb.e_commerce.repository.IRoleRepository;
 import com.ilich.sb.e_commerce.repository.IUserRepository;
+import com.ilich.sb.e_commerce.security.jwt.JwtUtils;
+import com.ilich.sb.e_commerce.service.impl.UserDetailsImpl;
 import com.ilich.sb.e_commerce.service.impl.RefreshTokenServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -56,6 +64,12 @@ public class AuthIntegrationTest {
     @Autowired
     private RefreshTokenServiceImpl refreshTokenService;
 
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     // @Autowired
     // private AuthService authService; // Si tienes un AuthService, lo puedes inyectar aquí
 
@@ -236,6 +250,70 @@ public class AuthIntegrationTest {
         //assertNotEquals(refreshRequest, mvcResult, "El Refresh Token debería ser diferente después de la rotación.");
     }
 
+    @Test
+    void testRotatedRefreshTokenCannotBeReused() throws Exception {
+        RefreshToken initial = refreshTokenService.createRefreshToken(userRepository.findByUsername("testuser").orElseThrow());
+        TokenRefreshRequestDTO refreshRequest = new TokenRefreshRequestDTO();
+        refreshRequest.setRefreshToken(initial.getToken());
+
+        MvcResult refreshResult = mockMvc.perform(post("/api/auth/refreshtoken")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(refreshRequest)))
+                .andExpect(status().isOk())
+                .andReturn();
+        String rotatedToken = objectMapper.readValue(refreshResult.getResponse().getContentAsString(),
+                TokenRefreshResponseDTO.class).getRefreshToken();
+
+        // La rotación reemplaza la fila en el sitio: el token anterior ya no existe y solo se guarda el hash
+        assertEquals(1, refreshTokenRepository.count());
+        assertTrue(refreshTokenService.findByToken(rotatedToken).isPresent());
+
+        // Reutilizar el token anterior (p. ej. robado) se rechaza
+        mockMvc.perform(post("/api/auth/refreshtoken")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(refreshRequest)))
+                .andExpect(status().isForbidden());
+    }
+
+
+    @Test
+    void testLegacyRefreshTokensAreMigratedToHashes() throws Exception {
+        // Esquema de la versión anterior: token en claro NOT NULL y token_hash añadida sin NOT NULL por ddl-auto=update
+        Long userId = userRepository.findByUsername("testuser").orElseThrow().getId();
+        jdbcTemplate.execute("ALTER TABLE refresh_tokens ALTER COLUMN token_hash SET NULL");
+        jdbcTemplate.execute("ALTER TABLE refresh_tokens ADD COLUMN token VARCHAR(255)");
+        jdbcTemplate.update("UPDATE refresh_tokens SET token = CONCAT('existing-', id)");
+        jdbcTemplate.execute("ALTER TABLE refresh_tokens ALTER COLUMN token SET NOT NULL");
+        insertLegacyToken("legacy-token", userId);
+
+        refreshTokenService.migrateLegacyTokens();
+
+        // El token guardado en claro sigue sirviendo para refrescar, ahora a través de su hash
+        TokenRefreshRequestDTO refreshRequest = new TokenRefreshRequestDTO();
+        refreshRequest.setRefreshToken("legacy-token");
+        mockMvc.perform(post("/api/auth/refreshtoken")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(refreshRequest)))
+                .andExpect(status().isOk());
+
+        // Despliegue gradual: las dos versiones siguen insertando y la siguiente pasada rellena el hash
+        refreshTokenService.createRefreshToken(userRepository.findById(userId).orElseThrow());
+        insertLegacyToken("legacy-token-2", userId);
+        refreshTokenService.migrateLegacyTokens();
+        assertTrue(refreshTokenService.findByToken("legacy-token-2").isPresent());
+        assertFalse(jdbcTemplate.queryForList("SELECT token FROM refresh_tokens").isEmpty(), "La columna en claro se conserva");
+
+        // sql/Migracion refresh tokens hash.sql elimina la columna; sin ella token_hash vuelve a ser NOT NULL
+        jdbcTemplate.execute("ALTER TABLE refresh_tokens DROP COLUMN token");
+        refreshTokenService.migrateLegacyTokens();
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update(
+                "INSERT INTO refresh_tokens (expiry_date, user_id) VALUES (CURRENT_TIMESTAMP, ?)", userId));
+    }
+
+    private void insertLegacyToken(String token, Long userId) {
+        jdbcTemplate.update("INSERT INTO refresh_tokens (token, expiry_date, user_id) VALUES (?, ?, ?)",
+                token, Timestamp.from(Instant.now().plusSeconds(3600)), userId);
+    }
 
     @Test
     void testRefreshTokenExpired() throws Exception {
@@ -261,4 +339,52 @@ public class AuthIntegrationTest {
                 .andExpect(status().isForbidden()) // O 401 Unauthorized, dependiendo de cómo manejes TokenRefreshException
                 .andExpect(jsonPath("$.message", notNullValue())); // Verifica que haya un mensaje de error
     }
-}
\ No newline at end of file
+
+    @Test
+    void testLogoutRevokesAccessToken() throws Exception {
+        // 1. Iniciar sesión para obtener un Access Token
+        LoginRequestDTO loginRequest = new LoginRequestDTO("testuser", "password123");
+        MvcResult loginResult = mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isOk())
+                .andReturn();
+        String accessToken = objectMapper.readValue(loginResult.getResponse().getContentAsString(),
+                TokenRefreshResponseDTO.class).getAccessToken();
+
+        // 2. El token es aceptado antes del logout
+        mockMvc.perform(get("/api/category/getAll")
+                        .header("Authorization", "Bearer " + accessToken))
+                .andExpect(status().isOk());
+
+        // 3. Logout: el token pasa a la lista negra (BD + caché en memoria)
+        mockMvc.perform(post("/api/auth/logout")
+                        .header("Authorization", "Bearer " + accessToken))
+                .andExpect(status().isOk());
+
+        // 4. El mismo token ya no autentica
+        mockMvc.perform(get("/api/category/getAll")
+                        .header("Authorization", "Bearer " + accessToken))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void testLoginTokenCarriesUserIdAndRoles() throws Exception {
+        LoginRequestDTO loginRequest = new LoginRequestDTO("adminuser", "adminpassword");
+        MvcResult loginResult = mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isOk())
+                .andReturn();
+        String accessToken = objectMapper.readValue(loginResult.getResponse().getContentAsString(),
+                TokenRefreshResponseDTO.class).getAccessToken();
+
+        // El principal se reconstruye solo con los claims del token
+        UserDetailsImpl principal = jwtUtils.getUserDetailsFromClaims(jwtUtils.parseValidatedClaims(accessToken));
+
+        assertNotNull(principal);
+        assertEquals(userRepository.findByUsername("adminuser").get().getId(), principal.getId());
+        assertEquals("adminuser", principal.getUsername());
+        assertTrue(principal.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN")));
+    }
+}
@@ -6,7 +6,9 @@ import com.ilich.sb.e_commerce.model.Product;
 import com.ilich.sb.e_commerce.model.Role;
 import com.ilich.sb.e_commerce.model.User;
 import com.ilich.sb.e_commerce.payload.request.AddToCartRequestDTO;
+import com.ilich.sb.e_commerce.payload.request.CartItemOperationDTO;
 import com.ilich.sb.e_commerce.payload.request.UpdateCartItemRequestDTO;
+import com.ilich.sb.e_commerce.payload.request.UpdateCartItemsRequestDTO;
 import com.ilich.sb.e_commerce.repository.*;
 import com.ilich.sb.e_commerce.security.jwt.JwtUtils;
 import com.ilich.sb.e_commerce.service.impl.CartServiceImpl;
@@ -25,6 +27,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -160,6 +163,21 @@ public class CartControllerIntegrationTest {
                 .andExpect(jsonPath("$.total").value(testProduct1.getPrice().multiply(BigDecimal.valueOf(2))));
     }
 
+    @Test
+    void getCart_ShouldReturnProductDataAndTotalComputedInTheQuery() throws Exception {
+        cartService.addProductToCart(testUser, testProduct1.getId(), 2);
+        cartService.addProductToCart(testUser, testProduct2.getId(), 3);
+
+        mockMvc.perform(get("/api/cart")
+                        .header("Authorization", obtainAuthHeader(userToken)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[?(@.productId == " + testProduct2.getId() + ")].productName").value("Mouse Wireless"))
+                .andExpect(jsonPath("$.items[?(@.productId == " + testProduct2.getId() + ")].productPrice").value(25.00))
+                .andExpect(jsonPath("$.items[?(@.productId == " + testProduct2.getId() + ")].subtotal").value(75.00))
+                .andExpect(jsonPath("$.total").value(2475.02)); // 2 * 1200.01 + 3 * 25.00
+    }
+
     // --- Tests para POST /api/cart/add ---
 
     @Test
@@ -304,6 +322,66 @@ public class CartControllerIntegrationTest {
                 .andExpect(jsonPath("$.message").value(containsString("Product with id: " + testProduct1.getId() + " not found in cart.")));
     }
 
+    // --- Tests para PATCH /api/cart/items ---
+
+    @Test
+    void updateCartItems_ShouldApplyAllOperationsAndReturnCart() throws Exception {
+        Category extraCategory = categoryRepository.save(new Category("Accessories"));
+        Product testProduct3 = productRepository.save(new Product("USB Hub", "7 ports", new BigDecimal("15.00"), 20, extraCategory));
+        cartService.addProductToCart(testUser, testProduct1.getId(), 2);
+        cartService.addProductToCart(testUser, testProduct2.getId(), 1);
+
+        // Suma 3 al ratón, quita el portátil y añade 4 hubs (en dos operaciones)
+        UpdateCartItemsRequestDTO request = new UpdateCartItemsRequestDTO(List.of(
+                new CartItemOperationDTO(testProduct2.getId(), null, 3),
+                new CartItemOperationDTO(testProduct1.getId(), 0, null),
+                new CartItemOperationDTO(testProduct3.getId(), 1, null),
+                new CartItemOperationDTO(testProduct3.getId(), null, 3)));
+
+        mockMvc.perform(patch("/api/cart/items")
+                        .header("Authorization", obtainAuthHeader(userToken))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[?(@.productId == " + testProduct2.getId() + ")].quantity").value(4))
+                .andExpect(jsonPath("$.items[?(@.productId == " + testProduct3.getId() + ")].quantity").value(4))
+                .andExpect(jsonPath("$.total").value(160.00)); // 4 * 25.00 + 4 * 15.00
+    }
+
+    @Test
+    void updateCartItems_UnknownProduct_ShouldReturnNotFoundAndChangeNothing() throws Exception {
+        cartService.addProductToCart(testUser, testProduct1.getId(), 2);
+
+        UpdateCartItemsRequestDTO request = new UpdateCartItemsRequestDTO(List.of(
+                new CartItemOperationDTO(testProduct1.getId(), 5, null),
+                new CartItemOperationDTO(999999L, 1, null)));
+
+        mockMvc.perform(patch("/api/cart/items")
+                        .header("Authorization", obtainAuthHeader(userToken))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("Product not found with id: 999999"));
+
+        mockMvc.perform(get("/api/cart")
+                        .header("Authorization", obtainAuthHeader(userToken)))
+                .andExpect(jsonPath("$.items[0].quantity").value(2));
+    }
+
+    @Test
+    void updateCartItems_QuantityAndDelta_ShouldReturnBadRequest() throws Exception {
+        UpdateCartItemsRequestDTO request = new UpdateCartItemsRequestDTO(List.of(
+                new CartItemOperationDTO(testProduct1.getId(), 1, 1)));
+
+        mockMvc.perform(patch("/api/cart/items")
+                        .header("Authorization", obtainAuthHeader(userToken))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value(containsString("Invalid cart operation")));
+    }
+
     // --- Tests para DELETE /api/cart/clear ---
 
     @Test
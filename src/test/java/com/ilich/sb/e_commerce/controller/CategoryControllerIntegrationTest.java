@@ -30,6 +30,7 @@ import java.util.Optional;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.hamcrest.Matchers.*;
@@ -137,6 +138,33 @@ public class CategoryControllerIntegrationTest {
                 .andExpect(jsonPath("$[1].name", is("Books")));
     }
 
+    @Test
+    void testGetAllCategories_ETagAndNotModified() throws Exception {
+        categoryRepository.save(new Category("Electronics"));
+
+        MvcResult first = mockMvc.perform(get("/api/category/getAll")
+                        .header("Authorization", "Bearer " + accessTokenUser))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+
+        // Mismo ETag: 304 sin cuerpo
+        mockMvc.perform(get("/api/category/getAll")
+                        .header("Authorization", "Bearer " + accessTokenUser)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // Tras una escritura la respuesta cambia y el ETag anterior deja de valer
+        categoryRepository.save(new Category("Books"));
+        mockMvc.perform(get("/api/category/getAll")
+                        .header("Authorization", "Bearer " + accessTokenUser)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().string("ETag", not(etag)));
+    }
+
     @Test
     void testGetCategoryById_Authenticated() throws Exception {
         Category savedCategory = categoryRepository.save(new Category("Electronics"));
@@ -0,0 +1,180 @@
+package com.ilich.sb.e_commerce.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ilich.sb.e_commerce.model.*;
+import com.ilich.sb.e_commerce.repository.*;
+import com.ilich.sb.e_commerce.security.jwt.JwtUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * POST /api/orders en modo asíncrono. Sin transacción de test: los workers deben ver los datos confirmados,
+ * por eso se limpia todo en @AfterEach.
+ */
+@SpringBootTest(properties = "ecommerce.app.orders.async=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class OrderAsyncIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private IUserRepository userRepository;
+    @Autowired
+    private IRoleRepository roleRepository;
+    @Autowired
+    private ICategoryRepository categoryRepository;
+    @Autowired
+    private IProductRepository productRepository;
+    @Autowired
+    private ICartRepository cartRepository;
+    @Autowired
+    private ICartItemRepository cartItemRepository;
+    @Autowired
+    private IOrderRepository orderRepository;
+    @Autowired
+    private IOrderItemRepository orderItemRepository;
+    @Autowired
+    private IIdempotencyRecordRepository idempotencyRecordRepository;
+    @Autowired
+    private PasswordEncoder encoder;
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    private User testUser;
+    private String userToken;
+    private Category category;
+    private Product laptop;
+    private Cart userCart;
+
+    @BeforeEach
+    void setUp() {
+        Role userRole = roleRepository.findByName("ROLE_USER")
+                .orElseGet(() -> roleRepository.save(new Role("ROLE_USER")));
+        testUser = new User("asyncbuyer", encoder.encode("password123"));
+        testUser.setRoles(Collections.singleton(userRole));
+        testUser = userRepository.save(testUser);
+        userToken = jwtUtils.generateTokenFromUsername(testUser.getUsername());
+
+        category = categoryRepository.save(new Category("AsyncOrders"));
+        laptop = productRepository.save(new Product("Laptop Pro", "Powerful laptop", new BigDecimal("1200.00"), 10, category));
+        userCart = cartRepository.save(new Cart(testUser));
+        cartItemRepository.save(new CartItem(userCart, laptop, 2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotencyRecordRepository.deleteAllInBatch();
+        orderItemRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        cartItemRepository.deleteAllInBatch();
+        cartRepository.deleteAllInBatch(List.of(userCart));
+        productRepository.deleteAllInBatch(List.of(laptop));
+        categoryRepository.deleteAllInBatch(List.of(category));
+        userRepository.deleteAllInBatch(List.of(testUser));
+    }
+
+    @Test
+    void placeOrder_ShouldAcceptAndThenConfirm() throws Exception {
+        long orderId = placeOrder();
+
+        JsonNode order = awaitFinalStatus(orderId);
+
+        assertEquals("CONFIRMED", order.get("status").asText());
+        assertEquals(2400.00, order.get("totalAmount").asDouble());
+        assertEquals(1, order.get("items").size());
+        assertEquals(8, productRepository.findById(laptop.getId()).orElseThrow().getStockQuantity());
+        assertTrue(cartItemRepository.findByCart(userCart).isEmpty());
+    }
+
+    @Test
+    void placeOrder_ShouldAcceptAndThenReject_WhenInsufficientStock() throws Exception {
+        laptop.setStockQuantity(1);
+        productRepository.save(laptop);
+
+        long orderId = placeOrder();
+
+        JsonNode order = awaitFinalStatus(orderId);
+
+        assertEquals("REJECTED", order.get("status").asText());
+        assertEquals(1, productRepository.findById(laptop.getId()).orElseThrow().getStockQuantity());
+        assertEquals(1, cartItemRepository.findByCart(userCart).size(), "El carrito no se toca si el pedido se rechaza");
+    }
+
+    @Test
+    void placeOrder_WithIdempotencyKey_ShouldEnqueueAfterTheResponseIsStored() throws Exception {
+        // El pedido se crea en la transacción de la clave: se encola tras su commit
+        String body = mockMvc.perform(post("/api/orders")
+                        .header("Authorization", "Bearer " + userToken)
+                        .header("Idempotency-Key", "async-key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        long orderId = objectMapper.readTree(body).get("orderId").asLong();
+
+        assertEquals("CONFIRMED", awaitFinalStatus(orderId).get("status").asText());
+        assertTrue(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(testUser.getId(), "async-key-1").orElseThrow().isCompleted());
+    }
+
+    @Test
+    void placeOrder_ShouldReturnBadRequest_WhenCartIsEmpty() throws Exception {
+        cartItemRepository.deleteAllInBatch();
+
+        mockMvc.perform(post("/api/orders")
+                        .header("Authorization", "Bearer " + userToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Cannot create an order from an empty cart."));
+
+        assertEquals(0, orderRepository.findByUser(testUser).size());
+    }
+
+    private long placeOrder() throws Exception {
+        String body = mockMvc.perform(post("/api/orders")
+                        .header("Authorization", "Bearer " + userToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andExpect(jsonPath("$.status").value("PENDING"))
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("orderId").asLong();
+    }
+
+    // Consulta GET /api/orders/{id} hasta que el pedido deja de estar PENDING
+    private JsonNode awaitFinalStatus(long orderId) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            String body = mockMvc.perform(get("/api/orders/" + orderId)
+                            .header("Authorization", "Bearer " + userToken))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            JsonNode order = objectMapper.readTree(body);
+            if (!"PENDING".equals(order.get("status").asText()) || System.currentTimeMillis() > deadline) {
+                return order;
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -17,8 +17,10 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 import static org.hamcrest.Matchers.*;
         import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -197,6 +199,50 @@ public class OrderControllerIntegrationTest {
     }
 
 
+    @Test
+    void placeOrder_ShouldReplayTheOriginalResponse_WhenIdempotencyKeyIsRepeated() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        // WHEN: El cliente repite la petición con la misma clave (p. ej. tras un timeout)
+        String first = mockMvc.perform(post("/api/orders")
+                        .header("Authorization", "Bearer " + userToken)
+                        .header("Idempotency-Key", idempotencyKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andReturn().getResponse().getContentAsString();
+        long orderId = objectMapper.readTree(first).get("orderId").asLong();
+
+        mockMvc.perform(post("/api/orders")
+                        .header("Authorization", "Bearer " + userToken)
+                        .header("Idempotency-Key", idempotencyKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isCreated()) // THEN: La misma respuesta, aunque el carrito ya está vacío
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.orderId").value(orderId))
+                .andExpect(jsonPath("$.totalAmount").value(2475.00))
+                .andExpect(jsonPath("$.items", hasSize(2)));
+
+        // Un solo pedido y el stock descontado una sola vez
+        assertEquals(1, orderRepository.findByUser(testUser).size());
+        assertEquals(8, productRepository.findById(testProduct1.getId()).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    void placeOrder_ShouldReturnBadRequest_WhenIdempotencyKeyIsTooLong() throws Exception {
+        mockMvc.perform(post("/api/orders")
+                        .header("Authorization", "Bearer " + userToken)
+                        .header("Idempotency-Key", "k".repeat(101))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("Invalid Idempotency-Key header")));
+
+        assertEquals(0, orderRepository.findByUser(testUser).size());
+    }
+
     @Test
     void getUserOrders_ShouldReturnUsersOrders() throws Exception {
         // GIVEN: Se crea un pedido de prueba directamente en la BD para el usuario
@@ -211,11 +257,48 @@ public class OrderControllerIntegrationTest {
         mockMvc.perform(get("/api/orders")
                         .header("Authorization", "Bearer " + userToken))
                 .andExpect(status().isOk()) // THEN: Se espera un estado 200 OK
-                .andExpect(jsonPath("$", hasSize(1))) // Se espera 1 pedido
-                .andExpect(jsonPath("$[0].orderId").value(existingOrder.getId()))
-                .andExpect(jsonPath("$[0].totalAmount").value(100.00))
-                .andExpect(jsonPath("$[0].items", hasSize(1)))
-                .andExpect(jsonPath("$[0].items[0].productId").value(testProduct1.getId()));
+                .andExpect(jsonPath("$.content", hasSize(1))) // Se espera 1 pedido
+                .andExpect(jsonPath("$.totalElements").value(1))
+                .andExpect(jsonPath("$.content[0].orderId").value(existingOrder.getId()))
+                .andExpect(jsonPath("$.content[0].totalAmount").value(100.00))
+                .andExpect(jsonPath("$.content[0].items", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].items[0].productId").value(testProduct1.getId()))
+                .andExpect(jsonPath("$.content[0].items[0].productName").value("Laptop Pro"));
+    }
+
+    @Test
+    void getUserOrders_ShouldPageByOrderDateNewestFirst() throws Exception {
+        // GIVEN: 3 pedidos de 2 ítems en días distintos
+        for (int day = 1; day <= 3; day++) {
+            Order order = new Order(testUser, new BigDecimal(day * 100), OrderStatus.DELIVERED);
+            order.setOrderDate(LocalDateTime.of(2025, 1, day, 12, 0));
+            order.addOrderItem(new OrderItem(order, testProduct1, 1, new BigDecimal("50.00")));
+            order.addOrderItem(new OrderItem(order, testProduct2, day, new BigDecimal("10.00")));
+            orderRepository.save(order); // Los ítems se guardan en cascada
+        }
+
+        // WHEN: Se pide la primera página de 2 pedidos
+        mockMvc.perform(get("/api/orders")
+                        .param("page", "0")
+                        .param("size", "2")
+                        .header("Authorization", "Bearer " + userToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(2)))
+                .andExpect(jsonPath("$.totalElements").value(3))
+                .andExpect(jsonPath("$.content[0].totalAmount").value(300)) // El más reciente primero
+                .andExpect(jsonPath("$.content[1].totalAmount").value(200))
+                .andExpect(jsonPath("$.content[0].items", hasSize(2)))
+                .andExpect(jsonPath("$.content[0].items[*].productName", containsInAnyOrder("Laptop Pro", "Mouse Wireless")));
+
+        // Y la segunda página trae el más antiguo
+        mockMvc.perform(get("/api/orders")
+                        .param("page", "1")
+                        .param("size", "2")
+                        .header("Authorization", "Bearer " + userToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].totalAmount").value(100))
+                .andExpect(jsonPath("$.content[0].items", hasSize(2)));
     }
 
     @Test
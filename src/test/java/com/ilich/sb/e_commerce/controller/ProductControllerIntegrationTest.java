@@ -0,0 +1,134 @@
+package com.ilich.sb.e_commerce.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ilich.sb.e_commerce.model.Category;
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.model.Role;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.repository.ICategoryRepository;
+import com.ilich.sb.e_commerce.repository.IProductRepository;
+import com.ilich.sb.e_commerce.repository.IRoleRepository;
+import com.ilich.sb.e_commerce.repository.IUserRepository;
+import com.ilich.sb.e_commerce.security.jwt.JwtUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.hamcrest.Matchers.is;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Transactional // Cada test se ejecuta en una transacción y se revierte al final
+public class ProductControllerIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private IUserRepository userRepository;
+
+    @Autowired
+    private IRoleRepository roleRepository;
+
+    @Autowired
+    private IProductRepository productRepository;
+
+    @Autowired
+    private ICategoryRepository categoryRepository;
+
+    @Autowired
+    private PasswordEncoder encoder;
+
+    private String userToken;
+    private Category category;
+
+    @BeforeEach
+    void setUp() {
+        Role userRole = roleRepository.findByName("ROLE_USER")
+                .orElseGet(() -> roleRepository.save(new Role("ROLE_USER")));
+        User user = new User("catalogreader", encoder.encode("password123"));
+        user.setRoles(new HashSet<>(List.of(userRole)));
+        userRepository.save(user);
+        userToken = jwtUtils.generateTokenFromUsername(user.getUsername());
+
+        category = categoryRepository.save(new Category("Keyset"));
+        // 25 productos con precios repetidos para probar el desempate por id
+        for (int i = 1; i <= 25; i++) {
+            productRepository.save(new Product("Product " + i, "Keyset product", new BigDecimal(10 + (i % 5)), 5, category));
+        }
+    }
+
+    private MockHttpServletRequestBuilder keysetRequest(String sortBy, String cursor) {
+        MockHttpServletRequestBuilder request = get("/api/product/search")
+                .header("Authorization", "Bearer " + userToken)
+                .param("keyset", "true")
+                .param("categoryId", category.getId().toString())
+                .param("sortBy", sortBy)
+                .param("size", "10");
+        return cursor == null ? request : request.param("cursor", cursor);
+    }
+
+    @Test
+    void testKeysetSearchWalksAllPagesInOrder() throws Exception {
+        List<Long> seenIds = new ArrayList<>();
+        List<BigDecimal> seenPrices = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String body = mockMvc.perform(keysetRequest("price", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            JsonNode page = objectMapper.readTree(body);
+            for (JsonNode product : page.get("content")) {
+                seenIds.add(product.get("id").asLong());
+                seenPrices.add(product.get("price").decimalValue());
+            }
+            cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(25, seenIds.size());
+        assertEquals(25, Set.copyOf(seenIds).size(), "Ningún producto debe repetirse entre páginas.");
+        for (int i = 1; i < seenPrices.size(); i++) {
+            assertTrue(seenPrices.get(i - 1).compareTo(seenPrices.get(i)) <= 0, "Los precios deben estar en orden ascendente.");
+        }
+    }
+
+    @Test
+    void testKeysetSearchRejectsCursorForAnotherSortField() throws Exception {
+        String body = mockMvc.perform(keysetRequest("id", null))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hasNext", is(true)))
+                .andReturn().getResponse().getContentAsString();
+        String idCursor = objectMapper.readTree(body).get("nextCursor").asText();
+
+        mockMvc.perform(keysetRequest("price", idCursor))
+                .andExpect(status().isBadRequest());
+    }
+}
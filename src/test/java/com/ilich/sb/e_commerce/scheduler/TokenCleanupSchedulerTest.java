@@ -0,0 +1,105 @@
+package com.ilich.sb.e_commerce.scheduler;
+
+import com.ilich.sb.e_commerce.model.RefreshToken;
+import com.ilich.sb.e_commerce.model.RevokedToken;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.repository.IRefreshTokenRepository;
+import com.ilich.sb.e_commerce.repository.IRevokedTokenRepository;
+import com.ilich.sb.e_commerce.repository.IUserRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Limpieza por tramos de 2 filas; la ejecución programada se retrasa para que solo la lance el test.
+ * Sin transacción de test: cada tramo se confirma por separado, así que se limpia todo en @AfterEach.
+ */
+@SpringBootTest(properties = {
+        "ecommerce.app.token-cleanup.chunk-size=2",
+        "ecommerce.app.token-cleanup.interval-ms=3600000"
+})
+@ActiveProfiles("test")
+public class TokenCleanupSchedulerTest {
+
+    @Autowired
+    private TokenCleanupScheduler tokenCleanupScheduler;
+    @Autowired
+    private IRefreshTokenRepository refreshTokenRepository;
+    @Autowired
+    private IRevokedTokenRepository revokedTokenRepository;
+    @Autowired
+    private IUserRepository userRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User("cleanupuser", "password"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        refreshTokenRepository.deleteAllInBatch();
+        revokedTokenRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch(List.of(user));
+    }
+
+    @Test
+    void cleanupExpiredRefreshTokens_ShouldDeleteOnlyExpiredTokensInChunks() {
+        Instant now = Instant.now();
+        List<RefreshToken> tokens = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tokens.add(new RefreshToken(UUID.randomUUID().toString(), user, now.minus(i + 1, ChronoUnit.HOURS)));
+        }
+        RefreshToken valid = new RefreshToken(UUID.randomUUID().toString(), user, now.plus(1, ChronoUnit.HOURS));
+        tokens.add(valid);
+        refreshTokenRepository.saveAll(tokens);
+        long runsBefore = rows("refresh_tokens").count();
+
+        tokenCleanupScheduler.cleanupExpiredRefreshTokens();
+
+        // 5 expirados en tramos de 2: 2 + 2 + 1
+        List<RefreshToken> remaining = refreshTokenRepository.findAll();
+        assertEquals(1, remaining.size());
+        assertArrayEquals(valid.getTokenHash(), remaining.get(0).getTokenHash()); // Solo se guarda el hash
+        assertEquals(runsBefore + 1, rows("refresh_tokens").count());
+        assertEquals(5.0, rows("refresh_tokens").max());
+    }
+
+    @Test
+    void cleanupExpiredRevokedAccessTokens_ShouldDeleteOnlyExpiredTokens() {
+        long now = System.currentTimeMillis();
+        List<RevokedToken> tokens = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tokens.add(new RevokedToken("expired-" + i, UUID.randomUUID().toString(), new Date(now - 60000L * (i + 1))));
+        }
+        tokens.add(new RevokedToken("active", UUID.randomUUID().toString(), new Date(now + 60000L)));
+        revokedTokenRepository.saveAll(tokens);
+
+        tokenCleanupScheduler.cleanupExpiredRevokedAccessTokens();
+
+        List<RevokedToken> remaining = revokedTokenRepository.findAll();
+        assertEquals(1, remaining.size());
+        assertEquals("active", remaining.get(0).getToken());
+    }
+
+    private DistributionSummary rows(String table) {
+        return meterRegistry.get("token.cleanup.rows").tag("table", table).summary();
+    }
+}
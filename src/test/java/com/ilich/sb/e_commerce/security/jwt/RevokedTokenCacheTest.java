@@ -0,0 +1,223 @@
+package com.ilich.sb.e_commerce.security.jwt;
+
+import com.ilich.sb.e_commerce.model.RevokedToken;
+import com.ilich.sb.e_commerce.repository.IRevokedTokenBucketRepository;
+import com.ilich.sb.e_commerce.repository.IRevokedTokenRepository;
+import com.ilich.sb.e_commerce.util.RevocationKey;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RevokedTokenCacheTest {
+
+    private static final long BUCKET_MS = 60_000;
+
+    @Mock
+    private IRevokedTokenBucketRepository bucketRepository;
+
+    @Mock
+    private IRevokedTokenRepository legacyRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MutableClock clock;
+    private RevokedTokenCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new MutableClock(Instant.parse("2025-01-01T10:00:00Z"));
+        cache = new RevokedTokenCache(bucketRepository, legacyRepository, meterRegistry, BUCKET_MS, 300_000, 1000, 0.01, true, clock);
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.counter("jwt.revocation.lookups", "result", result).count();
+    }
+
+    private Date inMillis(long millis) {
+        return new Date(clock.millis() + millis);
+    }
+
+    private static long bucketOf(Date expiryDate) {
+        return expiryDate.getTime() / BUCKET_MS;
+    }
+
+    @Test
+    void testUnknownTokenDoesNotHitDatabase() {
+        assertFalse(cache.isRevoked("never-revoked", inMillis(60_000)));
+
+        verify(bucketRepository, never()).exists(anyLong(), any(byte[].class));
+        assertEquals(1.0, lookups("bloom_negative"));
+    }
+
+    @Test
+    void testRevokedTokenIsStoredInItsBucketAndAnsweredFromMemory() {
+        Date expiryDate = inMillis(60_000);
+        cache.revoke("jti-1", expiryDate);
+
+        assertTrue(cache.isRevoked("jti-1", expiryDate));
+
+        // Se guarda la clave de 16 bytes, no el JTI en texto
+        verify(bucketRepository).insert(eq(bucketOf(expiryDate)), aryEq(RevocationKey.of("jti-1")), eq(expiryDate));
+        verify(bucketRepository, never()).exists(anyLong(), any(byte[].class));
+        assertEquals(1.0, lookups("exact_hit"));
+    }
+
+    @Test
+    void testLookupOnlyProbesTheBucketOfTheTokenExpiry() {
+        Date expiryDate = inMillis(60_000);
+        cache.revoke("jti-1", expiryDate);
+
+        // El mismo JTI con un "exp" de otro intervalo no está en ese bucket
+        assertFalse(cache.isRevoked("jti-1", new Date(expiryDate.getTime() + 3 * BUCKET_MS)));
+
+        verify(bucketRepository, never()).exists(anyLong(), any(byte[].class));
+    }
+
+    @Test
+    void testAlreadyExpiredTokenIsNotStored() {
+        cache.revoke("expired", inMillis(-2 * BUCKET_MS));
+
+        assertEquals(0, cache.size());
+        verify(bucketRepository, never()).insert(anyLong(), any(byte[].class), any(Date.class));
+    }
+
+    @Test
+    void testLoadFromDatabaseOnStartup() {
+        Date expiryDate = inMillis(60_000);
+        long deadBucket = bucketOf(inMillis(-2 * BUCKET_MS));
+        long aliveBucket = bucketOf(expiryDate);
+        when(bucketRepository.findBuckets()).thenReturn(new TreeSet<>(List.of(deadBucket, aliveBucket)));
+        when(bucketRepository.findAll(aliveBucket)).thenReturn(List.of(RevocationKey.of("jti-db")));
+
+        cache.loadFromDatabase();
+
+        assertEquals(1, cache.size());
+        assertTrue(cache.isRevoked("jti-db", expiryDate));
+        verify(bucketRepository, never()).findAll(deadBucket); // Los buckets caducados no se cargan
+        verify(bucketRepository, atLeastOnce()).createBucket(anyLong()); // Tablas de los próximos intervalos
+    }
+
+    @Test
+    void testLoadFromDatabaseMigratesLegacyRows() {
+        Date expiryDate = inMillis(60_000);
+        RevokedToken withJti = new RevokedToken("jwt-con-jti", "jti-legacy", expiryDate);
+        withJti.setId(11L);
+        RevokedToken withoutJti = new RevokedToken("jwt-sin-jti", expiryDate);
+        withoutJti.setId(12L);
+        when(bucketRepository.findLegacyWatermark()).thenReturn(10L);
+        when(legacyRepository.findByIdGreaterThanAndExpiryDateAfterOrderById(eq(10L), any(Date.class))).thenReturn(List.of(withJti, withoutJti));
+        when(bucketRepository.findLegacyBuckets(bucketOf(new Date(clock.millis()))))
+                .thenReturn(Map.of("jti-bucket", expiryDate));
+
+        cache.loadFromDatabase();
+
+        // Cada token vivo se vuelve a revocar con su clave de 16 bytes; las filas antiguas no se tocan
+        assertEquals(3, cache.size());
+        assertTrue(cache.isRevoked("jti-legacy", expiryDate));
+        assertTrue(cache.isRevoked("jwt-sin-jti", expiryDate));
+        assertTrue(cache.isRevoked("jti-bucket", expiryDate));
+        verify(bucketRepository, times(3)).insert(eq(bucketOf(expiryDate)), any(byte[].class), eq(expiryDate));
+        verify(bucketRepository).saveLegacyWatermark(12L);
+        verify(legacyRepository, never()).deleteAllInBatch();
+        verify(legacyRepository, never()).deleteAll();
+    }
+
+    @Test
+    void testEvictionKeepsMigratingTokensRevokedByOlderNodes() {
+        Date expiryDate = inMillis(120_000);
+        cache.loadFromDatabase(); // Sin filas antiguas todavía
+
+        // Una instancia con la versión anterior revoca un token después del arranque
+        RevokedToken legacy = new RevokedToken("jwt-antiguo", "jti-antiguo", expiryDate);
+        legacy.setId(21L);
+        when(legacyRepository.findByIdGreaterThanAndExpiryDateAfterOrderById(anyLong(), any(Date.class))).thenReturn(List.of(legacy));
+        when(bucketRepository.findLegacyBuckets(anyLong())).thenReturn(Map.of());
+
+        cache.evictExpired();
+        assertTrue(cache.isRevoked("jti-antiguo", expiryDate));
+        verify(bucketRepository).saveLegacyWatermark(21L);
+
+        // Si la marca no avanzara (otra consulta la ve igual), la clave ya está en memoria: no se repite el INSERT
+        cache.evictExpired();
+        verify(bucketRepository, times(1)).insert(anyLong(), any(byte[].class), eq(expiryDate));
+    }
+
+    @Test
+    void testManyRevocationsInOneBucket() {
+        Date expiryDate = inMillis(60_000);
+        for (int i = 0; i < 500; i++) {
+            cache.revoke("jti-" + i, expiryDate);
+        }
+
+        assertEquals(500, cache.size());
+        for (int i = 0; i < 500; i++) {
+            assertTrue(cache.isRevoked("jti-" + i, expiryDate));
+        }
+        cache.revoke("jti-0", expiryDate); // Un logout repetido no duplica la clave
+        assertEquals(500, cache.size());
+    }
+
+    @Test
+    void testEvictExpiredDropsWholeBuckets() {
+        Date soon = inMillis(30_000);
+        Date later = inMillis(5 * BUCKET_MS);
+        cache.revoke("soon", soon);
+        cache.revoke("later", later);
+
+        // Pasado el intervalo de "soon", su bucket entero se descarta
+        clock.advanceMillis(2 * BUCKET_MS);
+        cache.evictExpired();
+
+        verify(bucketRepository).dropBefore(bucketOf(new Date(clock.millis())));
+        assertEquals(1, cache.size());
+        assertTrue(cache.isRevoked("later", later));
+        // El bucket caducado ya no existe en memoria: se responde sin consultar la BD
+        assertFalse(cache.isRevoked("soon", soon));
+        verify(bucketRepository, never()).exists(anyLong(), any(byte[].class));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advanceMillis(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
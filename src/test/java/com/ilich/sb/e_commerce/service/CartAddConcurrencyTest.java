@@ -0,0 +1,96 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.*;
+import com.ilich.sb.e_commerce.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Adds concurrentes del mismo producto al mismo carrito contra H2: el upsert debe sumar todas las
+ * cantidades en una única fila. Sin transacción de test, por eso se limpia todo en @AfterEach.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CartAddConcurrencyTest {
+
+    private static final int ADDS = 400;
+    private static final int THREADS = 16;
+
+    @Autowired
+    private ICartService cartService;
+    @Autowired
+    private IUserRepository userRepository;
+    @Autowired
+    private ICategoryRepository categoryRepository;
+    @Autowired
+    private IProductRepository productRepository;
+    @Autowired
+    private ICartRepository cartRepository;
+    @Autowired
+    private ICartItemRepository cartItemRepository;
+
+    private User buyer;
+    private Cart cart;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        Category category = categoryRepository.save(new Category("CartConcurrency"));
+        product = productRepository.save(new Product("Keyboard", "Mechanical keyboard", new BigDecimal("80.00"), 100000, category));
+        buyer = userRepository.save(new User("cartbuyer", "password")); // Sin autenticación: la contraseña no se usa
+        cart = cartRepository.save(new Cart(buyer));
+    }
+
+    @AfterEach
+    void tearDown() {
+        cartItemRepository.deleteAllInBatch();
+        cartRepository.deleteAllInBatch(List.of(cart));
+        userRepository.deleteAllInBatch(List.of(buyer));
+        productRepository.deleteAllInBatch(List.of(product));
+        categoryRepository.deleteAllInBatch(List.of(product.getCategory()));
+    }
+
+    @Test
+    void parallelAdds_SumQuantitiesInASingleRow() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        int expected = 0;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < ADDS; i++) {
+                int quantity = i % 3 + 1;
+                expected += quantity;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    cartService.addProductToCart(buyer, product.getId(), quantity);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(); // Propaga cualquier excepción de los adds
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Set<CartItem> items = cartItemRepository.findByCart(cart);
+        assertEquals(1, items.size(), "Nunca debe duplicarse la fila (cart_id, product_id)");
+        assertEquals(expected, items.iterator().next().getQuantity());
+    }
+}
@@ -5,6 +5,8 @@ import com.ilich.sb.e_commerce.model.CartItem;
 import com.ilich.sb.e_commerce.model.Category; // Necesario si Product tiene Category
 import com.ilich.sb.e_commerce.model.Product;
 import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.request.CartItemOperationDTO;
+import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
 import com.ilich.sb.e_commerce.repository.ICartItemRepository;
 import com.ilich.sb.e_commerce.repository.ICartRepository;
 import com.ilich.sb.e_commerce.repository.IProductRepository;
@@ -20,6 +22,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -38,6 +42,9 @@ public class CartServiceTest {
     @Mock // Mock del repositorio de productos (ya que CartService lo usa)
     private IProductRepository productRepository;
 
+    @Mock
+    private IStockReservationService stockReservationService;
+
     @InjectMocks // Inyecta los mocks en una instancia real de CartServiceImpl
     private CartServiceImpl cartService; // Asegúrate de que coincida con tu implementación
 
@@ -104,36 +111,28 @@ public class CartServiceTest {
 
     @Test
     void testAddProductToCart_NewItem() {
-        // Limpiar cartItems en userCart para este test
-        userCart.getCartItems().clear();
-
         // Simular el carrito del usuario
         when(cartRepository.findByUser(testUser)).thenReturn(Optional.of(userCart));
         // Simular que el producto existe
         when(productRepository.findById(testProduct2.getId())).thenReturn(Optional.of(testProduct2));
-        // Simular que no hay un CartItem existente para este producto en el carrito
-        when(cartItemRepository.findByCartAndProduct(userCart, testProduct2)).thenReturn(Optional.empty());
-        // Simular el guardado de un nuevo CartItem
-        when(cartItemRepository.save(any(CartItem.class))).thenAnswer(invocation -> {
-            CartItem savedItem = invocation.getArgument(0);
-            savedItem.setId(302L); // Asignar un ID para el nuevo item guardado
-            return savedItem;
-        });
+        // Simular el upsert: el producto no estaba en el carrito, se inserta con la cantidad pedida
+        when(cartItemRepository.addQuantity(userCart.getId(), testProduct2.getId(), 3))
+                .thenReturn(new ICartItemRepository.UpsertedCartItem(302L, 3));
 
         CartItem resultItem = cartService.addProductToCart(testUser, testProduct2.getId(), 3);
 
         assertNotNull(resultItem);
+        assertEquals(302L, resultItem.getId());
         assertEquals(testProduct2.getId(), resultItem.getProduct().getId());
         assertEquals(3, resultItem.getQuantity());
         assertEquals(userCart.getId(), resultItem.getCart().getId());
 
         verify(cartRepository, times(1)).findByUser(testUser);
         verify(productRepository, times(1)).findById(testProduct2.getId());
-        verify(cartItemRepository, times(1)).findByCartAndProduct(userCart, testProduct2);
-        verify(cartItemRepository, times(1)).save(any(CartItem.class));
-
-        // Verificar que el item se añadió a la colección del carrito
-        assertTrue(userCart.getCartItems().contains(resultItem));
+        // Una sola sentencia de escritura: ni búsqueda previa del ítem ni save
+        verify(cartItemRepository, never()).findByCartAndProduct(any(Cart.class), any(Product.class));
+        verify(cartItemRepository, never()).save(any(CartItem.class));
+        verify(stockReservationService, times(1)).hold(userCart.getId(), testProduct2, 3);
     }
 
     @Test
@@ -144,22 +143,40 @@ public class CartServiceTest {
         when(cartRepository.findByUser(testUser)).thenReturn(Optional.of(userCart));
         // Simular que el producto existe
         when(productRepository.findById(testProduct1.getId())).thenReturn(Optional.of(testProduct1));
-        // Simular que el CartItem ya existe para testProduct1
-        when(cartItemRepository.findByCartAndProduct(userCart, testProduct1)).thenReturn(Optional.of(cartItem1));
-        // Simular el guardado (actualización) del CartItem
-        when(cartItemRepository.save(any(CartItem.class))).thenReturn(cartItem1);
+        // Simular el upsert: la fila ya existía y la BD suma la cantidad
+        when(cartItemRepository.addQuantity(userCart.getId(), testProduct1.getId(), 5))
+                .thenReturn(new ICartItemRepository.UpsertedCartItem(cartItem1.getId(), 7));
 
         CartItem resultItem = cartService.addProductToCart(testUser, testProduct1.getId(), 5);
 
         assertNotNull(resultItem);
+        assertEquals(cartItem1.getId(), resultItem.getId());
         assertEquals(testProduct1.getId(), resultItem.getProduct().getId());
         assertEquals(7, resultItem.getQuantity()); // 2 (original) + 5 (añadido)
         assertEquals(userCart.getId(), resultItem.getCart().getId());
 
         verify(cartRepository, times(1)).findByUser(testUser);
         verify(productRepository, times(1)).findById(testProduct1.getId());
-        verify(cartItemRepository, times(1)).findByCartAndProduct(userCart, testProduct1);
-        verify(cartItemRepository, times(1)).save(cartItem1); // Se guarda la misma instancia de cartItem1
+        verify(cartItemRepository, never()).save(any(CartItem.class));
+        verify(stockReservationService, times(1)).hold(userCart.getId(), testProduct1, 7); // Reserva la cantidad total
+    }
+
+    @Test
+    void testAddProductToCart_NotEnoughAvailableStock_ThrowsException() {
+        when(cartRepository.findByUser(testUser)).thenReturn(Optional.of(userCart));
+        when(productRepository.findById(testProduct2.getId())).thenReturn(Optional.of(testProduct2));
+        when(cartItemRepository.addQuantity(userCart.getId(), testProduct2.getId(), 3))
+                .thenReturn(new ICartItemRepository.UpsertedCartItem(302L, 3));
+        // Otros carritos tienen reservado el stock
+        doThrow(new RuntimeException("Not enough stock for product: Mouse Z. Available: 0, Requested: 3"))
+                .when(stockReservationService).hold(userCart.getId(), testProduct2, 3);
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () ->
+                cartService.addProductToCart(testUser, testProduct2.getId(), 3));
+
+        // La excepción marca la transacción para rollback, lo que deshace el upsert
+        assertTrue(thrown.getMessage().contains("Not enough stock for product: Mouse Z"));
+        verify(cartItemRepository, never()).save(any(CartItem.class));
     }
 
     @Test
@@ -292,15 +309,16 @@ public class CartServiceTest {
     void testClearCart_Success() {
         // `userCart` ya contiene `cartItem1` del `setUp`
         when(cartRepository.findByUser(testUser)).thenReturn(Optional.of(userCart));
-        doNothing().when(cartItemRepository).deleteAll(anySet()); // Simula la eliminación de todos los ítems
-        when(cartRepository.save(any(Cart.class))).thenReturn(userCart); // Simula que el carrito vacío se guarda
+        when(cartItemRepository.findProductIdsByCartId(userCart.getId())).thenReturn(List.of(testProduct1.getId()));
+        when(cartItemRepository.deleteAllByCartId(userCart.getId())).thenReturn(1);
 
         cartService.clearCart(testUser);
 
         verify(cartRepository, times(1)).findByUser(testUser);
-        verify(cartItemRepository, times(1)).deleteAll(userCart.getCartItems()); // Verifica que se llamo con la colección correcta
-        verify(cartRepository, times(1)).save(userCart);
-        assertTrue(userCart.getCartItems().isEmpty()); // Verifica que la colección en memoria está vacía
+        verify(cartItemRepository, times(1)).deleteAllByCartId(userCart.getId()); // Un único DELETE por carrito
+        verify(cartItemRepository, never()).deleteAll(anyIterable()); // Sin cargar ni borrar ítem a ítem
+        verify(cartItemRepository, never()).findByCart(any(Cart.class));
+        verify(stockReservationService, times(1)).release(userCart.getId(), testProduct1.getId());
     }
 
     @Test
@@ -360,4 +378,41 @@ public class CartServiceTest {
         assertEquals(BigDecimal.ZERO, total);
         verify(cartRepository, times(1)).findByUser(testUser);
     }
+
+    @Test
+    void testGetCartView_NoCart_CreatesEmptyCart() {
+        when(cartRepository.findCartViewByUser(testUser)).thenReturn(List.of()); // El usuario aún no tiene carrito
+        when(cartRepository.findByUser(testUser)).thenReturn(Optional.empty());
+        when(cartRepository.save(any(Cart.class))).thenReturn(userCart);
+
+        CartResponseDTO cart = cartService.getCartView(testUser);
+
+        assertEquals(userCart.getId(), cart.getCartId());
+        assertTrue(cart.getItems().isEmpty());
+        assertEquals(BigDecimal.ZERO, cart.getTotal());
+        verify(cartItemRepository, never()).findByCart(any(Cart.class)); // Sin consultas por ítem
+    }
+
+    @Test
+    void testUpdateCartItems_LoadsProductsOnceAndWritesFinalQuantitiesInBatch() {
+        // Carrito actual: testProduct1 x2
+        ICartRepository.CartView row = mock(ICartRepository.CartView.class);
+        when(row.getCartId()).thenReturn(userCart.getId());
+        when(row.getCartItemId()).thenReturn(cartItem1.getId());
+        when(row.getProductId()).thenReturn(testProduct1.getId());
+        when(row.getQuantity()).thenReturn(2);
+        when(cartRepository.findCartViewByUser(testUser)).thenReturn(List.of(row));
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(testProduct1, testProduct2));
+
+        cartService.updateCartItems(testUser, List.of(
+                new CartItemOperationDTO(testProduct1.getId(), null, -5), // 2 - 5: se elimina
+                new CartItemOperationDTO(testProduct2.getId(), null, 2),
+                new CartItemOperationDTO(testProduct2.getId(), null, 1)));
+
+        verify(productRepository, times(1)).findAllById(anyIterable()); // Una sola consulta IN
+        verify(productRepository, never()).findById(anyLong());
+        verify(cartItemRepository, times(1)).setQuantities(userCart.getId(), Map.of(testProduct1.getId(), 0, testProduct2.getId(), 3));
+        verify(stockReservationService, times(1)).hold(userCart.getId(), testProduct1, 0); // Libera la reserva
+        verify(stockReservationService, times(1)).hold(userCart.getId(), testProduct2, 3);
+    }
 }
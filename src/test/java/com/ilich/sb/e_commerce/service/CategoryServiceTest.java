@@ -1,5 +1,6 @@
 package com.ilich.sb.e_commerce.service;
 
+import com.ilich.sb.e_commerce.cache.ProductCatalogCache;
 import com.ilich.sb.e_commerce.model.Category;
 import com.ilich.sb.e_commerce.repository.ICategoryRepository;
 import com.ilich.sb.e_commerce.service.impl.CategoryServiceImpl;
@@ -23,6 +24,9 @@ public class CategoryServiceTest {
     @Mock // Crea un mock del CategoryRepository
     private ICategoryRepository categoryRepository;
 
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
     @InjectMocks // Inyecta los mocks (categoryRepository) en esta instancia de CategoryService
     private CategoryServiceImpl categoryService;
 
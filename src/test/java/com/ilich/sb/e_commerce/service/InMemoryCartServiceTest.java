@@ -0,0 +1,262 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.*;
+import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
+import com.ilich.sb.e_commerce.repository.*;
+import com.ilich.sb.e_commerce.service.impl.InMemoryCartServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * InMemoryCartServiceImpl contra H2. El flush programado se retrasa para que los tests decidan cuándo se guarda,
+ * y la caché admite pocos carritos para que se desalojen. Sin transacción de test: se limpia todo en @AfterEach.
+ */
+@SpringBootTest(properties = {
+        "ecommerce.app.cart.store=memory",
+        "ecommerce.app.cart.maximum-size=4",
+        "ecommerce.app.cart.flush-ms=3600000"
+})
+@ActiveProfiles("test")
+public class InMemoryCartServiceTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private ICartService cartService;
+    @Autowired
+    private IOrderService orderService;
+    @Autowired
+    private IUserRepository userRepository;
+    @Autowired
+    private ICategoryRepository categoryRepository;
+    @Autowired
+    private IProductRepository productRepository;
+    @Autowired
+    private ICartRepository cartRepository;
+    @Autowired
+    private ICartItemRepository cartItemRepository;
+    @Autowired
+    private IOrderRepository orderRepository;
+    @Autowired
+    private IOrderItemRepository orderItemRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final List<User> buyers = new ArrayList<>();
+    private Category category;
+    private Product laptop;
+    private Product mouse;
+
+    @BeforeEach
+    void setUp() {
+        category = categoryRepository.save(new Category("InMemoryCart"));
+        laptop = productRepository.save(new Product("Laptop Pro", "Powerful laptop", new BigDecimal("1200.00"), 100000, category));
+        mouse = productRepository.save(new Product("Mouse Wireless", "Ergonomic mouse", new BigDecimal("25.00"), 100000, category));
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            users.add(new User("memorybuyer" + i, "password")); // Sin autenticación: la contraseña no se usa
+        }
+        buyers.addAll(userRepository.saveAll(users));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ((InMemoryCartServiceImpl) cartService).flush();
+        orderItemRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        cartItemRepository.deleteAllInBatch();
+        cartRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch(buyers);
+        productRepository.deleteAllInBatch(List.of(laptop, mouse));
+        categoryRepository.deleteAllInBatch(List.of(category));
+    }
+
+    @Test
+    void changesAreServedFromMemoryAndCoalescedOnFlush() {
+        User buyer = buyers.get(0);
+        cartService.addProductToCart(buyer, laptop.getId(), 1);
+        cartService.addProductToCart(buyer, laptop.getId(), 2);
+        cartService.addProductToCart(buyer, mouse.getId(), 4);
+        cartService.updateProductQuantity(buyer, mouse.getId(), 1);
+
+        CartResponseDTO view = cartService.getCartView(buyer);
+        assertEquals(2, view.getItems().size());
+        assertEquals(0, new BigDecimal("3625.00").compareTo(view.getTotal()));
+        Cart cart = cartRepository.findByUser(buyer).orElseThrow();
+        assertTrue(cartItemRepository.findByCart(cart).isEmpty(), "Nada se escribe en cart_items antes del flush");
+
+        assertEquals(1, ((InMemoryCartServiceImpl) cartService).flush());
+
+        Set<CartItem> items = cartItemRepository.findByCart(cart);
+        assertEquals(2, items.size());
+        for (CartItem item : items) {
+            assertEquals(item.getProduct().getId().equals(laptop.getId()) ? 3 : 1, item.getQuantity());
+        }
+
+        cartService.removeProductFromCart(buyer, mouse.getId());
+        ((InMemoryCartServiceImpl) cartService).flush();
+        assertEquals(1, cartItemRepository.findByCart(cart).size());
+    }
+
+    @Test
+    void parallelAdds_AreSerializedPerCart() throws Exception {
+        User buyer = buyers.get(0);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        int expected = 0;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                int quantity = i % 3 + 1;
+                expected += quantity;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    cartService.addProductToCart(buyer, laptop.getId(), quantity);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(); // Propaga cualquier excepción de los adds
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ((InMemoryCartServiceImpl) cartService).flush();
+        Set<CartItem> items = cartItemRepository.findByCart(cartRepository.findByUser(buyer).orElseThrow());
+        assertEquals(1, items.size());
+        assertEquals(expected, items.iterator().next().getQuantity());
+    }
+
+    @Test
+    void evictedCartsKeepTheirPendingChanges() {
+        // Más carritos que los que caben en memoria: los primeros se desalojan antes del flush
+        for (User buyer : buyers) {
+            cartService.addProductToCart(buyer, mouse.getId(), 2);
+        }
+        cartService.addProductToCart(buyers.get(0), mouse.getId(), 1);
+        assertEquals(3, cartService.getCartItems(buyers.get(0)).iterator().next().getQuantity());
+
+        assertEquals(buyers.size(), ((InMemoryCartServiceImpl) cartService).flush());
+        for (User buyer : buyers) {
+            Set<CartItem> items = cartItemRepository.findByCart(cartRepository.findByUser(buyer).orElseThrow());
+            assertEquals(buyer == buyers.get(0) ? 3 : 2, items.iterator().next().getQuantity());
+        }
+    }
+
+    @Test
+    void flush_DropsOnlyTheLinesTheDatabaseRejects() {
+        User buyer = buyers.get(0);
+        User sameStripe = neighbourInSameStripe(buyer);
+        Product discontinued = productRepository.save(new Product("Discontinued", "Soon deleted", new BigDecimal("5.00"), 10, category));
+        cartService.addProductToCart(buyer, laptop.getId(), 1);
+        cartService.addProductToCart(buyer, discontinued.getId(), 1);
+        cartService.addProductToCart(sameStripe, mouse.getId(), 3);
+        // El producto desaparece antes del flush: su línea viola la FK de cart_items
+        jdbcTemplate.update("DELETE FROM stock_reservation WHERE product_id = ?", discontinued.getId());
+        productRepository.deleteAllInBatch(List.of(discontinued));
+        double droppedBefore = meterRegistry.counter("cart.flush.dropped").count();
+
+        ((InMemoryCartServiceImpl) cartService).flush();
+
+        // El resto de la franja y del propio carrito se guardan; la línea rechazada se descarta
+        Set<CartItem> neighbourItems = cartItemRepository.findByCart(cartRepository.findByUser(sameStripe).orElseThrow());
+        assertEquals(3, neighbourItems.iterator().next().getQuantity());
+        Set<CartItem> buyerItems = cartItemRepository.findByCart(cartRepository.findByUser(buyer).orElseThrow());
+        assertEquals(1, buyerItems.size());
+        assertEquals(laptop.getId(), buyerItems.iterator().next().getProduct().getId());
+        assertEquals(1, cartService.getCartItems(buyer).size());
+        assertEquals(droppedBefore + 1, meterRegistry.counter("cart.flush.dropped").count());
+        assertEquals(0, ((InMemoryCartServiceImpl) cartService).flush(), "No queda nada pendiente");
+    }
+
+    @Test
+    void checkout_FlushesTheCartFirst() {
+        User buyer = buyers.get(0);
+        cartService.addProductToCart(buyer, laptop.getId(), 1);
+        cartService.addProductToCart(buyer, mouse.getId(), 2);
+
+        Order order = orderService.createOrderFromCart(buyer);
+
+        assertEquals(2, orderItemRepository.count());
+        assertEquals(0, new BigDecimal("1250.00").compareTo(order.getTotalAmount()));
+        assertTrue(cartService.getCartView(buyer).getItems().isEmpty(), "El carrito se vacía también en memoria");
+        assertEquals(99999, productRepository.findById(laptop.getId()).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    void checkout_BlocksOnlyItsOwnCart() throws Exception {
+        User buyer = buyers.get(0);
+        User sameStripe = neighbourInSameStripe(buyer);
+        cartService.addProductToCart(buyer, laptop.getId(), 1);
+        cartService.addProductToCart(sameStripe, mouse.getId(), 1);
+
+        CountDownLatch checkedOut = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> checkout = executor.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                cartService.syncToDatabase(buyer);
+                checkedOut.countDown();
+                try {
+                    finish.await(); // La transacción del pedido sigue abierta
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(checkedOut.await(10, TimeUnit.SECONDS));
+
+            // El vecino de franja no espera al checkout; el propio comprador sí
+            executor.submit(() -> cartService.addProductToCart(sameStripe, mouse.getId(), 1)).get(10, TimeUnit.SECONDS);
+            Future<?> ownAdd = executor.submit(() -> cartService.addProductToCart(buyer, laptop.getId(), 1));
+            assertThrows(TimeoutException.class, () -> ownAdd.get(500, TimeUnit.MILLISECONDS));
+
+            finish.countDown();
+            checkout.get(10, TimeUnit.SECONDS);
+            ownAdd.get(10, TimeUnit.SECONDS);
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+
+        // Sin pedido, el commit solo guardó el carrito: el add posterior lo recarga de la BD
+        assertEquals(2, cartService.getCartItems(buyer).iterator().next().getQuantity());
+        assertEquals(2, cartService.getCartItems(sameStripe).iterator().next().getQuantity());
+    }
+
+    // Otro usuario en la misma franja (64 franjas por id de usuario)
+    private User neighbourInSameStripe(User buyer) {
+        User neighbour;
+        do {
+            neighbour = userRepository.save(new User("memoryneighbour" + buyers.size(), "password"));
+            buyers.add(neighbour);
+        } while ((neighbour.getId() - buyer.getId()) % 64 != 0);
+        return neighbour;
+    }
+}
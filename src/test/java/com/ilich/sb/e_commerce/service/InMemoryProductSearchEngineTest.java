@@ -0,0 +1,83 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.Category;
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.repository.IProductRepository;
+import com.ilich.sb.e_commerce.service.IProductSearchEngine.SearchHit;
+import com.ilich.sb.e_commerce.service.impl.InMemoryProductSearchEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class InMemoryProductSearchEngineTest {
+
+    private InMemoryProductSearchEngine engine;
+    private Category electronics;
+    private Category books;
+
+    @BeforeEach
+    void setUp() {
+        engine = new InMemoryProductSearchEngine(mock(IProductRepository.class), mock(PlatformTransactionManager.class));
+        electronics = new Category(1L, "Electronics");
+        books = new Category(2L, "Books");
+
+        engine.index(product(1L, "Laptop Pro", "Potente portátil para programación", "1200.00", electronics));
+        engine.index(product(2L, "Funda", "Funda acolchada para laptop de 15 pulgadas", "30.00", electronics));
+        engine.index(product(3L, "Canción de hielo", "Novela de fantasía épica", "25.00", books));
+        engine.index(product(4L, "Laptop Air", "Ligero y silencioso", "900.00", electronics));
+    }
+
+    private static Product product(Long id, String name, String description, String price, Category category) {
+        return new Product(id, name, description, new BigDecimal(price), 10, category);
+    }
+
+    private static List<Long> ids(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void testSearch_NameMatchesRankAboveDescriptionMatches() {
+        List<Long> result = ids(engine.search("laptop", null, null, null));
+
+        assertEquals(3, result.size());
+        assertEquals(2L, result.get(2), "La coincidencia solo en la descripción debe quedar la última.");
+    }
+
+    @Test
+    void testSearch_IgnoresCaseAndAccentsAndMatchesPrefixes() {
+        assertEquals(List.of(3L), ids(engine.search("CANCION", null, null, null)));
+        assertEquals(List.of(3L), ids(engine.search("fanta", null, null, null)));
+    }
+
+    @Test
+    void testSearch_RequiresAllTerms() {
+        assertEquals(List.of(4L), ids(engine.search("laptop ligero", null, null, null)));
+        assertTrue(engine.search("laptop novela", null, null, null).isEmpty());
+    }
+
+    @Test
+    void testSearch_AppliesPriceAndCategoryFilters() {
+        assertEquals(List.of(4L), ids(engine.search("laptop", 100.0, 1000.0, null)));
+        assertTrue(engine.search("laptop", null, null, 2L).isEmpty());
+        // Como en las Specifications, el rango de precio solo se aplica si vienen ambos límites
+        assertEquals(3, engine.search("laptop", 100.0, null, 1L).size());
+    }
+
+    @Test
+    void testIndexAndRemove_KeepIndexCurrent() {
+        engine.index(product(4L, "Ultrabook Air", "Ligero y silencioso", "900.00", electronics));
+        assertFalse(ids(engine.search("laptop", null, null, null)).contains(4L));
+        assertEquals(List.of(4L), ids(engine.search("ultrabook", null, null, null)));
+
+        engine.remove(1L);
+        assertEquals(List.of(2L), ids(engine.search("laptop", null, null, null)));
+        assertEquals(3, engine.size());
+    }
+}
@@ -0,0 +1,205 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.*;
+import com.ilich.sb.e_commerce.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cuenta las llamadas JDBC (execute/executeQuery/executeUpdate/executeBatch) de un checkout de un carrito
+ * de 30 líneas, en H2. Sólo se cuentan las del hilo del test (los @Scheduled quedan fuera).
+ *
+ * Antes (ids IDENTITY, sin batching y productRepository.save por producto) el mismo checkout hacía
+ * 123 llamadas: una SELECT, un UPDATE, un INSERT de order_items y un DELETE de cart_items por
+ * cada línea, más 3 sentencias fijas. Ahora son 11: 3 de secuencias, 4 SELECT y un executeBatch por tabla.
+ *
+ * Un executeBatch no es siempre una sola ida y vuelta: cuántas hace depende del driver. Con MySQL hace
+ * falta rewriteBatchedStatements en la URL, y este test no lo comprueba.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class OrderCheckoutRoundTripTest {
+
+    private static final int CART_LINES = 30;
+
+    @Autowired
+    private IOrderService orderService;
+    @Autowired
+    private IUserRepository userRepository;
+    @Autowired
+    private ICategoryRepository categoryRepository;
+    @Autowired
+    private IProductRepository productRepository;
+    @Autowired
+    private ICartRepository cartRepository;
+    @Autowired
+    private ICartItemRepository cartItemRepository;
+    @Autowired
+    private IOrderRepository orderRepository;
+    @Autowired
+    private IOrderItemRepository orderItemRepository;
+    @Autowired
+    private RoundTripCounter counter;
+
+    private User buyer;
+    private Category category;
+    private List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        category = categoryRepository.save(new Category("RoundTrips"));
+        List<Product> newProducts = new ArrayList<>();
+        for (int i = 0; i < CART_LINES; i++) {
+            newProducts.add(new Product("Product " + i, "Description " + i, new BigDecimal("10.00"), 100, category));
+        }
+        products = productRepository.saveAll(newProducts);
+        buyer = userRepository.save(new User("roundtripbuyer", "password"));
+        Cart cart = cartRepository.save(new Cart(buyer));
+        cartItemRepository.saveAll(products.stream().map(product -> new CartItem(cart, product, 2)).toList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderItemRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        cartItemRepository.deleteAllInBatch();
+        cartRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch(List.of(buyer));
+        productRepository.deleteAllInBatch(products);
+        categoryRepository.deleteAllInBatch(List.of(category));
+    }
+
+    @Test
+    void checkout_BatchesOrderItemInsertsAndStockUpdates() {
+        counter.start();
+        Order order = orderService.createOrderFromCart(buyer);
+        List<String> executed = counter.stop();
+
+        assertEquals(CART_LINES, orderItemRepository.count());
+        assertEquals(98, productRepository.findById(products.get(0).getId()).orElseThrow().getStockQuantity());
+        assertNotNull(order.getId());
+
+        // Un único batch por tabla, sea cual sea el número de líneas del carrito
+        assertEquals(1, count(executed, "insert into order_items"), () -> "SQL ejecutado: " + executed);
+        assertEquals(1, count(executed, "update product"), () -> "SQL ejecutado: " + executed);
+        assertEquals(1, count(executed, "delete from cart_items"), () -> "SQL ejecutado: " + executed);
+        assertTrue(executed.size() <= 12, () -> executed.size() + " llamadas JDBC: " + executed);
+    }
+
+    private static long count(List<String> executed, String prefix) {
+        return executed.stream().filter(sql -> sql.startsWith(prefix)).count();
+    }
+
+    @TestConfiguration
+    static class RoundTripCounterConfig {
+
+        @Bean
+        RoundTripCounter roundTripCounter() {
+            return new RoundTripCounter();
+        }
+
+        @Bean
+        static BeanPostProcessor countingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? new CountingDataSource(dataSource) : bean;
+                }
+            };
+        }
+    }
+
+    /**
+     * Registra el SQL de cada ejecución hecha por el hilo que llamó a start().
+     */
+    static class RoundTripCounter {
+        private static volatile Thread recordingThread;
+        private static final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+        void start() {
+            executed.clear();
+            recordingThread = Thread.currentThread();
+        }
+
+        List<String> stop() {
+            recordingThread = null;
+            return new ArrayList<>(executed);
+        }
+
+        static void record(String sql) {
+            if (Thread.currentThread() == recordingThread) {
+                executed.add(sql == null ? "" : sql.trim().replaceAll("\\s+", " ").toLowerCase());
+            }
+        }
+    }
+
+    static class CountingDataSource extends DelegatingDataSource {
+
+        CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrapConnection(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrapConnection(super.getConnection(username, password));
+        }
+
+        private static Connection wrapConnection(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof Statement statement && method.getName().startsWith("prepare")) {
+                            return wrapStatement(statement, method.getReturnType(), (String) args[0]);
+                        }
+                        if (result instanceof Statement statement) {
+                            return wrapStatement(statement, method.getReturnType(), null);
+                        }
+                        return result;
+                    });
+        }
+
+        private static Object wrapStatement(Statement statement, Class<?> type, String preparedSql) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute")) {
+                            RoundTripCounter.record(preparedSql != null || args == null ? preparedSql : (String) args[0]);
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
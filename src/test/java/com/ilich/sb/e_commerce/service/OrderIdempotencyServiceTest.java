@@ -0,0 +1,187 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ilich.sb.e_commerce.model.IdempotencyRecord;
+import com.ilich.sb.e_commerce.model.OrderStatus;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.response.OrderResponse;
+import com.ilich.sb.e_commerce.repository.IIdempotencyRecordRepository;
+import com.ilich.sb.e_commerce.service.impl.OrderIdempotencyServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OrderIdempotencyServiceTest {
+
+    @Mock
+    private IIdempotencyRecordRepository idempotencyRecordRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private OrderIdempotencyServiceImpl idempotencyService;
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new OrderIdempotencyServiceImpl(idempotencyRecordRepository, objectMapper, transactionManager, 24, 60, 100);
+        testUser = new User(1L, "testuser", "encodedpassword");
+    }
+
+    @Test
+    void concurrentDuplicates_ShouldWaitForTheFirstAttempt() throws Exception {
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(idempotencyRecordRepository.complete(any(), any(), anyInt(), any(), any())).thenReturn(1);
+        AtomicInteger placements = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ResponseEntity<OrderResponse>> first = executor.submit(() -> idempotencyService.placeOnce(testUser, "key-1", () -> {
+                placements.incrementAndGet();
+                started.countDown();
+                await(release);
+                return ResponseEntity.status(HttpStatus.CREATED).body(orderResponse(10L));
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<ResponseEntity<OrderResponse>> duplicate = executor.submit(() -> idempotencyService.placeOnce(testUser, "key-1", () -> {
+                placements.incrementAndGet();
+                return ResponseEntity.status(HttpStatus.CREATED).body(orderResponse(11L));
+            }));
+            Thread.sleep(200); // El duplicado queda esperando al primer intento
+            release.countDown();
+
+            assertEquals(10L, first.get(5, TimeUnit.SECONDS).getBody().getOrderId());
+            ResponseEntity<OrderResponse> replayed = duplicate.get(5, TimeUnit.SECONDS);
+            assertEquals(HttpStatus.CREATED, replayed.getStatusCode());
+            assertEquals(10L, replayed.getBody().getOrderId());
+            assertEquals("true", replayed.getHeaders().getFirst(OrderIdempotencyServiceImpl.REPLAYED_HEADER));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, placements.get());
+        verify(idempotencyRecordRepository).complete(any(), any(), eq(201), any(), notNull());
+    }
+
+    @Test
+    void replay_ShouldUseTheStoredResponse_WhenItIsNotInMemory() throws Exception {
+        IdempotencyRecord record = new IdempotencyRecord(1L, "key-1", Instant.now().plusSeconds(60), null);
+        record.setHttpStatus(202);
+        record.setLocation("/api/orders/10");
+        record.setResponseBody(objectMapper.writeValueAsString(orderResponse(10L)));
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.of(record));
+
+        ResponseEntity<OrderResponse> replayed = idempotencyService.placeOnce(testUser, "key-1", () -> {
+            throw new AssertionError("No debe crear otro pedido");
+        });
+
+        assertEquals(HttpStatus.ACCEPTED, replayed.getStatusCode());
+        assertEquals(URI.create("/api/orders/10"), replayed.getHeaders().getLocation());
+        assertEquals(10L, replayed.getBody().getOrderId());
+        assertEquals(OrderStatus.PENDING, replayed.getBody().getStatus());
+        verify(idempotencyRecordRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void failedPlacement_ShouldReleaseTheKey() {
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(idempotencyRecordRepository.complete(any(), any(), anyInt(), any(), any())).thenReturn(1);
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> idempotencyService.placeOnce(testUser, "key-1", () -> {
+            throw new RuntimeException("Cannot create an order from an empty cart.");
+        }));
+        assertEquals("Cannot create an order from an empty cart.", exception.getMessage());
+        verify(idempotencyRecordRepository).release(any(), any());
+
+        // La clave vuelve a estar libre: un reintento sí crea el pedido
+        ResponseEntity<OrderResponse> response = idempotencyService.placeOnce(testUser, "key-1",
+                () -> ResponseEntity.status(HttpStatus.CREATED).body(orderResponse(10L)));
+        assertEquals(10L, response.getBody().getOrderId());
+    }
+
+    @Test
+    void placeOnce_ShouldReturnConflict_WhenTheKeyIsInProgressElsewhere() {
+        // Sin respuesta y con el lease vigente
+        IdempotencyRecord record = new IdempotencyRecord(1L, "key-1", Instant.now().plusSeconds(3600), Instant.now().plusSeconds(60));
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.of(record));
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> idempotencyService.placeOnce(testUser, "key-1",
+                () -> ResponseEntity.status(HttpStatus.CREATED).body(orderResponse(10L))));
+
+        assertEquals("A request with this Idempotency-Key is still in progress.", exception.getMessage());
+        verify(idempotencyRecordRepository, never()).takeOver(any(), any(), any());
+    }
+
+    @Test
+    void placeOnce_ShouldTakeOverAReservationWhoseLeaseExpired() {
+        // La instancia que reservó la clave murió antes de guardar la respuesta
+        IdempotencyRecord record = new IdempotencyRecord(1L, "key-1", Instant.now().plusSeconds(3600), Instant.now().minusSeconds(1));
+        record.setId(7L);
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.of(record));
+        when(idempotencyRecordRepository.takeOver(eq(7L), any(Instant.class), any(Instant.class))).thenReturn(1);
+        when(idempotencyRecordRepository.complete(eq(7L), any(Instant.class), eq(201), any(), notNull())).thenReturn(1);
+
+        ResponseEntity<OrderResponse> response = idempotencyService.placeOnce(testUser, "key-1",
+                () -> ResponseEntity.status(HttpStatus.CREATED).body(orderResponse(10L)));
+
+        assertEquals(10L, response.getBody().getOrderId());
+        verify(idempotencyRecordRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void placeOnce_ShouldRollBackTheOrder_WhenTheLeaseWasTakenOver() {
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        // Otra petición retomó la clave mientras este pedido tardaba más que el lease
+        when(idempotencyRecordRepository.complete(any(), any(), anyInt(), any(), any())).thenReturn(0);
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> idempotencyService.placeOnce(testUser, "key-1",
+                () -> ResponseEntity.status(HttpStatus.CREATED).body(orderResponse(10L))));
+
+        assertEquals("A request with this Idempotency-Key is still in progress.", exception.getMessage());
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    private static OrderResponse orderResponse(Long orderId) {
+        return new OrderResponse(orderId, 1L, LocalDateTime.of(2025, 1, 1, 12, 0),
+                new BigDecimal("2475.00"), OrderStatus.PENDING, new HashSet<>());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.Order;
+import com.ilich.sb.e_commerce.model.OrderStatus;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.payload.response.CartItemResponseDTO;
+import com.ilich.sb.e_commerce.payload.response.CartResponseDTO;
+import com.ilich.sb.e_commerce.repository.IOrderRepository;
+import com.ilich.sb.e_commerce.service.impl.OrderPlacementServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OrderPlacementServiceTest {
+
+    @Mock
+    private IOrderService orderService;
+    @Mock
+    private ICartService cartService;
+    @Mock
+    private IOrderRepository orderRepository;
+
+    private OrderPlacementServiceImpl placementService;
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        // Capacidad 2 y workers sin arrancar: la cola solo se vacía cuando el test llama a start()
+        placementService = new OrderPlacementServiceImpl(orderService, cartService, orderRepository, 2, 1, 10, 3, 1);
+        testUser = new User(1L, "testuser", "encodedpassword");
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        placementService.stop();
+    }
+
+    @Test
+    void submit_ShouldRejectWhenTheQueueIsFull() {
+        when(cartService.getCartView(testUser)).thenReturn(cartWithOneItem());
+        when(orderService.createPendingOrder(testUser))
+                .thenReturn(new Order(1L, testUser, BigDecimal.ZERO, OrderStatus.PENDING))
+                .thenReturn(new Order(2L, testUser, BigDecimal.ZERO, OrderStatus.PENDING));
+
+        assertEquals(1L, placementService.submit(testUser).getId());
+        assertEquals(2L, placementService.submit(testUser).getId());
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> placementService.submit(testUser));
+
+        assertEquals("Order queue is full. Try again later.", exception.getMessage());
+        verify(orderService, times(2)).createPendingOrder(testUser); // El tercero no llega a insertarse
+    }
+
+    @Test
+    void submit_ShouldRejectEmptyCartsWithoutQueueing() {
+        when(cartService.getCartView(testUser)).thenReturn(new CartResponseDTO(1L, new HashSet<>(), BigDecimal.ZERO));
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> placementService.submit(testUser));
+
+        assertEquals("Cannot create an order from an empty cart.", exception.getMessage());
+        verify(orderService, never()).createPendingOrder(any());
+    }
+
+    @Test
+    void workers_ShouldConfirmQueuedOrdersAndRejectFailedOnes() {
+        when(cartService.getCartView(testUser)).thenReturn(cartWithOneItem());
+        when(orderService.createPendingOrder(testUser))
+                .thenReturn(new Order(1L, testUser, BigDecimal.ZERO, OrderStatus.PENDING))
+                .thenReturn(new Order(2L, testUser, BigDecimal.ZERO, OrderStatus.PENDING));
+        when(orderService.confirmPendingOrder(1L)).thenReturn(new Order(1L, testUser, new BigDecimal("1200.00"), OrderStatus.CONFIRMED));
+        when(orderService.confirmPendingOrder(2L)).thenThrow(new RuntimeException("Not enough stock for product: Laptop Pro"));
+        when(orderRepository.findIdsByStatusWithoutItems(OrderStatus.PENDING)).thenReturn(List.of());
+        placementService.submit(testUser);
+        placementService.submit(testUser);
+
+        placementService.start();
+
+        verify(orderService, timeout(5000)).confirmPendingOrder(1L);
+        verify(orderService, timeout(5000)).rejectPendingOrder(2L);
+        verify(orderService, never()).rejectPendingOrder(1L);
+    }
+
+    @Test
+    void workers_ShouldRetryTransientFailuresAndNeverRejectThem() {
+        when(orderRepository.findIdsByStatusWithoutItems(OrderStatus.PENDING)).thenReturn(List.of(1L, 2L));
+        when(orderService.confirmPendingOrder(1L))
+                .thenThrow(new CannotAcquireLockException("Lock wait timeout exceeded"))
+                .thenReturn(new Order(1L, testUser, new BigDecimal("1200.00"), OrderStatus.CONFIRMED));
+        when(orderService.confirmPendingOrder(2L)).thenThrow(new QueryTimeoutException("Statement cancelled"));
+
+        placementService.start();
+
+        verify(orderService, timeout(5000).times(2)).confirmPendingOrder(1L);
+        // Agotados los intentos el pedido sigue en PENDING
+        verify(orderService, timeout(5000).times(3)).confirmPendingOrder(2L);
+        verify(orderService, after(200).never()).rejectPendingOrder(anyLong());
+    }
+
+    @Test
+    void start_ShouldRequeueOrdersLeftPending() {
+        when(orderRepository.findIdsByStatusWithoutItems(OrderStatus.PENDING)).thenReturn(List.of(7L, 8L));
+
+        placementService.start();
+
+        verify(orderService, timeout(5000)).confirmPendingOrder(7L);
+        verify(orderService, timeout(5000)).confirmPendingOrder(8L);
+    }
+
+    private static CartResponseDTO cartWithOneItem() {
+        Set<CartItemResponseDTO> items = Set.of(new CartItemResponseDTO(1L, 101L, "Laptop Pro", new BigDecimal("1200.00"), 1, new BigDecimal("1200.00")));
+        return new CartResponseDTO(1L, items, new BigDecimal("1200.00"));
+    }
+}
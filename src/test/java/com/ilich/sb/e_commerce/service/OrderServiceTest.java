@@ -1,5 +1,9 @@
 package com.ilich.sb.e_commerce.service;
 
+import com.ilich.sb.e_commerce.cache.CatalogResponseCache;
+import com.ilich.sb.e_commerce.cache.IInvalidationBus;
+import com.ilich.sb.e_commerce.cache.InvalidationEvent;
+import com.ilich.sb.e_commerce.cache.ProductCatalogCache;
 import com.ilich.sb.e_commerce.model.*;
 import com.ilich.sb.e_commerce.repository.*;
 import com.ilich.sb.e_commerce.service.impl.OrderServiceImpl;
@@ -10,8 +14,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import jakarta.persistence.EntityManager;
+
 import java.math.BigDecimal;
 import java.util.*;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -29,6 +37,24 @@ public class OrderServiceTest {
     @Mock
     private IProductRepository productRepository;
 
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Mock
+    private CatalogResponseCache catalogResponseCache;
+
+    @Mock
+    private IInvalidationBus invalidationBus;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private IStockReservationService stockReservationService;
+
+    @Mock
+    private ICartService cartService;
+
     @InjectMocks // Inyecta los mocks anteriores en esta instancia de OrderService
     private OrderServiceImpl orderService;
 
@@ -65,7 +91,11 @@ public class OrderServiceTest {
     void createOrderFromCart_ShouldCreateOrderAndUpdateStockAndClearCart() {
         // Arrange
         when(cartRepository.findByUser(testUser)).thenReturn(Optional.of(userCart));
-        when(productRepository.save(any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0)); // Simula guardar producto
+        when(productRepository.decrementStock(Map.of(101L, 2, 102L, 3))).thenReturn(List.of()); // Hay stock para todo
+        // Recarga de los productos tras el UPDATE, ya con el stock descontado
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(
+                new Product(101L, "Laptop Pro", "Powerful laptop", new BigDecimal("1200.00"), 8, testProduct1.getCategory()),
+                new Product(102L, "Mouse Wireless", "Ergonomic mouse", new BigDecimal("25.00"), 47, testProduct1.getCategory())));
         when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> {
             Order savedOrder = invocation.getArgument(0);
             savedOrder.setId(100L); // Asignar un ID para el Order guardado
@@ -83,16 +113,29 @@ public class OrderServiceTest {
 
         assertEquals(2, createdOrder.getOrderItems().size()); // Debe tener 2 ítems
 
-        // Verificar que el stock de los productos se actualizó
-        assertEquals(8, testProduct1.getStockQuantity()); // 10 - 2 = 8
-        assertEquals(47, testProduct2.getStockQuantity()); // 50 - 3 = 47
+        // Verificar que el stock se descontó con un único UPDATE condicional en batch (sin leer-modificar-guardar)
+        verify(cartService, times(1)).syncToDatabase(testUser); // El carrito en memoria se vuelca antes de leerlo
+        verify(productRepository, times(1)).decrementStock(Map.of(101L, 2, 102L, 3));
+        verify(productRepository, never()).save(any(Product.class));
+        verify(entityManager, times(1)).detach(testProduct1); // Las entidades obsoletas salen del contexto
+        verify(entityManager, times(1)).detach(testProduct2);
+        verify(entityManager, never()).refresh(any());
+        verify(productRepository, times(1)).findAllById(anyIterable()); // Y se recargan en una sola consulta
+        verify(catalogResponseCache, times(1)).invalidateProduct(101L);
+        verify(catalogResponseCache, times(1)).invalidateProduct(102L);
+        verify(productCatalogCache, times(1)).invalidateProducts(Set.of(101L, 102L)); // Solo los productos vendidos
+        verify(productCatalogCache, never()).invalidate();
+        // Y el resto de réplicas, tras el commit
+        verify(invalidationBus, times(1)).publishAfterCommit(argThat(events -> Set.copyOf(events).equals(
+                Set.of(InvalidationEvent.productChanged(101L), InvalidationEvent.productChanged(102L)))));
+        verify(stockReservationService, times(1)).confirm(userCart.getId(), Map.of(101L, 8, 102L, 47)); // La reserva pasa a ser venta
 
         // Verificar que los repositorios fueron llamados correctamente
         verify(cartRepository, times(1)).findByUser(testUser);
-        verify(productRepository, times(2)).save(any(Product.class)); // Dos productos actualizados
         verify(orderRepository, times(1)).save(any(Order.class));
-        verify(cartItemRepository, times(1)).deleteAll(userCart.getCartItems()); // Carrito vaciado
-        verify(cartRepository, times(1)).save(userCart); // El carrito se guarda sin items
+        verify(cartItemRepository, times(1)).deleteAllByCartId(userCart.getId()); // Carrito vaciado con un único DELETE
+        verify(cartItemRepository, never()).deleteAll(anyIterable());
+        verify(cartRepository, never()).save(any(Cart.class)); // El DELETE en bloque no necesita guardar el carrito
     }
 
     @Test
@@ -109,7 +152,7 @@ public class OrderServiceTest {
         // Verificar que no se realizaron llamadas de guardado o actualización
         verify(orderRepository, never()).save(any(Order.class));
         verify(productRepository, never()).save(any(Product.class));
-        verify(cartItemRepository, never()).deleteAll(anySet());
+        verify(cartItemRepository, never()).deleteAllByCartId(anyLong());
     }
 
     @Test
@@ -127,7 +170,63 @@ public class OrderServiceTest {
         // Verificar que no se realizaron llamadas de guardado o actualización
         verify(orderRepository, never()).save(any(Order.class));
         verify(productRepository, never()).save(any(Product.class));
-        verify(cartItemRepository, never()).deleteAll(anySet());
+        verify(cartItemRepository, never()).deleteAllByCartId(anyLong());
+    }
+
+    @Test
+    void createOrderFromCart_ShouldThrowException_WhenConcurrentOrderTookTheStock() {
+        // Arrange: el stock leído alcanza, pero el UPDATE condicional no encuentra stock suficiente
+        when(cartRepository.findByUser(testUser)).thenReturn(Optional.of(userCart));
+        when(productRepository.decrementStock(anyMap())).thenReturn(List.of(102L));
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+                orderService.createOrderFromCart(testUser)
+        );
+        assertTrue(exception.getMessage().contains("Not enough stock for product: Mouse Wireless"));
+        verify(orderRepository, never()).save(any(Order.class));
+        verify(cartItemRepository, never()).deleteAllByCartId(anyLong());
+        verify(catalogResponseCache, never()).invalidateProduct(anyLong());
+        verify(stockReservationService, never()).confirm(anyLong(), anyMap());
+    }
+
+    @Test
+    void getOrderHistory_ShouldLoadHeadersAndItemsOfThePageInOneQueryEach() {
+        // Arrange: una página con 2 pedidos, uno de ellos con 2 ítems
+        IOrderRepository.OrderHistoryView order10 = orderView(10L);
+        IOrderRepository.OrderHistoryView order11 = orderView(11L);
+        when(orderRepository.findHistoryByUser(eq(testUser), any()))
+                .thenReturn(new PageImpl<>(List.of(order11, order10), PageRequest.of(0, 2), 5));
+        List<IOrderItemRepository.OrderItemHistoryView> items = List.of(
+                itemView(10L, 1L, "Laptop Pro"), itemView(11L, 2L, "Laptop Pro"), itemView(11L, 3L, "Mouse Wireless"));
+        when(orderItemRepository.findHistoryItemsByOrderIds(List.of(11L, 10L))).thenReturn(items);
+
+        // Act
+        var page = orderService.getOrderHistory(testUser, 0, 2);
+
+        // Assert
+        assertEquals(5, page.getTotalElements());
+        assertEquals(List.of(11L, 10L), page.getContent().stream().map(o -> o.getOrderId()).toList()); // Se respeta el orden
+        assertEquals(2, page.getContent().get(0).getItems().size());
+        assertEquals(1, page.getContent().get(1).getItems().size());
+        // Una consulta de cabeceras y una de ítems, sin cargar entidades
+        verify(orderRepository, times(1)).findHistoryByUser(eq(testUser), any());
+        verify(orderItemRepository, times(1)).findHistoryItemsByOrderIds(anyCollection());
+        verify(orderRepository, never()).findByUser(any());
+    }
+
+    private static IOrderRepository.OrderHistoryView orderView(Long orderId) {
+        IOrderRepository.OrderHistoryView view = mock(IOrderRepository.OrderHistoryView.class);
+        when(view.getOrderId()).thenReturn(orderId);
+        return view;
+    }
+
+    private static IOrderItemRepository.OrderItemHistoryView itemView(Long orderId, Long itemId, String productName) {
+        IOrderItemRepository.OrderItemHistoryView view = mock(IOrderItemRepository.OrderItemHistoryView.class);
+        when(view.getOrderId()).thenReturn(orderId);
+        when(view.getOrderItemId()).thenReturn(itemId);
+        when(view.getProductName()).thenReturn(productName);
+        return view;
     }
 
     @Test
@@ -193,4 +292,52 @@ public class OrderServiceTest {
         assertFalse(result.isPresent());
         verify(orderRepository, times(1)).findByIdAndUser(order.getId(), testUser);
     }
+
+    @Test
+    void confirmPendingOrder_ShouldFillTheQueuedOrderAndConfirmIt() {
+        // Arrange: pedido asíncrono ya registrado, todavía sin ítems
+        Order pendingOrder = new Order(500L, testUser, BigDecimal.ZERO, OrderStatus.PENDING);
+        when(orderRepository.claimPendingOrder(500L, OrderStatus.CONFIRMED)).thenReturn(1);
+        when(orderRepository.findById(500L)).thenReturn(Optional.of(pendingOrder));
+        when(cartRepository.findByUser(testUser)).thenReturn(Optional.of(userCart));
+        when(productRepository.decrementStock(Map.of(101L, 2, 102L, 3))).thenReturn(List.of());
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of());
+        when(orderRepository.save(pendingOrder)).thenReturn(pendingOrder);
+
+        // Act
+        Order confirmed = orderService.confirmPendingOrder(500L);
+
+        // Assert
+        assertSame(pendingOrder, confirmed);
+        assertEquals(OrderStatus.CONFIRMED, confirmed.getStatus());
+        assertEquals(2, confirmed.getOrderItems().size());
+        assertEquals(new BigDecimal("2475.00"), confirmed.getTotalAmount());
+        verify(cartItemRepository, times(1)).deleteAllByCartId(userCart.getId());
+    }
+
+    @Test
+    void confirmPendingOrder_ShouldSkipOrdersClaimedElsewhere() {
+        // Arrange: otro nodo ya reclamó el pedido (el UPDATE condicional no cambia ninguna fila)
+        Order confirmedOrder = new Order(500L, testUser, new BigDecimal("10.00"), OrderStatus.CONFIRMED);
+        when(orderRepository.claimPendingOrder(500L, OrderStatus.CONFIRMED)).thenReturn(0);
+        when(orderRepository.findById(500L)).thenReturn(Optional.of(confirmedOrder));
+
+        // Act
+        Order result = orderService.confirmPendingOrder(500L);
+
+        // Assert: ni se lee el carrito ni se descuenta stock
+        assertSame(confirmedOrder, result);
+        verify(cartRepository, never()).findByUser(any());
+        verify(productRepository, never()).decrementStock(any());
+    }
+
+    @Test
+    void rejectPendingOrder_ShouldOnlyRejectPendingOrders() {
+        // Act
+        orderService.rejectPendingOrder(500L);
+
+        // Assert: el UPDATE condicional solo cambia el pedido si sigue en PENDING
+        verify(orderRepository, times(1)).claimPendingOrder(500L, OrderStatus.REJECTED);
+        verify(orderRepository, never()).findById(any());
+    }
 }
@@ -0,0 +1,131 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.*;
+import com.ilich.sb.e_commerce.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba de estrés contra H2: miles de checkouts en paralelo compitiendo por el mismo stock.
+ * Sin transacción de test: cada pedido se confirma de verdad, por eso se limpia todo en @AfterEach.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class OrderStockConcurrencyTest {
+
+    private static final int CHECKOUTS = 2000;
+    private static final int THREADS = 16;
+    private static final int LAPTOP_STOCK = 300; // Cada pedido lleva 1
+    private static final int MOUSE_STOCK = 1000; // Cada pedido lleva 2
+
+    @Autowired
+    private IOrderService orderService;
+    @Autowired
+    private IUserRepository userRepository;
+    @Autowired
+    private ICategoryRepository categoryRepository;
+    @Autowired
+    private IProductRepository productRepository;
+    @Autowired
+    private ICartRepository cartRepository;
+    @Autowired
+    private ICartItemRepository cartItemRepository;
+    @Autowired
+    private IOrderRepository orderRepository;
+    @Autowired
+    private IOrderItemRepository orderItemRepository;
+
+    private final List<User> buyers = new ArrayList<>();
+    private Product laptop;
+    private Product mouse;
+
+    @BeforeEach
+    void setUp() {
+        Category category = categoryRepository.save(new Category("Concurrency"));
+        laptop = productRepository.save(new Product("Laptop Pro", "Powerful laptop", new BigDecimal("1200.00"), LAPTOP_STOCK, category));
+        mouse = productRepository.save(new Product("Mouse Wireless", "Ergonomic mouse", new BigDecimal("25.00"), MOUSE_STOCK, category));
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < CHECKOUTS; i++) {
+            users.add(new User("buyer" + i, "password")); // Sin autenticación: la contraseña no se usa
+        }
+        buyers.addAll(userRepository.saveAll(users));
+
+        List<Cart> carts = cartRepository.saveAll(buyers.stream().map(Cart::new).toList());
+        List<CartItem> items = new ArrayList<>();
+        for (Cart cart : carts) {
+            items.add(new CartItem(cart, laptop, 1));
+            items.add(new CartItem(cart, mouse, 2));
+        }
+        cartItemRepository.saveAll(items);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Orden de borrado: primero los hijos, por las claves foráneas
+        orderItemRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        cartItemRepository.deleteAllInBatch();
+        cartRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch(buyers);
+        productRepository.deleteAllInBatch(List.of(laptop, mouse));
+        categoryRepository.deleteAllInBatch(List.of(laptop.getCategory()));
+    }
+
+    @Test
+    void parallelCheckouts_NeverOversellStock() throws Exception {
+        AtomicInteger succeeded = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (User buyer : buyers) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        orderService.createOrderFromCart(buyer);
+                        succeeded.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        if (e.getMessage() == null || !e.getMessage().contains("Not enough stock for product")) {
+                            unexpected.add(e);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(unexpected.isEmpty(), () -> "Errores inesperados: " + unexpected);
+        int laptopStock = productRepository.findById(laptop.getId()).orElseThrow().getStockQuantity();
+        int mouseStock = productRepository.findById(mouse.getId()).orElseThrow().getStockQuantity();
+
+        // Nada vendido de más ni descuentos perdidos: el stock cuadra exactamente con los pedidos confirmados
+        assertEquals(LAPTOP_STOCK, succeeded.get(), "Con más demanda que stock deben venderse todas las unidades");
+        assertEquals(succeeded.get(), orderRepository.count());
+        assertEquals(0, laptopStock);
+        assertEquals(MOUSE_STOCK - 2 * succeeded.get(), mouseStock);
+    }
+}
@@ -1,5 +1,7 @@
 package com.ilich.sb.e_commerce.service;
 
+import com.ilich.sb.e_commerce.cache.ProductCatalogCache;
+import com.ilich.sb.e_commerce.mapper.IProductMapper;
 import com.ilich.sb.e_commerce.model.Category;
 import com.ilich.sb.e_commerce.model.Product;
 import com.ilich.sb.e_commerce.repository.ICategoryRepository;
@@ -11,12 +13,22 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.ilich.sb.e_commerce.payload.ProductDTO;
+import jakarta.persistence.EntityManager;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.ArrayList;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*; // Importa los métodos estáticos de Mockito
@@ -30,6 +42,18 @@ public class ProductServiceTest {
     @Mock // Crea un mock de CategoryRepository
     private ICategoryRepository categoryRepository;
 
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Mock
+    private IProductMapper productMapper;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private IProductSearchEngine productSearchEngine;
+
     @InjectMocks // Inyecta los mocks en una instancia real de ProductService
     private ProductServiceImpl productService;
 
@@ -74,6 +98,22 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findAll();
     }
 
+    @Test
+    void testStreamAllDtos_ClearsPersistenceContextEveryNRows() {
+        ReflectionTestUtils.setField(productService, "exportClearEvery", 2);
+        when(productRepository.streamAllWithCategory()).thenReturn(Stream.of(laptop, smartphone, novel));
+        when(productMapper.toDto(any(Product.class))).thenAnswer(inv -> new ProductDTO(inv.getArgument(0, Product.class)));
+
+        List<ProductDTO> exported = new ArrayList<>();
+        long count = productService.streamAllDtos(exported::add);
+
+        assertEquals(3, count);
+        assertEquals(List.of(101L, 102L, 103L), exported.stream().map(ProductDTO::getId).toList());
+        // Con 3 filas y un intervalo de 2, el contexto se vacía una sola vez
+        verify(entityManager, times(1)).clear();
+        verify(productRepository, never()).findAll();
+    }
+
     @Test
     void testGetProductById_Found() {
         when(productRepository.findById(101L)).thenReturn(Optional.of(laptop));
@@ -122,6 +162,7 @@ public class ProductServiceTest {
         // ¡Ahora esta verificación debería pasar!
         verify(categoryRepository, times(1)).findById(electronicsCategory.getId());
         verify(productRepository, times(1)).save(newProduct);
+        verify(productCatalogCache, times(1)).invalidate(); // El catálogo cacheado queda obsoleto
     }
 
     @Test
@@ -175,6 +216,7 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findById(laptop.getId());
         verify(categoryRepository, times(1)).findById(booksCategory.getId());
         verify(productRepository, times(1)).save(laptop);
+        verify(productCatalogCache, times(1)).invalidate();
     }
 
     @Test
@@ -192,6 +234,7 @@ public class ProductServiceTest {
         assertEquals("Product not found with id: 999", thrown.getMessage());
         verify(productRepository, times(1)).findById(999L);
         verify(productRepository, never()).save(any(Product.class));
+        verify(productCatalogCache, never()).invalidate();
     }
 
     @Test
@@ -215,6 +258,7 @@ public class ProductServiceTest {
         // 4. Verifica las interacciones
         //verify(productRepository, times(1)).findById(laptop.getId());
         verify(productRepository, times(1)).deleteById(laptop.getId());
+        verify(productCatalogCache, times(1)).invalidate();
     }
     @Test
     void testDeleteProduct_ProductNotFound() {
@@ -238,6 +282,21 @@ public class ProductServiceTest {
         // 3. Opcional: Si tu servicio no hace findById(), verifica que nunca se llamó.
         verify(productRepository, never()).findById(anyLong()); // Para ser explícitos
     }
+
+    @Test
+    void testSearchWithEngine_ReturnsProductsInRelevanceOrderWithoutLike() {
+        when(productSearchEngine.isReady()).thenReturn(true);
+        when(productSearchEngine.search("laptop", null, null, 1L)).thenReturn(List.of(
+                new IProductSearchEngine.SearchHit(102L, 2.0, smartphone.getName(), smartphone.getPrice()),
+                new IProductSearchEngine.SearchHit(101L, 1.0, laptop.getName(), laptop.getPrice())));
+        when(productRepository.findAllById(List.of(102L))).thenReturn(List.of(smartphone));
+
+        Page<Product> page = productService.getAllProductsWithFilterPageable("laptop", null, null, 1L, PageRequest.of(0, 1));
+
+        assertEquals(List.of(smartphone), page.getContent());
+        assertEquals(2, page.getTotalElements());
+        verify(productRepository, never()).findAll(any(Specification.class), any(Pageable.class));
+    }
     /*
     @Test
     void testGetProductsByCategory() {
@@ -0,0 +1,151 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.Category;
+import com.ilich.sb.e_commerce.model.Product;
+import com.ilich.sb.e_commerce.payload.response.StockAvailabilityDTO;
+import com.ilich.sb.e_commerce.repository.IProductRepository;
+import com.ilich.sb.e_commerce.repository.IStockReservationRepository;
+import com.ilich.sb.e_commerce.service.impl.StockReservationServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StockReservationServiceTest {
+
+    private static final long TTL_SECONDS = 900;
+
+    @Mock
+    private IProductRepository productRepository;
+    @Mock
+    private IStockReservationRepository reservationRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MutableClock clock;
+    private StockReservationServiceImpl reservations;
+    private Product laptop;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2025-01-01T10:00:00Z"));
+        reservations = new StockReservationServiceImpl(productRepository, reservationRepository, jdbcTemplate,
+                transactionManager, TTL_SECONDS, clock);
+        laptop = new Product(101L, "Laptop Pro", "Powerful laptop", new BigDecimal("1200.00"), 10, new Category(1L, "Electronics"));
+    }
+
+    @Test
+    void hold_ReducesAvailabilityAndRejectsWhenOtherCartsHoldTheStock() {
+        reservations.hold(1L, laptop, 6);
+        reservations.hold(2L, laptop, 4);
+
+        StockAvailabilityDTO availability = reservations.getAvailability(101L);
+        assertEquals(10, availability.getStock());
+        assertEquals(10, availability.getReserved());
+        assertEquals(0, availability.getAvailable());
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> reservations.hold(3L, laptop, 1));
+        assertTrue(thrown.getMessage().contains("Not enough stock for product: Laptop Pro"));
+
+        // Un carrito puede cambiar su propia reserva dentro de lo que él mismo tiene reservado
+        reservations.hold(1L, laptop, 2);
+        assertEquals(4, reservations.getAvailability(101L).getAvailable());
+        verify(productRepository, never()).findById(anyLong()); // El stock se tomó del producto, sin ir a la BD
+    }
+
+    @Test
+    void releaseExpired_FreesAbandonedHolds() {
+        reservations.hold(1L, laptop, 8);
+        clock.advanceSeconds(TTL_SECONDS - 1);
+        assertEquals(0, reservations.releaseExpired());
+
+        clock.advanceSeconds(1);
+        assertEquals(1, reservations.releaseExpired());
+        assertEquals(10, reservations.getAvailability(101L).getAvailable());
+    }
+
+    @Test
+    void confirm_ConvertsHoldIntoStockDecrement() {
+        reservations.hold(1L, laptop, 3);
+        reservations.hold(2L, laptop, 2);
+
+        reservations.confirm(1L, Map.of(101L, 7)); // Sin transacción activa se aplica en el acto
+
+        StockAvailabilityDTO availability = reservations.getAvailability(101L);
+        assertEquals(7, availability.getStock());
+        assertEquals(2, availability.getReserved());
+        assertEquals(5, availability.getAvailable());
+    }
+
+    @Test
+    void getAvailability_ReadsStockFromDatabaseOnlyOnce() {
+        when(productRepository.findById(101L)).thenReturn(Optional.of(laptop));
+
+        reservations.getAvailability(101L);
+        reservations.getAvailability(101L);
+
+        verify(productRepository, times(1)).findById(101L);
+    }
+
+    @Test
+    void flush_PersistsChangedHoldsInBatches() {
+        reservations.hold(1L, laptop, 3);
+        reservations.hold(2L, laptop, 2);
+        reservations.release(2L, 101L);
+
+        reservations.flush();
+
+        // Un batch de DELETE con las dos reservas modificadas y uno de INSERT con la que sigue vigente
+        verify(jdbcTemplate).batchUpdate(startsWith("DELETE"), argThat((BatchPreparedStatementSetter setter) -> setter.getBatchSize() == 2));
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), argThat((BatchPreparedStatementSetter setter) -> setter.getBatchSize() == 1));
+
+        reservations.flush(); // Nada pendiente: no vuelve a escribir
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advanceSeconds(long seconds) {
+            now = now.plusSeconds(seconds);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
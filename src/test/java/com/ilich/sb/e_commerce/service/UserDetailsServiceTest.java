@@ -0,0 +1,118 @@
+package com.ilich.sb.e_commerce.service;
+
+import com.ilich.sb.e_commerce.model.Role;
+import com.ilich.sb.e_commerce.model.User;
+import com.ilich.sb.e_commerce.repository.IUserRepository;
+import com.ilich.sb.e_commerce.service.impl.UserDetailsServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserDetailsServiceTest {
+
+    @Mock
+    private IUserRepository userRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserDetailsServiceImpl userDetailsService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userDetailsService = new UserDetailsServiceImpl(userRepository, meterRegistry, 100, 300);
+
+        user = new User(1L, "testuser", "encodedPassword");
+        user.getRoles().add(new Role("ROLE_USER"));
+    }
+
+    @Test
+    void testLoadUserByUsernameIsCached() {
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+
+        UserDetails first = userDetailsService.loadUserByUsername("testuser");
+        UserDetails second = userDetailsService.loadUserByUsername("testuser");
+
+        assertSame(first, second);
+        verify(userRepository, times(1)).findByUsername("testuser");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "users").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void testEvictUserForcesReload() {
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+
+        userDetailsService.loadUserByUsername("testuser");
+        userDetailsService.evictUser("testuser");
+        userDetailsService.loadUserByUsername("testuser");
+
+        verify(userRepository, times(2)).findByUsername("testuser");
+    }
+
+    @Test
+    void testEvictDuringLoadIsNotOverwrittenByStaleData() throws Exception {
+        User promoted = new User(1L, "testuser", "encodedPassword");
+        promoted.getRoles().add(new Role("ROLE_ADMIN"));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(userRepository.findByUsername("testuser")).thenAnswer(invocation -> {
+            loading.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return Optional.of(user); // Leído antes del cambio de roles
+        }).thenReturn(Optional.of(promoted));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Thread eviction = new Thread(() -> userDetailsService.evictUser("testuser"));
+        try {
+            Future<UserDetails> staleLoad = executor.submit(() -> userDetailsService.loadUserByUsername("testuser"));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            // La invalidación llega mientras la carga sigue retenida en la BD: se suelta la carga solo cuando
+            // evictUser ya ha terminado o está esperando a la carga en curso
+            eviction.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (eviction.getState() != Thread.State.BLOCKED && eviction.getState() != Thread.State.WAITING
+                    && eviction.getState() != Thread.State.TERMINATED) {
+                assertTrue(System.nanoTime() < deadline, "evictUser no llegó a ejecutarse");
+                Thread.onSpinWait();
+            }
+            release.countDown();
+            assertEquals(user.getUsername(), staleLoad.get(5, TimeUnit.SECONDS).getUsername());
+            eviction.join(5000);
+            assertFalse(eviction.isAlive());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        // Los datos leídos antes de la invalidación no quedan en la caché: se vuelve a leer la BD
+        UserDetails reloaded = userDetailsService.loadUserByUsername("testuser");
+        assertTrue(reloaded.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN")));
+        verify(userRepository, times(2)).findByUsername("testuser");
+    }
+
+    @Test
+    void testUnknownUserIsNotCached() {
+        when(userRepository.findByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("ghost"));
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("ghost"));
+
+        verify(userRepository, times(2)).findByUsername("ghost");
+    }
+}